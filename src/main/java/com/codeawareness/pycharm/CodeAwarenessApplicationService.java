@@ -2,12 +2,18 @@ package com.codeawareness.pycharm;
 
 import com.codeawareness.pycharm.communication.CatalogConnection;
 import com.codeawareness.pycharm.communication.IpcConnection;
+import com.codeawareness.pycharm.communication.IpcTrafficRecorder;
 import com.codeawareness.pycharm.events.EventDispatcher;
 import com.codeawareness.pycharm.events.ResponseHandlerRegistry;
 import com.codeawareness.pycharm.utils.Logger;
 import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.components.Service;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 /**
  * Application-level service for Kawa Code plugin.
  * Manages global state including the connection to Muninn.
@@ -26,6 +32,7 @@ public final class CodeAwarenessApplicationService implements Disposable {
     private final ResponseHandlerRegistry responseHandlerRegistry;
     private final EventDispatcher eventDispatcher;
     private volatile boolean connected = false;
+    private volatile Path ipcRecordingFile;
 
     public CodeAwarenessApplicationService() {
         this.responseHandlerRegistry = new ResponseHandlerRegistry();
@@ -109,10 +116,20 @@ public final class CodeAwarenessApplicationService implements Disposable {
             // Step 2: Start IPC on the same socket
             ipcConnection = new IpcConnection(clientGuid, responseHandlerRegistry);
 
-            // Set up message callback to use event dispatcher
-            ipcConnection.setMessageCallback(message -> {
-                eventDispatcher.dispatch(message);
-            });
+            // Set up message callback to use event dispatcher; credits are returned
+            // to Muninn only once the dispatcher has finished with a message
+            ipcConnection.setDispatchCallback(eventDispatcher::dispatch);
+
+            int flowControlWindow = catalogConnection.getFlowControlWindow();
+            if (flowControlWindow > 0) {
+                ipcConnection.enableFlowControl(flowControlWindow);
+            }
+
+            // Resume traffic recording across reconnects, before the reader thread starts
+            Path recordingFile = ipcRecordingFile;
+            if (recordingFile != null) {
+                startRecordingOn(ipcConnection, recordingFile);
+            }
 
             // Reuse the CatalogConnection's socket for IPC
             ipcConnection.connect(catalogConnection.getSocketManager());
@@ -152,9 +169,65 @@ public final class CodeAwarenessApplicationService implements Disposable {
         Logger.info("Disconnected from Kawa Code");
     }
 
+    /**
+     * Get the default location for IPC traffic recordings (inside the IDE log directory).
+     */
+    public static Path getDefaultIpcRecordingFile() {
+        return Paths.get(PathManager.getLogPath(), "kawa-ipc.rec");
+    }
+
+    /**
+     * Start recording raw IPC traffic to the given file.
+     * Recording stays enabled across reconnects until {@link #stopIpcRecording()} is called.
+     */
+    public void startIpcRecording(Path file) {
+        ipcRecordingFile = file;
+        if (ipcConnection != null) {
+            startRecordingOn(ipcConnection, file);
+        }
+    }
+
+    /**
+     * Stop recording raw IPC traffic.
+     */
+    public void stopIpcRecording() {
+        ipcRecordingFile = null;
+        if (ipcConnection != null) {
+            ipcConnection.stopRecording();
+        }
+    }
+
+    /**
+     * Check if IPC traffic is being recorded, or will be once connected.
+     */
+    public boolean isIpcRecording() {
+        IpcConnection connection = ipcConnection;
+        if (connected && connection != null) {
+            return connection.isRecording();
+        }
+        return ipcRecordingFile != null;
+    }
+
+    private void startRecordingOn(IpcConnection connection, Path file) {
+        try {
+            connection.startRecording(file, IpcTrafficRecorder.DEFAULT_MAX_BYTES, IpcTrafficRecorder.DEFAULT_MAX_FILES,
+                () -> {
+                    // The recorder stopped itself: do not resume it on the next reconnect
+                    if (file.equals(ipcRecordingFile)) {
+                        ipcRecordingFile = null;
+                    }
+                });
+        } catch (IOException e) {
+            Logger.warn("Could not start IPC traffic recording at " + file + ": " + e.getMessage());
+            ipcRecordingFile = null;
+        }
+    }
+
     @Override
     public void dispose() {
         Logger.info("Disposing Kawa Code Application Service");
         disconnect();
+        eventDispatcher.shutdown();
+        responseHandlerRegistry.shutdown();
     }
 }
@@ -16,24 +16,31 @@ import com.codeawareness.pycharm.events.handlers.OpenPeerFileHandler;
 import com.codeawareness.pycharm.events.handlers.PeerSelectHandler;
 import com.codeawareness.pycharm.events.handlers.PeerUnselectHandler;
 import com.codeawareness.pycharm.events.handlers.SyncRefreshHandler;
+import com.codeawareness.pycharm.highlighting.ColorSchemeProvider;
+import com.codeawareness.pycharm.highlighting.HighlightCache;
 import com.codeawareness.pycharm.highlighting.HighlightManager;
+import com.codeawareness.pycharm.highlighting.HighlightSnapshotStore;
+import com.codeawareness.pycharm.highlighting.LineIndex;
+import com.codeawareness.pycharm.highlighting.PeerChangeIndex;
 import com.codeawareness.pycharm.monitoring.ActiveFileTracker;
 import com.codeawareness.pycharm.monitoring.FileMonitor;
+import com.codeawareness.pycharm.monitoring.HighlightPrefetcher;
 import com.codeawareness.pycharm.settings.CodeAwarenessSettings;
 import com.codeawareness.pycharm.settings.SettingsChangeListener;
 import com.codeawareness.pycharm.utils.Logger;
+import com.intellij.ide.projectView.ProjectView;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.Service;
-import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Project-level service for Kawa Code plugin.
@@ -47,8 +54,12 @@ public final class CodeAwarenessProjectService implements Disposable, SettingsCh
     private final FileMonitor fileMonitor;
     private final ActiveFileTracker activeFileTracker;
     private final HighlightManager highlightManager;
+    private final HighlightPrefetcher highlightPrefetcher;
     private final TempFileManager tempFileManager;
     private final DiffViewerManager diffViewerManager;
+    private final HighlightSnapshotStore snapshotStore;
+    private final PeerChangeIndex peerChangeIndex = new PeerChangeIndex();
+    private final AtomicBoolean projectViewRefreshScheduled = new AtomicBoolean();
     private VirtualFile activeFile;
     private String selectedPeer;
     private String selectedBranch;
@@ -56,7 +67,6 @@ public final class CodeAwarenessProjectService implements Disposable, SettingsCh
     private String userName;
     private String userEmail;
     private String tmpDir;
-    private final Map<String, Object> highlighters = new ConcurrentHashMap<>();
     private final List<EventHandler> registeredHandlers = new ArrayList<>();
 
     public CodeAwarenessProjectService(Project project) {
@@ -64,8 +74,11 @@ public final class CodeAwarenessProjectService implements Disposable, SettingsCh
         this.fileMonitor = new FileMonitor(project);
         this.activeFileTracker = new ActiveFileTracker(project);
         this.highlightManager = new HighlightManager(project);
+        this.highlightPrefetcher = new HighlightPrefetcher(project, highlightManager);
         this.tempFileManager = new TempFileManager(null); // Will be updated when tmpDir is received
         this.diffViewerManager = new DiffViewerManager(project, tempFileManager);
+        this.snapshotStore = new HighlightSnapshotStore(HighlightSnapshotStore.getDefaultFile(project));
+        peerChangeIndex.addChangeListener(this::scheduleProjectViewRefresh);
         Logger.info("Kawa Code Project Service initialized for project: " + project.getName());
 
         // Register event handlers
@@ -74,6 +87,7 @@ public final class CodeAwarenessProjectService implements Disposable, SettingsCh
         // Register for settings change notifications
         CodeAwarenessSettings settings = CodeAwarenessSettings.getInstance();
         settings.addSettingsChangeListener(this);
+        highlightManager.getCache().setLimits(settings.highlightCacheMaxFiles, settings.highlightCacheMaxLines);
 
         // Request authentication info
         requestAuthInfo();
@@ -216,6 +230,74 @@ public final class CodeAwarenessProjectService implements Disposable, SettingsCh
         }
     }
 
+    /**
+     * Show the highlights saved when the project was last closed on the files open now.
+     * Reads the snapshot and the file contents; call from a background thread.
+     */
+    public void restoreHighlightSnapshot() {
+        for (VirtualFile file : FileEditorManager.getInstance(project).getOpenFiles()) {
+            restoreHighlightSnapshot(file);
+        }
+    }
+
+    /**
+     * Show the highlights saved for a file in a previous session, if its content has not
+     * changed since. They are marked stale until the backend sends fresh lines.
+     * Reads the snapshot and the file content; call from a background thread.
+     */
+    public void restoreHighlightSnapshot(VirtualFile file) {
+        if (file == null || !file.isValid() || file.isDirectory()) {
+            return;
+        }
+        try {
+            LineIndex lines = snapshotStore.get(file.getPath(), HighlightSnapshotStore.contentHash(file.contentsToByteArray()));
+            if (lines != null) {
+                highlightManager.showStaleHighlights(file, lines);
+            }
+        } catch (IOException e) {
+            Logger.debug("Cannot read " + file.getPath() + " to restore its highlights: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Remember the lines the backend sent for a file, keyed by the file's current content,
+     * so they can be restored in the next session. Empty lines forget the file.
+     * Reads the file content; call from a background thread.
+     */
+    public void recordHighlightSnapshot(String filePath, LineIndex lines) {
+        if (lines.isEmpty()) {
+            snapshotStore.remove(filePath);
+            return;
+        }
+        VirtualFile file = LocalFileSystem.getInstance().findFileByPath(filePath);
+        if (file == null || !file.isValid() || file.isDirectory()) {
+            snapshotStore.remove(filePath);
+            return;
+        }
+        try {
+            snapshotStore.put(filePath, HighlightSnapshotStore.contentHash(file.contentsToByteArray()), lines);
+        } catch (IOException e) {
+            snapshotStore.remove(filePath);
+        }
+    }
+
+    /**
+     * Write the recorded snapshots of the files that still have highlights; files cleared
+     * or evicted from the cache this session are dropped, so retracted lines do not come back.
+     */
+    private void saveHighlightSnapshot() {
+        HighlightCache cache = highlightManager.getCache();
+        snapshotStore.retainAll(cache.entries().keySet());
+        snapshotStore.trim(cache.getMaxFiles());
+
+        try {
+            snapshotStore.save();
+            Logger.debug("Saved " + snapshotStore.size() + " highlight snapshot(s) for project: " + project.getName());
+        } catch (IOException e) {
+            Logger.warn("Failed to save highlight snapshot", e);
+        }
+    }
+
     public Project getProject() {
         return project;
     }
@@ -276,14 +358,6 @@ public final class CodeAwarenessProjectService implements Disposable, SettingsCh
         this.tmpDir = tmpDir;
     }
 
-    public Map<String, Object> getHighlighters() {
-        return highlighters;
-    }
-
-    public void clearHighlighters() {
-        highlighters.clear();
-    }
-
     public FileMonitor getFileMonitor() {
         return fileMonitor;
     }
@@ -296,6 +370,35 @@ public final class CodeAwarenessProjectService implements Disposable, SettingsCh
         return highlightManager;
     }
 
+    public HighlightPrefetcher getHighlightPrefetcher() {
+        return highlightPrefetcher;
+    }
+
+    /**
+     * Get the project-wide index of files changed by peers, which decorates the project view.
+     */
+    public PeerChangeIndex getPeerChangeIndex() {
+        return peerChangeIndex;
+    }
+
+    /**
+     * Repaint the project view decorations once for a burst of index changes.
+     */
+    private void scheduleProjectViewRefresh() {
+        if (!projectViewRefreshScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        ApplicationManager.getApplication().invokeLater(() -> {
+            projectViewRefreshScheduled.set(false);
+            if (!project.isDisposed()) {
+                ProjectView projectView = ProjectView.getInstance(project);
+                if (projectView != null) {
+                    projectView.refresh();
+                }
+            }
+        });
+    }
+
     public DiffViewerManager getDiffViewerManager() {
         return diffViewerManager;
     }
@@ -308,6 +411,7 @@ public final class CodeAwarenessProjectService implements Disposable, SettingsCh
     public void onColorSettingsChanged() {
         // Refresh all highlights with the new colors
         Logger.info("Color settings changed, refreshing highlights for project: " + project.getName());
+        ColorSchemeProvider.invalidate();
         highlightManager.refreshHighlightColors();
     }
 
@@ -318,6 +422,13 @@ public final class CodeAwarenessProjectService implements Disposable, SettingsCh
         highlightManager.setHighlightsEnabled(enabled);
     }
 
+    @Override
+    public void onHighlightCacheLimitsChanged(int maxFiles, int maxLines) {
+        // Evicts right away if the cache is over the new limits
+        highlightManager.getCache().setLimits(maxFiles, maxLines);
+        Logger.debug("Highlight cache limits changed to " + maxFiles + " files, " + maxLines + " lines");
+    }
+
     @Override
     public void dispose() {
         Logger.info("Disposing Kawa Code Project Service for project: " + project.getName());
@@ -338,10 +449,12 @@ public final class CodeAwarenessProjectService implements Disposable, SettingsCh
             registeredHandlers.clear();
         }
 
-        clearHighlighters();
+        saveHighlightSnapshot();
         highlightManager.clearAllHighlights();
+        highlightManager.dispose();
         diffViewerManager.cleanupAll();
         fileMonitor.shutdown();
         activeFileTracker.shutdown();
+        highlightPrefetcher.shutdown();
     }
 }
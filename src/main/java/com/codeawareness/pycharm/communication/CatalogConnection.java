@@ -19,6 +19,20 @@ public class CatalogConnection {
     private SocketManager socketManager;
     private String assignedCaw;
     private boolean connected = false;
+    private final int requestedFlowControlWindow;
+    private int flowControlWindow = 0;
+
+    public CatalogConnection() {
+        this(FlowController.DEFAULT_WINDOW);
+    }
+
+    /**
+     * Create a connection that advertises the given flow-control window during the
+     * handshake (0 to disable flow control).
+     */
+    public CatalogConnection(int flowControlWindow) {
+        this.requestedFlowControlWindow = flowControlWindow;
+    }
 
     /**
      * Connect to the Muninn IPC server and perform handshake.
@@ -30,7 +44,16 @@ public class CatalogConnection {
 
         String muninnPath = PathUtils.getMuninnSocketPath();
         Logger.info("Muninn socket path: " + muninnPath);
-        socketManager = new SocketManager(muninnPath);
+        connect(new SocketManager(muninnPath));
+    }
+
+    /**
+     * Connect using the given socket manager and perform handshake.
+     * Package-private so tests can point the connection at a local fake server.
+     */
+    void connect(SocketManager socket) throws IOException {
+        socketManager = socket;
+        String muninnPath = socket.getSocketPath();
 
         try {
             socketManager.connect();
@@ -50,11 +73,13 @@ public class CatalogConnection {
 
     /**
      * Send handshake message and read the response to get the assigned CAW ID.
+     * The handshake also advertises the flow-control window; flow control is only
+     * enabled if the server acknowledges it in its response.
      */
     private void performHandshake() throws IOException {
         Logger.info("Sending handshake to Muninn...");
 
-        Message handshake = MessageBuilder.buildHandshake();
+        Message handshake = MessageBuilder.buildHandshake(requestedFlowControlWindow);
         String serialized = MessageProtocol.serialize(handshake);
         socketManager.write(serialized);
 
@@ -84,13 +109,39 @@ public class CatalogConnection {
             }
 
             assignedCaw = data.get("caw").getAsString();
-            Logger.info("Handshake complete, assigned CAW ID: " + assignedCaw);
+            flowControlWindow = parseFlowControlWindow(data, requestedFlowControlWindow);
+            Logger.info("Handshake complete, assigned CAW ID: " + assignedCaw +
+                       (flowControlWindow > 0 ? " (flow-control window: " + flowControlWindow + ")" : ""));
 
         } catch (IllegalArgumentException e) {
             throw new IOException("Failed to parse handshake response: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Extract the flow-control window acknowledged by the server, capped at the requested one.
+     * Returns 0 (flow control disabled) if the server did not acknowledge it.
+     */
+    static int parseFlowControlWindow(JsonObject data, int requestedWindow) {
+        if (requestedWindow <= 0 || data == null || !data.has("flowControl")
+                || !data.get("flowControl").isJsonObject()) {
+            return 0;
+        }
+
+        JsonObject flowControl = data.getAsJsonObject("flowControl");
+        if (!flowControl.has("window")) {
+            return 0;
+        }
+
+        try {
+            int window = flowControl.get("window").getAsInt();
+            return window > 0 ? Math.min(window, requestedWindow) : 0;
+        } catch (RuntimeException e) {
+            Logger.warn("Ignoring malformed flow-control window in handshake response: " + flowControl);
+            return 0;
+        }
+    }
+
     /**
      * Send a disconnect message to Muninn.
      */
@@ -145,6 +196,14 @@ public class CatalogConnection {
         return assignedCaw;
     }
 
+    /**
+     * Get the flow-control window agreed during the handshake, or 0 if the server
+     * does not support flow control.
+     */
+    public int getFlowControlWindow() {
+        return flowControlWindow;
+    }
+
     /**
      * Get the underlying SocketManager for reuse by IpcConnection.
      * The socket remains connected after handshake and should be used
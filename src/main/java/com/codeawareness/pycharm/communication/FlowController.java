@@ -0,0 +1,151 @@
+package com.codeawareness.pycharm.communication;
+
+import com.codeawareness.pycharm.utils.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Credit-based flow control toward Muninn.
+ *
+ * The plugin advertises a window of N messages during the handshake. Muninn may have
+ * at most N messages outstanding (delivered but not yet processed by the IDE); every
+ * message it sends consumes one credit. Credits are handed back with a
+ * {@code system:flow-credit} frame only once the IDE has finished the work for a message,
+ * so when the IDE is slow (indexing, GC) Muninn runs out of credits and can hold back or
+ * coalesce updates on its side instead of the plugin queueing unbounded work.
+ *
+ * Credits are returned in batches of a quarter window, or immediately once nothing is in
+ * flight, to keep the number of credit frames low.
+ */
+public class FlowController {
+
+    public static final int DEFAULT_WINDOW = 256;
+
+    /**
+     * Sends a credit grant to the server.
+     */
+    @FunctionalInterface
+    public interface CreditSender {
+        void sendCredits(int credits) throws IOException;
+    }
+
+    private static final Runnable NO_OP = () -> { };
+
+    private final int window;
+    private final int grantThreshold;
+    private final CreditSender sender;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger pendingGrant = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong creditsGranted = new AtomicLong();
+    private final AtomicLong overruns = new AtomicLong();
+
+    public FlowController(int window, CreditSender sender) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+        this.window = window;
+        this.grantThreshold = Math.max(1, window / 4);
+        this.sender = sender;
+    }
+
+    /**
+     * Account for a message received from the server.
+     *
+     * @return a release callback to run once the message has been fully processed;
+     *         running it more than once has no effect
+     */
+    public Runnable onMessageReceived() {
+        received.incrementAndGet();
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        if (current > window) {
+            overruns.incrementAndGet();
+            Logger.debug("Muninn exceeded flow-control window (" + current + " > " + window + ")");
+        }
+
+        AtomicBoolean released = new AtomicBoolean(false);
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                onMessageCompleted();
+            }
+        };
+    }
+
+    /**
+     * Get a release callback for messages that are not subject to flow control.
+     */
+    public static Runnable noOpRelease() {
+        return NO_OP;
+    }
+
+    private void onMessageCompleted() {
+        int remaining = inFlight.decrementAndGet();
+        int pending = pendingGrant.incrementAndGet();
+        if (pending >= grantThreshold || remaining == 0) {
+            grant();
+        }
+    }
+
+    private void grant() {
+        int credits = pendingGrant.getAndSet(0);
+        if (credits <= 0) {
+            return;
+        }
+
+        try {
+            sender.sendCredits(credits);
+            creditsGranted.addAndGet(credits);
+        } catch (IOException e) {
+            // Keep the credits so the next grant carries them
+            pendingGrant.addAndGet(credits);
+            Logger.warn("Could not send flow-control credits: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the advertised window size.
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Get the number of messages received but not yet processed.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Get the highest number of messages that were in flight at once.
+     */
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    /**
+     * Get the total number of messages received.
+     */
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    /**
+     * Get the total number of credits returned to the server.
+     */
+    public long getCreditsGranted() {
+        return creditsGranted.get();
+    }
+
+    /**
+     * Get the number of messages received while the window was already exhausted.
+     */
+    public long getOverrunCount() {
+        return overruns.get();
+    }
+}
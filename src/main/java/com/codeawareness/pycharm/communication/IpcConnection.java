@@ -5,8 +5,10 @@ import com.codeawareness.pycharm.utils.Logger;
 import com.intellij.openapi.application.ApplicationManager;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 /**
@@ -23,7 +25,9 @@ public class IpcConnection {
     private final AtomicBoolean connected = new AtomicBoolean(false);
     private final AtomicBoolean running = new AtomicBoolean(false);
     private Thread readerThread;
-    private Consumer<Message> messageCallback;
+    private BiConsumer<Message, Runnable> messageCallback;
+    private volatile IpcTrafficRecorder recorder;
+    private volatile FlowController flowController;
 
     public IpcConnection(String clientGuid, ResponseHandlerRegistry responseHandlerRegistry) {
         this.clientGuid = clientGuid;
@@ -35,9 +39,40 @@ public class IpcConnection {
      * Set a callback to handle incoming messages.
      */
     public void setMessageCallback(Consumer<Message> callback) {
+        this.messageCallback = callback == null ? null : (message, release) -> {
+            try {
+                callback.accept(message);
+            } finally {
+                release.run();
+            }
+        };
+    }
+
+    /**
+     * Set a callback to handle incoming messages whose processing completes asynchronously.
+     * The callback must run the supplied release callback once the message has been fully
+     * processed; that is what returns the message's flow-control credit to Muninn.
+     */
+    public void setDispatchCallback(BiConsumer<Message, Runnable> callback) {
         this.messageCallback = callback;
     }
 
+    /**
+     * Enable credit-based flow control with the window agreed during the handshake.
+     */
+    public void enableFlowControl(int window) {
+        flowController = new FlowController(window,
+            credits -> sendMessage(MessageBuilder.buildFlowCredit(clientGuid, credits)));
+        Logger.info("IPC flow control enabled (window: " + window + ")");
+    }
+
+    /**
+     * Get the flow controller, or null if the server does not support flow control.
+     */
+    public FlowController getFlowController() {
+        return flowController;
+    }
+
     /**
      * Start IPC communication using an existing socket from CatalogConnection.
      * This reuses the same socket that completed the handshake (single-socket model,
@@ -81,6 +116,11 @@ public class IpcConnection {
                     String data = socketManager.readUntilDelimiter(MessageProtocol.DELIMITER);
 
                     if (data != null && !data.isEmpty()) {
+                        IpcTrafficRecorder activeRecorder = recorder;
+                        if (activeRecorder != null) {
+                            activeRecorder.recordInbound(data);
+                        }
+
                         Logger.info("Received data from IPC socket (length: " + data.length() + " bytes)");
                         Logger.debug("Raw IPC data: " + data.substring(0, Math.min(200, data.length())));
 
@@ -122,25 +162,34 @@ public class IpcConnection {
         Logger.info("Handling message: " + message.getDomain() + ":" + message.getAction() +
                    " (flow: " + message.getFlow() + ")");
 
+        FlowController activeFlowController = flowController;
+        Runnable release = activeFlowController != null
+            ? activeFlowController.onMessageReceived()
+            : FlowController.noOpRelease();
+
         // Try response handler first
         String handlerKey = message.getDomain() + ":" + message.getAction();
         if (responseHandlerRegistry.handle(handlerKey, message)) {
             Logger.info("Message handled by response handler: " + handlerKey);
+            release.run();
             return;
         }
 
         // Use callback if set
-        if (messageCallback != null) {
+        BiConsumer<Message, Runnable> callback = messageCallback;
+        if (callback != null) {
             Logger.debug("Dispatching message to callback");
             ApplicationManager.getApplication().executeOnPooledThread(() -> {
                 try {
-                    messageCallback.accept(message);
+                    callback.accept(message, release);
                 } catch (Exception e) {
                     Logger.error("Error in message callback", e);
+                    release.run();
                 }
             });
         } else {
             Logger.warn("No handler or callback for message: " + handlerKey);
+            release.run();
         }
     }
 
@@ -159,6 +208,11 @@ public class IpcConnection {
         Logger.debug("Message details - flow: " + message.getFlow() + ", caw: " + message.getCaw());
 
         socketManager.write(serialized);
+
+        IpcTrafficRecorder activeRecorder = recorder;
+        if (activeRecorder != null) {
+            activeRecorder.recordOutbound(serialized);
+        }
         Logger.info("Successfully sent message: " + message.getDomain() + ":" + message.getAction());
     }
 
@@ -166,12 +220,80 @@ public class IpcConnection {
      * Send a message and register a one-time response handler.
      */
     public void sendMessage(Message message, Consumer<Object> responseHandler) throws IOException {
-        if (responseHandler != null) {
-            String handlerKey = message.getDomain() + ":" + message.getAction();
-            responseHandlerRegistry.register(handlerKey, responseHandler);
+        sendMessage(message, responseHandler, ResponseHandlerRegistry.DEFAULT_TIMEOUT_MS, null);
+    }
+
+    /**
+     * Send a message and register a one-time response handler with an explicit deadline.
+     * The onTimeout callback runs if no response arrives within timeoutMs.
+     *
+     * @throws IOException if too many responses are already outstanding
+     */
+    public void sendMessage(Message message, Consumer<Object> responseHandler,
+                            long timeoutMs, Runnable onTimeout) throws IOException {
+        String handlerKey = message.getDomain() + ":" + message.getAction();
+        if (responseHandler != null
+                && !responseHandlerRegistry.register(handlerKey, responseHandler, timeoutMs, onTimeout)) {
+            throw new IOException("Too many outstanding responses, not sending: " + handlerKey);
         }
 
-        sendMessage(message);
+        try {
+            sendMessage(message);
+        } catch (IOException e) {
+            if (responseHandler != null) {
+                responseHandlerRegistry.remove(handlerKey);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Start recording raw inbound and outbound frames to the given file.
+     * Any recording already in progress is stopped first.
+     */
+    public void startRecording(Path file, long maxBytes, int maxFiles) throws IOException {
+        startRecording(file, maxBytes, maxFiles, null);
+    }
+
+    /**
+     * Start recording raw frames, running onFailure if the recorder stops itself after an
+     * IO error (e.g. a full disk). Can be called before {@link #connect(SocketManager)} so
+     * the first frames are recorded too.
+     */
+    public void startRecording(Path file, long maxBytes, int maxFiles, Runnable onFailure) throws IOException {
+        IpcTrafficRecorder newRecorder = new IpcTrafficRecorder(file, maxBytes, maxFiles);
+        newRecorder.setFailureListener(() -> {
+            if (recorder == newRecorder) {
+                recorder = null;
+            }
+            if (onFailure != null) {
+                onFailure.run();
+            }
+        });
+        IpcTrafficRecorder previous = recorder;
+        recorder = newRecorder;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Stop recording frames. Does nothing if no recording is in progress.
+     */
+    public void stopRecording() {
+        IpcTrafficRecorder previous = recorder;
+        recorder = null;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Check if frames are currently being recorded.
+     */
+    public boolean isRecording() {
+        IpcTrafficRecorder activeRecorder = recorder;
+        return activeRecorder != null && activeRecorder.isRecording();
     }
 
     /**
@@ -194,6 +316,9 @@ public class IpcConnection {
                 }
             }
 
+            stopRecording();
+            flowController = null;
+
             // Don't close socketManager - it's owned by CatalogConnection
             socketManager = null;
 
@@ -0,0 +1,242 @@
+package com.codeawareness.pycharm.communication;
+
+import com.codeawareness.pycharm.utils.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Records raw IPC frames exchanged with Muninn to a compact append-only file.
+ *
+ * File layout (big-endian):
+ *   header: magic "KAWAIPC" (7 bytes), version (1 byte), wall clock at start (long, epoch millis)
+ *   record: direction (1 byte), timestamp (long, nanos since recording start), length (int), UTF-8 payload
+ *
+ * Frames are stored without the trailing delimiter. When the active file would grow
+ * past the size cap it is rotated to {@code <name>.1}, shifting older segments up to
+ * {@code <name>.<maxFiles>}; the oldest segment is dropped.
+ */
+public class IpcTrafficRecorder implements Closeable {
+
+    static final byte[] MAGIC = "KAWAIPC".getBytes(StandardCharsets.US_ASCII);
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = MAGIC.length + 1 + Long.BYTES;
+    static final int RECORD_OVERHEAD = 1 + Long.BYTES + Integer.BYTES;
+
+    public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+    public static final int DEFAULT_MAX_FILES = 4;
+
+    /**
+     * Direction of a recorded frame, relative to the plugin.
+     */
+    public enum Direction {
+        INBOUND((byte) 0),
+        OUTBOUND((byte) 1);
+
+        private final byte code;
+
+        Direction(byte code) {
+            this.code = code;
+        }
+
+        byte getCode() {
+            return code;
+        }
+
+        static Direction fromCode(byte code) {
+            for (Direction direction : values()) {
+                if (direction.code == code) {
+                    return direction;
+                }
+            }
+            throw new IllegalArgumentException("Unknown frame direction: " + code);
+        }
+    }
+
+    private final Path file;
+    private final long maxBytes;
+    private final int maxFiles;
+    private final long startNanos;
+    private DataOutputStream out;
+    private long currentSize;
+    private boolean closed = false;
+    private volatile Runnable failureListener;
+
+    /**
+     * Create a recorder with the default size cap and rotation depth.
+     */
+    public IpcTrafficRecorder(Path file) throws IOException {
+        this(file, DEFAULT_MAX_BYTES, DEFAULT_MAX_FILES);
+    }
+
+    /**
+     * Create a recorder.
+     *
+     * @param file     Active recording file; rotated segments are written next to it
+     * @param maxBytes Size cap of a single segment in bytes
+     * @param maxFiles Number of rotated segments to keep (0 to truncate instead of rotating)
+     */
+    public IpcTrafficRecorder(Path file, long maxBytes, int maxFiles) throws IOException {
+        if (maxBytes <= HEADER_SIZE) {
+            throw new IllegalArgumentException("maxBytes must be larger than the header (" + HEADER_SIZE + ")");
+        }
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxFiles = Math.max(0, maxFiles);
+        this.startNanos = System.nanoTime();
+        openNewSegment();
+        Logger.info("IPC traffic recording started: " + file);
+    }
+
+    /**
+     * Record an inbound frame (received from Muninn).
+     */
+    public void recordInbound(String frame) {
+        record(Direction.INBOUND, frame);
+    }
+
+    /**
+     * Record an outbound frame (sent to Muninn).
+     */
+    public void recordOutbound(String frame) {
+        record(Direction.OUTBOUND, frame);
+    }
+
+    /**
+     * Append a frame to the recording. Failures are logged and disable the recorder
+     * so that a full disk never breaks IPC.
+     */
+    public synchronized void record(Direction direction, String frame) {
+        if (closed || frame == null) {
+            return;
+        }
+
+        long timestamp = System.nanoTime() - startNanos;
+        byte[] payload = stripDelimiter(frame).getBytes(StandardCharsets.UTF_8);
+        long recordSize = RECORD_OVERHEAD + payload.length;
+
+        try {
+            if (currentSize + recordSize > maxBytes && currentSize > HEADER_SIZE) {
+                rotate();
+            }
+
+            out.writeByte(direction.getCode());
+            out.writeLong(timestamp);
+            out.writeInt(payload.length);
+            out.write(payload);
+            currentSize += recordSize;
+        } catch (IOException e) {
+            Logger.warn("Failed to record IPC frame, stopping recording: " + e.getMessage());
+            closeQuietly();
+            Runnable listener = failureListener;
+            if (listener != null) {
+                listener.run();
+            }
+        }
+    }
+
+    /**
+     * Set a callback to run when the recorder stops itself after a write or rotation failure.
+     */
+    public void setFailureListener(Runnable listener) {
+        this.failureListener = listener;
+    }
+
+    /**
+     * Flush buffered records to disk.
+     */
+    public synchronized void flush() {
+        if (closed) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            Logger.warn("Failed to flush IPC recording: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the active recording file.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Check if the recorder is still accepting frames.
+     */
+    public synchronized boolean isRecording() {
+        return !closed;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closeQuietly();
+            Logger.info("IPC traffic recording stopped: " + file);
+        }
+    }
+
+    /**
+     * Get the path of the n-th rotated segment of a recording (1 = most recent).
+     */
+    public static Path rotatedSegment(Path file, int index) {
+        return file.resolveSibling(file.getFileName().toString() + "." + index);
+    }
+
+    private void rotate() throws IOException {
+        out.close();
+
+        if (maxFiles > 0) {
+            Files.deleteIfExists(rotatedSegment(file, maxFiles));
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                Path source = rotatedSegment(file, i);
+                if (Files.exists(source)) {
+                    Files.move(source, rotatedSegment(file, i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(file, rotatedSegment(file, 1), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        Logger.debug("Rotated IPC recording: " + file);
+        openNewSegment();
+    }
+
+    private void openNewSegment() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile(), false)));
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(System.currentTimeMillis() - (System.nanoTime() - startNanos) / 1_000_000L);
+        currentSize = HEADER_SIZE;
+    }
+
+    private void closeQuietly() {
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException e) {
+            Logger.debug("Error closing IPC recording", e);
+        }
+    }
+
+    private static String stripDelimiter(String frame) {
+        int length = frame.length();
+        if (length > 0 && frame.charAt(length - 1) == MessageProtocol.DELIMITER) {
+            return frame.substring(0, length - 1);
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,210 @@
+package com.codeawareness.pycharm.communication;
+
+import com.codeawareness.pycharm.events.EventDispatcher;
+import com.codeawareness.pycharm.utils.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Replays recordings produced by {@link IpcTrafficRecorder}.
+ * Inbound frames are fed through a fresh {@link MessageParser} exactly as the IPC reader
+ * thread would, and the resulting messages are handed to a sink (typically
+ * {@link EventDispatcher#dispatch}). Used to benchmark and regression-test the dispatch
+ * and highlight pipeline against real sessions offline.
+ */
+public class IpcTrafficReplayer {
+
+    /**
+     * Replay pacing.
+     */
+    public enum Speed {
+        /** Sleep between frames to reproduce the recorded inter-arrival times. */
+        ORIGINAL,
+        /** Feed frames back-to-back. */
+        AS_FAST_AS_POSSIBLE
+    }
+
+    /**
+     * A single recorded frame.
+     */
+    public static final class Frame {
+        private final IpcTrafficRecorder.Direction direction;
+        private final long timestampNanos;
+        private final String payload;
+
+        Frame(IpcTrafficRecorder.Direction direction, long timestampNanos, String payload) {
+            this.direction = direction;
+            this.timestampNanos = timestampNanos;
+            this.payload = payload;
+        }
+
+        public IpcTrafficRecorder.Direction getDirection() {
+            return direction;
+        }
+
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+    }
+
+    /**
+     * Summary of a replay run.
+     */
+    public static final class ReplayStats {
+        private final int framesReplayed;
+        private final int messagesDelivered;
+        private final long elapsedNanos;
+
+        ReplayStats(int framesReplayed, int messagesDelivered, long elapsedNanos) {
+            this.framesReplayed = framesReplayed;
+            this.messagesDelivered = messagesDelivered;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getFramesReplayed() {
+            return framesReplayed;
+        }
+
+        public int getMessagesDelivered() {
+            return messagesDelivered;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "ReplayStats{frames=" + framesReplayed +
+                    ", messages=" + messagesDelivered +
+                    ", elapsedMs=" + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + '}';
+        }
+    }
+
+    /**
+     * Read every frame of a recording, including its rotated segments (oldest first).
+     */
+    public static List<Frame> readRecording(Path file) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        for (int i = 1; Files.exists(IpcTrafficRecorder.rotatedSegment(file, i)); i++) {
+            segments.add(0, IpcTrafficRecorder.rotatedSegment(file, i));
+        }
+        if (Files.exists(file)) {
+            segments.add(file);
+        }
+
+        List<Frame> frames = new ArrayList<>();
+        for (Path segment : segments) {
+            frames.addAll(readSegment(segment));
+        }
+        return frames;
+    }
+
+    /**
+     * Read the frames of a single recording segment.
+     * A truncated trailing record (e.g. the IDE was killed mid-write) is ignored.
+     */
+    public static List<Frame> readSegment(Path segment) throws IOException {
+        List<Frame> frames = new ArrayList<>();
+
+        try (InputStream raw = Files.newInputStream(segment);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(raw))) {
+            byte[] magic = new byte[IpcTrafficRecorder.MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, IpcTrafficRecorder.MAGIC)) {
+                throw new IOException("Not an IPC recording: " + segment);
+            }
+            byte version = in.readByte();
+            if (version != IpcTrafficRecorder.VERSION) {
+                throw new IOException("Unsupported IPC recording version " + version + ": " + segment);
+            }
+            in.readLong(); // wall clock at recording start
+
+            while (true) {
+                int code = in.read();
+                if (code < 0) {
+                    break;
+                }
+                try {
+                    long timestamp = in.readLong();
+                    int length = in.readInt();
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    frames.add(new Frame(IpcTrafficRecorder.Direction.fromCode((byte) code), timestamp,
+                            new String(payload, StandardCharsets.UTF_8)));
+                } catch (EOFException e) {
+                    Logger.warn("Ignoring truncated record at end of IPC recording: " + segment);
+                    break;
+                }
+            }
+        }
+
+        return frames;
+    }
+
+    /**
+     * Replay a recording into an event dispatcher.
+     */
+    public static ReplayStats replay(Path file, Speed speed, EventDispatcher dispatcher) throws IOException, InterruptedException {
+        return replay(readRecording(file), speed, dispatcher::dispatch);
+    }
+
+    /**
+     * Replay a recording into an arbitrary message sink.
+     */
+    public static ReplayStats replay(Path file, Speed speed, Consumer<Message> sink) throws IOException, InterruptedException {
+        return replay(readRecording(file), speed, sink);
+    }
+
+    /**
+     * Replay already loaded frames into a message sink. Outbound frames only advance the
+     * clock; inbound frames are parsed and delivered on the calling thread.
+     */
+    public static ReplayStats replay(List<Frame> frames, Speed speed, Consumer<Message> sink) throws InterruptedException {
+        MessageParser parser = new MessageParser();
+        int framesReplayed = 0;
+        int messagesDelivered = 0;
+        long replayStart = System.nanoTime();
+        long firstTimestamp = frames.isEmpty() ? 0 : frames.get(0).getTimestampNanos();
+
+        for (Frame frame : frames) {
+            if (speed == Speed.ORIGINAL) {
+                long due = replayStart + (frame.getTimestampNanos() - firstTimestamp);
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            }
+
+            if (frame.getDirection() != IpcTrafficRecorder.Direction.INBOUND) {
+                continue;
+            }
+
+            framesReplayed++;
+            for (Message message : parser.parse(frame.getPayload() + MessageProtocol.DELIMITER)) {
+                sink.accept(message);
+                messagesDelivered++;
+            }
+        }
+
+        ReplayStats stats = new ReplayStats(framesReplayed, messagesDelivered, System.nanoTime() - replayStart);
+        Logger.info("IPC replay finished: " + stats);
+        return stats;
+    }
+}
@@ -103,8 +103,24 @@ public class MessageBuilder {
      * The server responds with: {domain: 'system', action: 'handshake', data: {caw: 'assigned-id'}}
      */
     public static Message buildHandshake() {
+        return buildHandshake(0);
+    }
+
+    /**
+     * Build a handshake message that also advertises a flow-control window:
+     * {..., data: {clientType: 'intellij', flowControl: {window: N}}}
+     *
+     * A server that supports flow control echoes the (possibly reduced) window in its
+     * handshake response. A window of 0 or less omits the flowControl field.
+     */
+    public static Message buildHandshake(int flowControlWindow) {
         JsonObject data = new JsonObject();
         data.addProperty("clientType", "intellij");
+        if (flowControlWindow > 0) {
+            JsonObject flowControl = new JsonObject();
+            flowControl.addProperty("window", flowControlWindow);
+            data.add("flowControl", flowControl);
+        }
 
         return MessageBuilder.request()
                 .domain("system")
@@ -131,6 +147,21 @@ public class MessageBuilder {
                 .build();
     }
 
+    /**
+     * Build a flow-control credit grant, returning credits for processed messages.
+     */
+    public static Message buildFlowCredit(String guid, int credits) {
+        JsonObject data = new JsonObject();
+        data.addProperty("credits", credits);
+
+        return MessageBuilder.request()
+                .domain("system")
+                .action("flow-credit")
+                .data(data)
+                .caw(guid)
+                .build();
+    }
+
     /**
      * Build an active-path notification message.
      */
@@ -18,6 +18,8 @@ public class SocketManager {
     private static final long INITIAL_RETRY_DELAY_MS = 500;
 
     private SocketAdapter adapter;
+    // Writers on different threads (EDT, trackers, flow-credit grants) must not interleave frames
+    private final Object writeLock = new Object();
     private final String socketPath;
     private final int timeoutMs;
 
@@ -108,7 +110,8 @@ public class SocketManager {
     }
 
     /**
-     * Write a message to the socket.
+     * Write a message to the socket. Safe to call from several threads: each message is
+     * written as a whole.
      *
      * @param message Message to write
      * @throws IOException If write fails
@@ -119,7 +122,9 @@ public class SocketManager {
             throw new IOException("Not connected to socket");
         }
         Logger.debug("Writing " + message.length() + " bytes to socket: " + socketPath);
-        adapter.write(message);
+        synchronized (writeLock) {
+            adapter.write(message);
+        }
         Logger.debug("Successfully wrote message to socket");
     }
 
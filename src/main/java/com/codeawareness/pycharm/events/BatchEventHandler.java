@@ -0,0 +1,23 @@
+package com.codeawareness.pycharm.events;
+
+import com.codeawareness.pycharm.communication.Message;
+
+import java.util.List;
+
+/**
+ * Optional extension of {@link EventHandler} for handlers that can process several
+ * messages at once.
+ * The dispatcher groups consecutive messages for the same handler within a small time
+ * or size window and delivers them together, so handlers can apply only the net effect
+ * (e.g. the last of a burst of active-path updates) in a single pass.
+ */
+public interface BatchEventHandler extends EventHandler {
+
+    /**
+     * Handle a batch of messages, in arrival order.
+     * Batches for the same handler are never delivered concurrently.
+     *
+     * @param messages The messages to handle (never empty)
+     */
+    void handleBatch(List<Message> messages);
+}
@@ -1,6 +1,7 @@
 package com.codeawareness.pycharm.events;
 
 import com.codeawareness.pycharm.communication.Message;
+import com.codeawareness.pycharm.utils.LatencyHistogram;
 import com.codeawareness.pycharm.utils.Logger;
 import com.intellij.openapi.application.ApplicationManager;
 
@@ -9,15 +10,59 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Event dispatcher for routing incoming messages to registered handlers.
  * Handlers are registered by action and invoked asynchronously on background threads.
  * Supports multiple handlers per action to handle multi-project scenarios.
+ *
+ * Messages for a {@link BatchEventHandler} are collected for up to
+ * {@link #DEFAULT_BATCH_WINDOW_MS} (or until {@link #DEFAULT_MAX_BATCH_SIZE} messages are
+ * pending) and delivered together via {@link BatchEventHandler#handleBatch(List)}.
+ *
+ * Handler tasks run through a {@link PriorityDispatchScheduler}: interactive handlers
+ * (see {@link EventHandler#getPriority()}) are drained before background ones, with
+ * per-class latency histograms available for diagnostics.
+ *
+ * {@link #dispatch(Message, Runnable)} reports when every handler has finished with a
+ * message, which is what returns flow-control credits to Muninn.
  */
 public class EventDispatcher {
 
+    static final long DEFAULT_BATCH_WINDOW_MS = 15;
+    static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
     private final Map<String, List<EventHandler>> handlers = new ConcurrentHashMap<>();
+    private final Map<BatchEventHandler, PendingBatch> pendingBatches = new ConcurrentHashMap<>();
+    private final PriorityDispatchScheduler scheduler;
+    private final ScheduledExecutorService batchScheduler;
+    private final long batchWindowMs;
+    private final int maxBatchSize;
+
+    public EventDispatcher() {
+        this(runnable -> ApplicationManager.getApplication().executeOnPooledThread(runnable),
+             DEFAULT_BATCH_WINDOW_MS, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Create a dispatcher with a custom executor and batching window (for testing).
+     */
+    EventDispatcher(Executor executor, long batchWindowMs, int maxBatchSize) {
+        this.scheduler = new PriorityDispatchScheduler(executor);
+        this.batchWindowMs = batchWindowMs;
+        this.maxBatchSize = maxBatchSize;
+        this.batchScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "CodeAwareness-EventBatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
     /**
      * Register an event handler.
@@ -56,6 +101,13 @@ public class EventDispatcher {
         }
 
         String action = handler.getAction();
+        if (handler instanceof BatchEventHandler) {
+            PendingBatch pending = pendingBatches.remove(handler);
+            if (pending != null) {
+                pending.discard();
+            }
+        }
+
         List<EventHandler> handlerList = handlers.get(action);
         if (handlerList != null) {
             boolean removed = handlerList.remove(handler);
@@ -79,6 +131,12 @@ public class EventDispatcher {
         if (action != null) {
             List<EventHandler> removed = handlers.remove(action);
             if (removed != null) {
+                for (EventHandler handler : removed) {
+                    PendingBatch pending = pendingBatches.remove(handler);
+                    if (pending != null) {
+                        pending.discard();
+                    }
+                }
                 Logger.debug("Unregistered all event handlers for action: " + action + " (count: " + removed.size() + ")");
             }
         }
@@ -92,8 +150,22 @@ public class EventDispatcher {
      * @return true if at least one handler was found and invoked, false otherwise
      */
     public boolean dispatch(Message message) {
+        return dispatch(message, null);
+    }
+
+    /**
+     * Dispatch a message and get notified once all matched handlers have finished with it
+     * (including batch-aware handlers, whose batch contains the message). If no handler
+     * matches, the callback runs immediately on the calling thread.
+     *
+     * @param message    The message to dispatch
+     * @param onComplete Callback run exactly once when processing is done; may be null
+     * @return true if at least one handler was found and invoked, false otherwise
+     */
+    public boolean dispatch(Message message, Runnable onComplete) {
         if (message == null) {
             Logger.warn("Cannot dispatch null message");
+            runCompletion(onComplete);
             return false;
         }
 
@@ -131,19 +203,29 @@ public class EventDispatcher {
 
         if (matchedHandlers.isEmpty()) {
             Logger.warn("No handler found for message: " + fullAction + " (domain: " + message.getDomain() + ", action: " + message.getAction() + ", flow: " + message.getFlow() + ")");
+            runCompletion(onComplete);
             return false;
         }
 
+        Runnable handlerDone = completionCountdown(matchedHandlers.size(), onComplete);
+
         // Invoke all matched handlers asynchronously
         Logger.info("Dispatching message to " + matchedHandlers.size() + " handler(s) for: " + fullAction);
         for (EventHandler handler : matchedHandlers) {
+            if (handler instanceof BatchEventHandler) {
+                enqueueForBatch((BatchEventHandler) handler, message, handlerDone);
+                continue;
+            }
+
             final EventHandler finalHandler = handler;
             Logger.info("  -> Invoking handler: " + finalHandler.getClass().getSimpleName());
-            ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            scheduler.submit(finalHandler.getPriority(), () -> {
                 try {
                     finalHandler.handle(message);
                 } catch (Exception e) {
                     Logger.error("Error in event handler: " + finalHandler.getAction() + " (" + finalHandler.getClass().getSimpleName() + ")", e);
+                } finally {
+                    runCompletion(handlerDone);
                 }
             });
         }
@@ -151,11 +233,64 @@ public class EventDispatcher {
         return true;
     }
 
+    /**
+     * Add a message to the pending batch of a batch-aware handler, scheduling a flush
+     * at the end of the batch window or immediately once the batch is full.
+     */
+    private void enqueueForBatch(BatchEventHandler handler, Message message, Runnable onDelivered) {
+        PendingBatch pending = pendingBatches.computeIfAbsent(handler, PendingBatch::new);
+        switch (pending.add(message, onDelivered, maxBatchSize)) {
+            case SCHEDULE:
+                pending.setFlushFuture(batchScheduler.schedule(
+                    () -> scheduler.submit(handler.getPriority(), pending::flush), batchWindowMs, TimeUnit.MILLISECONDS));
+                break;
+            case FLUSH_NOW:
+                scheduler.submit(handler.getPriority(), pending::flush);
+                break;
+            default:
+                // A flush is already scheduled or running and will pick this message up
+                break;
+        }
+    }
+
+    /**
+     * Build a callback that runs onComplete after being invoked {@code count} times.
+     */
+    private static Runnable completionCountdown(int count, Runnable onComplete) {
+        if (onComplete == null) {
+            return null;
+        }
+        if (count == 1) {
+            return onComplete;
+        }
+        AtomicInteger remaining = new AtomicInteger(count);
+        return () -> {
+            if (remaining.decrementAndGet() == 0) {
+                onComplete.run();
+            }
+        };
+    }
+
+    private static void runCompletion(Runnable completion) {
+        if (completion == null) {
+            return;
+        }
+        try {
+            completion.run();
+        } catch (Exception e) {
+            Logger.warn("Error in dispatch completion callback", e);
+        }
+    }
+
     /**
      * Clear all registered handlers.
      */
     public void clear() {
         int count = handlers.size();
+        for (PendingBatch pending : pendingBatches.values()) {
+            pending.discard();
+        }
+        pendingBatches.clear();
         handlers.clear();
         Logger.debug("Cleared " + count + " event handlers");
     }
@@ -189,4 +324,137 @@ public class EventDispatcher {
         List<EventHandler> handlerList = handlers.get(action);
         return handlerList != null ? handlerList.size() : 0;
     }
+
+    /**
+     * Get the histogram of dispatch-to-completion latency for a priority class.
+     */
+    public LatencyHistogram getLatencyHistogram(EventPriority priority) {
+        return scheduler.getCompletionHistogram(priority);
+    }
+
+    /**
+     * Get the histogram of time handler tasks spent queued for a priority class.
+     */
+    public LatencyHistogram getQueueWaitHistogram(EventPriority priority) {
+        return scheduler.getQueueWaitHistogram(priority);
+    }
+
+    /**
+     * Get a one-line-per-class summary of dispatch latencies (for logs and diagnostics).
+     */
+    public String getLatencySummary() {
+        StringBuilder summary = new StringBuilder();
+        for (EventPriority priority : EventPriority.values()) {
+            summary.append(priority)
+                   .append(": queued=").append(scheduler.getQueuedCount(priority))
+                   .append(", wait[").append(scheduler.getQueueWaitHistogram(priority))
+                   .append("], total[").append(scheduler.getCompletionHistogram(priority))
+                   .append("]\n");
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Stop the batch scheduler. Pending batches and queued tasks are discarded.
+     */
+    public void shutdown() {
+        clear();
+        scheduler.clear();
+        batchScheduler.shutdownNow();
+    }
+
+    /**
+     * Messages waiting to be delivered to one batch-aware handler.
+     * At most one flush per handler is scheduled or running at any time, so batches
+     * are delivered in order and never concurrently.
+     */
+    private static final class PendingBatch {
+
+        enum AddResult { SCHEDULE, FLUSH_NOW, PENDING }
+
+        private final BatchEventHandler handler;
+        private List<Message> messages = new ArrayList<>();
+        private List<Runnable> completions = new ArrayList<>();
+        private boolean flushPending = false;
+        private boolean running = false;
+        private ScheduledFuture<?> flushFuture;
+
+        PendingBatch(BatchEventHandler handler) {
+            this.handler = handler;
+        }
+
+        synchronized AddResult add(Message message, Runnable onDelivered, int maxBatchSize) {
+            messages.add(message);
+            if (onDelivered != null) {
+                completions.add(onDelivered);
+            }
+            if (!flushPending) {
+                flushPending = true;
+                return messages.size() >= maxBatchSize ? AddResult.FLUSH_NOW : AddResult.SCHEDULE;
+            }
+            if (!running && messages.size() >= maxBatchSize && flushFuture != null && flushFuture.cancel(false)) {
+                flushFuture = null;
+                return AddResult.FLUSH_NOW;
+            }
+            return AddResult.PENDING;
+        }
+
+        synchronized void setFlushFuture(ScheduledFuture<?> future) {
+            if (flushPending && !running) {
+                flushFuture = future;
+            }
+        }
+
+        void discard() {
+            List<Runnable> dropped;
+            synchronized (this) {
+                messages = new ArrayList<>();
+                dropped = completions;
+                completions = new ArrayList<>();
+                if (flushFuture != null) {
+                    flushFuture.cancel(false);
+                    flushFuture = null;
+                }
+                if (!running) {
+                    flushPending = false;
+                }
+            }
+
+            // Dropped messages are done as far as the sender is concerned
+            for (Runnable completion : dropped) {
+                runCompletion(completion);
+            }
+        }
+
+        void flush() {
+            while (true) {
+                List<Message> batch;
+                List<Runnable> batchCompletions;
+                synchronized (this) {
+                    flushFuture = null;
+                    if (messages.isEmpty()) {
+                        flushPending = false;
+                        running = false;
+                        return;
+                    }
+                    running = true;
+                    batch = messages;
+                    messages = new ArrayList<>();
+                    batchCompletions = completions;
+                    completions = new ArrayList<>();
+                }
+
+                Logger.debug("Delivering batch of " + batch.size() + " message(s) to " + handler.getClass().getSimpleName());
+                try {
+                    handler.handleBatch(batch);
+                } catch (Exception e) {
+                    Logger.error("Error in batch event handler: " + handler.getAction() + " (" + handler.getClass().getSimpleName() + ")", e);
+                } finally {
+                    for (Runnable completion : batchCompletions) {
+                        runCompletion(completion);
+                    }
+                }
+            }
+        }
+    }
 }
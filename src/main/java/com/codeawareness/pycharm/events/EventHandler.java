@@ -21,6 +21,14 @@ public interface EventHandler {
      */
     void handle(Message message);
 
+    /**
+     * Get the scheduling class of this handler.
+     * Interactive handlers are dispatched ahead of background ones when the pool is busy.
+     */
+    default EventPriority getPriority() {
+        return EventPriority.NORMAL;
+    }
+
     /**
      * Check if this handler should process the given message.
      * Default implementation checks if message action matches handler action.
@@ -0,0 +1,16 @@
+package com.codeawareness.pycharm.events;
+
+/**
+ * Scheduling class of an event handler.
+ * The dispatcher always drains higher classes first, but a task that has waited longer
+ * than the starvation limit is served regardless of class so background work still
+ * makes progress.
+ */
+public enum EventPriority {
+    /** User-visible, latency-sensitive updates (e.g. highlights after a tab switch). */
+    INTERACTIVE,
+    /** Default class for handlers that do not declare one. */
+    NORMAL,
+    /** Bulk or housekeeping work (sync responses, auth refreshes, peer diffs). */
+    BACKGROUND
+}
@@ -0,0 +1,173 @@
+package com.codeawareness.pycharm.events;
+
+import com.codeawareness.pycharm.utils.LatencyHistogram;
+import com.codeawareness.pycharm.utils.Logger;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs handler tasks on a bounded number of worker slots, always picking the most
+ * urgent {@link EventPriority} first.
+ *
+ * Tasks are queued per priority class; at most {@code maxConcurrency} drain loops run on
+ * the underlying executor at a time. Whenever a slot frees up, the oldest task of the
+ * highest non-empty class runs next, unless a lower-class task has waited longer than
+ * the starvation limit, in which case the longest-starved task runs first. That keeps
+ * interactive latency low during background bursts while guaranteeing forward progress.
+ */
+class PriorityDispatchScheduler {
+
+    static final int DEFAULT_MAX_CONCURRENCY = 4;
+    static final long DEFAULT_STARVATION_LIMIT_MS = 250;
+
+    private final Executor executor;
+    private final int maxConcurrency;
+    private final long starvationLimitNanos;
+    private final Map<EventPriority, ArrayDeque<QueuedTask>> queues = new EnumMap<>(EventPriority.class);
+    private final Map<EventPriority, LatencyHistogram> queueWaitHistograms = new EnumMap<>(EventPriority.class);
+    private final Map<EventPriority, LatencyHistogram> completionHistograms = new EnumMap<>(EventPriority.class);
+    private int running = 0;
+
+    PriorityDispatchScheduler(Executor executor) {
+        this(executor, DEFAULT_MAX_CONCURRENCY, DEFAULT_STARVATION_LIMIT_MS);
+    }
+
+    PriorityDispatchScheduler(Executor executor, int maxConcurrency, long starvationLimitMs) {
+        this.executor = executor;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.starvationLimitNanos = TimeUnit.MILLISECONDS.toNanos(starvationLimitMs);
+        for (EventPriority priority : EventPriority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+            queueWaitHistograms.put(priority, new LatencyHistogram());
+            completionHistograms.put(priority, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Queue a task in the given priority class.
+     */
+    void submit(EventPriority priority, Runnable task) {
+        EventPriority effective = priority != null ? priority : EventPriority.NORMAL;
+        boolean startWorker;
+        synchronized (this) {
+            queues.get(effective).addLast(new QueuedTask(effective, task, System.nanoTime()));
+            startWorker = running < maxConcurrency;
+            if (startWorker) {
+                running++;
+            }
+        }
+
+        if (startWorker) {
+            try {
+                executor.execute(this::drain);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    running--;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Worker loop: run queued tasks until all queues are empty, then release the slot.
+     */
+    private void drain() {
+        while (true) {
+            QueuedTask next;
+            synchronized (this) {
+                next = pollNext(System.nanoTime());
+                if (next == null) {
+                    running--;
+                    return;
+                }
+            }
+
+            long started = System.nanoTime();
+            queueWaitHistograms.get(next.priority).record(started - next.enqueuedNanos);
+            try {
+                next.task.run();
+            } catch (Exception e) {
+                Logger.warn("Error in " + next.priority + " dispatch task", e);
+            } catch (Throwable t) {
+                // Keep draining: a worker that dies here would hold its slot for good
+                Logger.error("Error in " + next.priority + " dispatch task", t);
+            } finally {
+                completionHistograms.get(next.priority).record(System.nanoTime() - next.enqueuedNanos);
+            }
+        }
+    }
+
+    /**
+     * Pick the next task. Must be called while holding the monitor.
+     */
+    private QueuedTask pollNext(long now) {
+        // Starvation guard: the longest-waiting task past the limit wins
+        QueuedTask starved = null;
+        for (ArrayDeque<QueuedTask> queue : queues.values()) {
+            QueuedTask head = queue.peekFirst();
+            if (head != null && now - head.enqueuedNanos >= starvationLimitNanos
+                    && (starved == null || head.enqueuedNanos < starved.enqueuedNanos)) {
+                starved = head;
+            }
+        }
+        if (starved != null) {
+            return queues.get(starved.priority).pollFirst();
+        }
+
+        // EnumMap iterates in declaration order: INTERACTIVE first
+        for (ArrayDeque<QueuedTask> queue : queues.values()) {
+            QueuedTask head = queue.pollFirst();
+            if (head != null) {
+                return head;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the histogram of time spent queued before a task started, per class.
+     */
+    LatencyHistogram getQueueWaitHistogram(EventPriority priority) {
+        return queueWaitHistograms.get(priority);
+    }
+
+    /**
+     * Get the histogram of time from submission to task completion, per class.
+     */
+    LatencyHistogram getCompletionHistogram(EventPriority priority) {
+        return completionHistograms.get(priority);
+    }
+
+    /**
+     * Get the number of tasks waiting in a class.
+     */
+    synchronized int getQueuedCount(EventPriority priority) {
+        return queues.get(priority).size();
+    }
+
+    /**
+     * Drop every queued task that has not started yet.
+     */
+    synchronized void clear() {
+        for (ArrayDeque<QueuedTask> queue : queues.values()) {
+            queue.clear();
+        }
+    }
+
+    private static final class QueuedTask {
+        final EventPriority priority;
+        final Runnable task;
+        final long enqueuedNanos;
+
+        QueuedTask(EventPriority priority, Runnable task, long enqueuedNanos) {
+            this.priority = priority;
+            this.task = task;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+}
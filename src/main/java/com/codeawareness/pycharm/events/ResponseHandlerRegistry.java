@@ -1,33 +1,110 @@
 package com.codeawareness.pycharm.events;
 
+import com.codeawareness.pycharm.utils.HashedTimerWheel;
 import com.codeawareness.pycharm.utils.Logger;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 /**
  * Registry for one-time response handlers.
  * Manages handlers that should be invoked once when a response is received,
  * then automatically cleaned up.
+ *
+ * Every handler has a deadline. Handlers whose response does not arrive in time
+ * (e.g. Muninn restarted) are removed by a hashed timer wheel and their timeout
+ * callback is invoked, so a later unrelated response with the same key cannot fire
+ * a stale handler. The number of outstanding handlers is capped; registrations
+ * beyond the cap are rejected.
  */
 public class ResponseHandlerRegistry {
 
-    private final Map<String, Consumer<Object>> handlers = new ConcurrentHashMap<>();
+    public static final long DEFAULT_TIMEOUT_MS = 30_000;
+    public static final int DEFAULT_MAX_OUTSTANDING = 1024;
+
+    private static final long TICK_MS = 100;
+    private static final int WHEEL_SIZE = 512;
+    private static final int RECENTLY_EXPIRED_CAPACITY = 256;
+
+    private final Map<String, PendingResponse> handlers = new ConcurrentHashMap<>();
+    private final HashedTimerWheel timerWheel;
+    private final long defaultTimeoutMs;
+    private final int maxOutstanding;
+    private final AtomicLong timedOutCount = new AtomicLong();
+    private final AtomicLong lateResponseCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    // Keys whose handler expired recently, to recognise late responses
+    private final Map<String, Boolean> recentlyExpired = Collections.synchronizedMap(
+        new LinkedHashMap<String, Boolean>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > RECENTLY_EXPIRED_CAPACITY;
+            }
+        });
+
+    public ResponseHandlerRegistry() {
+        this(new HashedTimerWheel(TICK_MS, WHEEL_SIZE, "CodeAwareness-ResponseTimeouts"),
+             DEFAULT_TIMEOUT_MS, DEFAULT_MAX_OUTSTANDING);
+    }
 
     /**
-     * Register a one-time response handler.
+     * Create a registry with a custom timer wheel, default timeout and cap (for testing).
+     */
+    ResponseHandlerRegistry(HashedTimerWheel timerWheel, long defaultTimeoutMs, int maxOutstanding) {
+        this.timerWheel = timerWheel;
+        this.defaultTimeoutMs = defaultTimeoutMs;
+        this.maxOutstanding = maxOutstanding;
+    }
+
+    /**
+     * Register a one-time response handler with the default timeout.
      *
      * @param key     Unique key for this handler (typically request ID or action)
      * @param handler Handler to invoke when response is received
+     * @return true if registered, false if rejected (null arguments or too many outstanding)
      */
-    public void register(String key, Consumer<Object> handler) {
+    public boolean register(String key, Consumer<Object> handler) {
+        return register(key, handler, defaultTimeoutMs, null);
+    }
+
+    /**
+     * Register a one-time response handler with an explicit deadline.
+     * A handler already registered under the same key is replaced without being invoked.
+     *
+     * @param key       Unique key for this handler (typically request ID or action)
+     * @param handler   Handler to invoke when response is received
+     * @param timeoutMs Time to wait for the response before expiring the handler
+     * @param onTimeout Callback invoked (on the timer thread) if the handler expires; may be null
+     * @return true if registered, false if rejected (null arguments or too many outstanding)
+     */
+    public boolean register(String key, Consumer<Object> handler, long timeoutMs, Runnable onTimeout) {
         if (key == null || handler == null) {
             Logger.warn("Cannot register null key or handler");
-            return;
+            return false;
+        }
+
+        if (handlers.size() >= maxOutstanding && !handlers.containsKey(key)) {
+            rejectedCount.incrementAndGet();
+            Logger.warn("Rejecting response handler for key: " + key +
+                       " (" + maxOutstanding + " responses already outstanding)");
+            return false;
         }
-        handlers.put(key, handler);
-        Logger.debug("Registered response handler for key: " + key);
+
+        PendingResponse pending = new PendingResponse(handler, onTimeout);
+        PendingResponse previous = handlers.put(key, pending);
+        if (previous != null) {
+            previous.cancelTimeout();
+        }
+        pending.timeout = timerWheel.schedule(() -> expire(key, pending), timeoutMs);
+        recentlyExpired.remove(key);
+
+        Logger.debug("Registered response handler for key: " + key + " (timeout: " + timeoutMs + "ms)");
+        return true;
     }
 
     /**
@@ -43,14 +120,20 @@ public class ResponseHandlerRegistry {
             return false;
         }
 
-        Consumer<Object> handler = handlers.remove(key);
-        if (handler == null) {
-            Logger.debug("No handler found for key: " + key);
+        PendingResponse pending = handlers.remove(key);
+        if (pending == null) {
+            if (recentlyExpired.remove(key) != null) {
+                lateResponseCount.incrementAndGet();
+                Logger.debug("Late response for expired handler: " + key);
+            } else {
+                Logger.debug("No handler found for key: " + key);
+            }
             return false;
         }
+        pending.cancelTimeout();
 
         try {
-            handler.accept(response);
+            pending.handler.accept(response);
             Logger.debug("Handled response for key: " + key);
             return true;
         } catch (Exception e) {
@@ -69,7 +152,10 @@ public class ResponseHandlerRegistry {
      */
     public void remove(String key) {
         if (key != null) {
-            handlers.remove(key);
+            PendingResponse pending = handlers.remove(key);
+            if (pending != null) {
+                pending.cancelTimeout();
+            }
             Logger.debug("Removed handler for key: " + key);
         }
     }
@@ -79,14 +165,90 @@ public class ResponseHandlerRegistry {
      */
     public void clear() {
         int count = handlers.size();
+        for (PendingResponse pending : handlers.values()) {
+            pending.cancelTimeout();
+        }
         handlers.clear();
         Logger.debug("Cleared " + count + " response handlers");
     }
 
+    /**
+     * Clear all handlers and stop the timeout timer.
+     */
+    public void shutdown() {
+        clear();
+        timerWheel.stop();
+    }
+
     /**
      * Get the number of registered handlers.
      */
     public int size() {
         return handlers.size();
     }
+
+    /**
+     * Get the number of responses currently awaited.
+     */
+    public int getOutstandingCount() {
+        return handlers.size();
+    }
+
+    /**
+     * Get the number of handlers that expired before their response arrived.
+     */
+    public long getTimedOutCount() {
+        return timedOutCount.get();
+    }
+
+    /**
+     * Get the number of responses that arrived after their handler had expired.
+     */
+    public long getLateResponseCount() {
+        return lateResponseCount.get();
+    }
+
+    /**
+     * Get the number of registrations rejected because the cap was reached.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    private void expire(String key, PendingResponse pending) {
+        // Only remove the entry this timeout belongs to, not a newer registration
+        if (!handlers.remove(key, pending)) {
+            return;
+        }
+
+        timedOutCount.incrementAndGet();
+        recentlyExpired.put(key, Boolean.TRUE);
+        Logger.warn("Response handler timed out for key: " + key);
+
+        if (pending.onTimeout != null) {
+            try {
+                pending.onTimeout.run();
+            } catch (Exception e) {
+                Logger.warn("Error in response timeout callback for key: " + key + " - " + e.getMessage());
+            }
+        }
+    }
+
+    private static final class PendingResponse {
+        final Consumer<Object> handler;
+        final Runnable onTimeout;
+        volatile HashedTimerWheel.Timeout timeout;
+
+        PendingResponse(Consumer<Object> handler, Runnable onTimeout) {
+            this.handler = handler;
+            this.onTimeout = onTimeout;
+        }
+
+        void cancelTimeout() {
+            HashedTimerWheel.Timeout scheduled = timeout;
+            if (scheduled != null) {
+                scheduled.cancel();
+            }
+        }
+    }
 }
@@ -2,8 +2,12 @@ package com.codeawareness.pycharm.events.handlers;
 
 import com.codeawareness.pycharm.CodeAwarenessProjectService;
 import com.codeawareness.pycharm.communication.Message;
-import com.codeawareness.pycharm.events.EventHandler;
+import com.codeawareness.pycharm.events.BatchEventHandler;
+import com.codeawareness.pycharm.events.EventPriority;
 import com.codeawareness.pycharm.highlighting.HighlightManager;
+import com.codeawareness.pycharm.highlighting.LineIndex;
+import com.codeawareness.pycharm.highlighting.PeerChangeIndex;
+import com.codeawareness.pycharm.monitoring.HighlightPrefetcher;
 import com.codeawareness.pycharm.utils.Logger;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
@@ -11,17 +15,28 @@ import com.google.gson.JsonObject;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 
-import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Handles active-path response events from the Kawa Code backend.
  * Applies code highlights based on the hl (highlight) array from Gardener.
+ * A response answers either the user's active file or a background prefetch (see
+ * {@link HighlightPrefetcher}). Each carries the complete highlight set for its file, so
+ * a burst of responses is collapsed to the most recent one per file.
  */
-public class ActivePathHandler implements EventHandler {
+public class ActivePathHandler implements BatchEventHandler {
+
+    // Diagnostics describe one response in this many, and only with debug logging on
+    private static final int DIAGNOSTIC_SAMPLE_RATE = 16;
+    private static final int DIAGNOSTIC_ELEMENTS = 16;
 
     private final Project project;
     private final HighlightManager highlightManager;
+    private final HighlightLineParser parser = new HighlightLineParser();
+    private final AtomicLong responseCount = new AtomicLong();
 
     public ActivePathHandler(Project project, HighlightManager highlightManager) {
         this.project = project;
@@ -33,6 +48,38 @@ public class ActivePathHandler implements EventHandler {
         return "code:active-path";
     }
 
+    @Override
+    public EventPriority getPriority() {
+        return EventPriority.INTERACTIVE;
+    }
+
+    @Override
+    public void handleBatch(List<Message> messages) {
+        CodeAwarenessProjectService projectService = project.getService(CodeAwarenessProjectService.class);
+        if (projectService == null) {
+            return;
+        }
+        // Work out each response's file in arrival order; only the net effect matters, so
+        // keep the last response for each file
+        Map<String, JsonObject> latestByFile = new LinkedHashMap<>();
+        for (Message message : messages) {
+            JsonObject data = message.getFlow() != Message.Flow.REQ ? message.getDataAsObject() : null;
+            String filePath = data != null ? resolveFilePath(projectService, data) : null;
+            if (filePath != null) {
+                latestByFile.remove(filePath);
+                latestByFile.put(filePath, data);
+            }
+        }
+        for (Map.Entry<String, JsonObject> entry : latestByFile.entrySet()) {
+            projectService.getHighlightPrefetcher().claimResponse(entry.getKey());
+            apply(entry.getValue(), entry.getKey());
+        }
+        if (messages.size() > latestByFile.size() && messages.size() > 1) {
+            Logger.debug("Coalesced " + messages.size() + " active-path messages into " + latestByFile.size() +
+                        " update(s)");
+        }
+    }
+
     @Override
     public void handle(Message message) {
         // Only process responses (RES or null — Muninn often omits the flow field)
@@ -41,90 +88,120 @@ public class ActivePathHandler implements EventHandler {
             return;
         }
 
-        Logger.info("ActivePathHandler.handle() called for project: " + project.getName() +
-                   ", flow: " + message.getFlow() + ", domain: " + message.getDomain() +
-                   ", action: " + message.getAction());
-
         JsonObject data = message.getDataAsObject();
         if (data == null) {
             Logger.debug("active-path response has no data");
             return;
         }
 
-        // Log the ENTIRE raw JSON to see what we're actually receiving
-        Logger.info("=== FULL DATA OBJECT ===");
-        Logger.info(data.toString());
-        Logger.info("=== END FULL DATA ===");
-
-        // Log the data structure for debugging
-        Logger.info("active-path response data keys: " + data.keySet());
-        if (data.has("hl")) {
-            Logger.info("hl field RAW: " + data.get("hl"));
-            Logger.info("hl field toString: " + data.get("hl").toString());
-
-            // Try to get the raw JSON string before Gson parses it
-            JsonArray hlArray = data.get("hl").getAsJsonArray();
-            for (int i = 0; i < hlArray.size(); i++) {
-                Logger.info("hl[" + i + "] raw element: " + hlArray.get(i) + ", as int: " + hlArray.get(i).getAsInt() + ", as long: " + hlArray.get(i).getAsLong());
-            }
+        CodeAwarenessProjectService projectService = project.getService(CodeAwarenessProjectService.class);
+        if (projectService == null) {
+            return;
         }
+        String filePath = resolveFilePath(projectService, data);
+        if (filePath != null) {
+            projectService.getHighlightPrefetcher().claimResponse(filePath);
+            apply(data, filePath);
+        }
+    }
 
-        // Fallback: accept "highlights" field as alias for "hl"
-        if (!data.has("hl") && data.has("highlights")) {
-            data.add("hl", data.get("highlights"));
+    /**
+     * Find the file a response is for (see {@link HighlightPrefetcher#resolveResponse}).
+     *
+     * @return the absolute path, or null if there is no file to apply the response to
+     */
+    private String resolveFilePath(CodeAwarenessProjectService projectService, JsonObject data) {
+        JsonElement activePath = data.get("activePath");
+        String responsePath = activePath != null && activePath.isJsonPrimitive() ? activePath.getAsString() : null;
+        VirtualFile activeFile = projectService.getActiveFile();
+        String filePath = projectService.getHighlightPrefetcher().resolveResponse(
+            responsePath, activeFile != null ? activeFile.getPath() : null);
+        if (filePath == null) {
+            Logger.debug("Dropping active-path response" + (responsePath != null ? " for " + responsePath : "") +
+                        ": it answers neither the active file nor a prefetch in flight");
         }
+        return filePath;
+    }
 
-        // Extract the hl (highlight) array
-        if (!data.has("hl")) {
+    /**
+     * Replace the highlights of a file with the lines of a response's hl array.
+     */
+    private void apply(JsonObject data, String filePath) {
+        // Fallback: accept "highlights" field as alias for "hl"
+        JsonElement hlElement = data.has("hl") ? data.get("hl") : data.get("highlights");
+        if (hlElement == null) {
             Logger.debug("active-path response has no hl field - no highlights to apply");
             return;
         }
-
-        JsonElement hlElement = data.get("hl");
-        Logger.info("hl element type: " + hlElement.getClass().getName() + ", value: " + hlElement);
-
         if (!hlElement.isJsonArray()) {
-            Logger.warn("active-path hl field is not an array: " + hlElement);
+            Logger.warn("active-path hl field is not an array (" + hlElement.getClass().getSimpleName() + ")");
             return;
         }
 
         JsonArray hlArray = hlElement.getAsJsonArray();
-        List<Integer> highlightLines = new ArrayList<>();
-
-        // Parse line numbers from the array
-        for (JsonElement element : hlArray) {
-            if (element.isJsonPrimitive() && element.getAsJsonPrimitive().isNumber()) {
-                int lineNumber = element.getAsInt();
-                Logger.debug("Parsed line number from hl array: " + lineNumber + " (raw: " + element + ")");
-                highlightLines.add(lineNumber);
-            } else {
-                Logger.warn("Skipping non-numeric element in hl array: " + element);
-            }
+        LineIndex lines = parser.parse(hlArray);
+        int skipped = parser.getLastSkippedCount();
+        if (skipped > 0) {
+            Logger.warn("Skipped " + skipped + " non-numeric or out-of-range element(s) in hl array");
+        }
+        if (Logger.isDebugEnabled() && responseCount.getAndIncrement() % DIAGNOSTIC_SAMPLE_RATE == 0) {
+            logDiagnostics(data, hlArray, lines);
         }
 
-        Logger.info("Received " + highlightLines.size() + " highlight lines for project: " + project.getName());
-        Logger.info("Line numbers: " + highlightLines);
+        // Replace existing highlights in one EDT pass
+        // (hl array uses 0-based line numbers, which matches IntelliJ's API)
+        highlightManager.applyHighlights(filePath, lines);
+        Logger.debug("Applying " + lines.size() + " highlight lines to: " + filePath);
+        applyPeerLayer(filePath, lines);
+        recordPeerChanges(data, filePath, lines);
+        CodeAwarenessProjectService projectService = project.getService(CodeAwarenessProjectService.class);
+        if (projectService != null) {
+            // Hashed here, off the EDT, rather than all at once when the project closes
+            projectService.recordHighlightSnapshot(filePath, lines);
+        }
+    }
 
-        // Get the currently active file
+    /**
+     * While a peer is selected the lines are that peer's changes: keep them as the peer's
+     * layer of the file, so every peer selected so far shows in its own color.
+     */
+    private void applyPeerLayer(String filePath, LineIndex lines) {
         CodeAwarenessProjectService projectService = project.getService(CodeAwarenessProjectService.class);
-        VirtualFile activeFile = projectService != null ? projectService.getActiveFile() : null;
+        String peer = projectService != null ? projectService.getSelectedPeer() : null;
+        if (peer != null) {
+            highlightManager.setPeerHighlights(filePath, peer, lines);
+        }
+    }
 
-        if (activeFile == null) {
-            Logger.warn("No active file to apply highlights to");
+    /**
+     * Update the project-wide peer-change index with the files listed in the response's
+     * {@code agg} object, and with the highlighted line count of this file.
+     */
+    private void recordPeerChanges(JsonObject data, String filePath, LineIndex lines) {
+        CodeAwarenessProjectService projectService = project.getService(CodeAwarenessProjectService.class);
+        if (projectService == null) {
             return;
         }
-
-        String filePath = activeFile.getPath();
-        Logger.info("Applying highlights to file: " + filePath);
-
-        // Clear existing highlights for this file first
-        highlightManager.clearHighlights(filePath);
-
-        // Apply new highlights (hl array uses 0-based line numbers, which matches IntelliJ's API)
-        for (Integer lineNumber : highlightLines) {
-            highlightManager.addHighlight(filePath, lineNumber);
+        PeerChangeIndex index = projectService.getPeerChangeIndex();
+        AggregatedPeerChanges changes = AggregatedPeerChanges.parse(data, project.getBasePath());
+        if (changes != null) {
+            changes.applyTo(index);
         }
+        // The hl array is exact for this file; the aggregate only tells who changed it
+        index.update(filePath, lines.size(), changes != null ? changes.peers.get(filePath) : null);
+    }
 
-        Logger.info("Applied " + highlightLines.size() + " highlights to: " + filePath);
+    /**
+     * Describe a response without dumping it: the data keys, the array size and its first elements.
+     */
+    private void logDiagnostics(JsonObject data, JsonArray hlArray, LineIndex lines) {
+        StringBuilder head = new StringBuilder();
+        int shown = Math.min(hlArray.size(), DIAGNOSTIC_ELEMENTS);
+        for (int i = 0; i < shown; i++) {
+            head.append(i == 0 ? "" : ", ").append(hlArray.get(i));
+        }
+        Logger.debug("active-path response for project " + project.getName() + ": keys=" + data.keySet() +
+                    ", hl size=" + hlArray.size() + ", hl head=[" + head + (hlArray.size() > shown ? ", ..." : "") +
+                    "], " + lines);
     }
 }
@@ -0,0 +1,117 @@
+package com.codeawareness.pycharm.events.handlers;
+
+import com.codeawareness.pycharm.highlighting.PeerChangeIndex;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The files of the project that peers changed, parsed from the {@code agg} object of an
+ * active-path or sync response. Keys are file paths, relative to the response's
+ * {@code root} (or the project directory) or absolute.
+ * A value is either the peers of the file (an array of names or of user objects), a
+ * changed line count, or an object with {@code lines} (a count or an array of lines) and
+ * {@code peers} or {@code users}. Unknown shapes count as a change without details.
+ */
+final class AggregatedPeerChanges {
+
+    private static final Pattern WINDOWS_PATH = Pattern.compile("^[A-Za-z]:/.*");
+
+    final String root;
+    final Map<String, Integer> lineCounts = new HashMap<>();
+    final Map<String, List<String>> peers = new HashMap<>();
+
+    private AggregatedPeerChanges(String root) {
+        this.root = root;
+    }
+
+    /**
+     * Parse the aggregate of a response.
+     *
+     * @param basePath the project directory, used when the response has no root
+     * @return the changed line counts and peers by absolute file path, or null if the
+     *         response has no {@code agg} object or no root
+     */
+    static AggregatedPeerChanges parse(JsonObject data, String basePath) {
+        JsonElement agg = data.get("agg");
+        JsonElement rootElement = data.get("root");
+        String root = rootElement != null && rootElement.isJsonPrimitive()
+            ? rootElement.getAsString().replace('\\', '/') : basePath;
+        if (agg == null || !agg.isJsonObject() || root == null) {
+            return null;
+        }
+        if (root.endsWith("/")) {
+            root = root.substring(0, root.length() - 1);
+        }
+        AggregatedPeerChanges result = new AggregatedPeerChanges(root);
+
+        for (Map.Entry<String, JsonElement> entry : agg.getAsJsonObject().entrySet()) {
+            String path = entry.getKey().replace('\\', '/');
+            String filePath = path.startsWith("/") || path.startsWith(root + "/") || WINDOWS_PATH.matcher(path).matches()
+                ? path : root + "/" + path;
+            result.parseEntry(filePath, entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Make these the peer changes of every file under the root, removing the others.
+     */
+    void applyTo(PeerChangeIndex index) {
+        index.replaceAll(root, lineCounts, peers);
+    }
+
+    private void parseEntry(String filePath, JsonElement value) {
+        int lines = 0;
+        List<String> names = Collections.emptyList();
+        if (value.isJsonArray()) {
+            names = parsePeers(value.getAsJsonArray());
+        } else if (value.isJsonPrimitive() && value.getAsJsonPrimitive().isNumber()) {
+            lines = value.getAsInt();
+        } else if (value.isJsonObject()) {
+            JsonObject details = value.getAsJsonObject();
+            JsonElement lineElement = details.has("lines") ? details.get("lines") : details.get("hl");
+            if (lineElement != null && lineElement.isJsonArray()) {
+                lines = lineElement.getAsJsonArray().size();
+            } else if (lineElement != null && lineElement.isJsonPrimitive() && lineElement.getAsJsonPrimitive().isNumber()) {
+                lines = lineElement.getAsInt();
+            }
+            JsonElement peerElement = details.has("peers") ? details.get("peers") : details.get("users");
+            if (peerElement != null && peerElement.isJsonArray()) {
+                names = parsePeers(peerElement.getAsJsonArray());
+            }
+        }
+        // A listed file is changed even if the response has no details
+        lineCounts.put(filePath, names.isEmpty() ? Math.max(1, lines) : lines);
+        peers.put(filePath, names);
+    }
+
+    private static List<String> parsePeers(JsonArray array) {
+        List<String> names = new ArrayList<>(array.size());
+        for (JsonElement element : array) {
+            String name = null;
+            if (element.isJsonPrimitive()) {
+                name = element.getAsString();
+            } else if (element.isJsonObject()) {
+                JsonObject user = element.getAsJsonObject();
+                for (String key : new String[]{"name", "email", "user", "_id", "guid"}) {
+                    if (user.has(key) && user.get(key).isJsonPrimitive()) {
+                        name = user.get(key).getAsString();
+                        break;
+                    }
+                }
+            }
+            if (name != null && !name.isEmpty()) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+}
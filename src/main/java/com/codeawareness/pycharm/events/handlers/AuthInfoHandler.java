@@ -3,6 +3,7 @@ package com.codeawareness.pycharm.events.handlers;
 import com.codeawareness.pycharm.CodeAwarenessProjectService;
 import com.codeawareness.pycharm.communication.Message;
 import com.codeawareness.pycharm.events.EventHandler;
+import com.codeawareness.pycharm.events.EventPriority;
 import com.codeawareness.pycharm.utils.Logger;
 import com.google.gson.JsonObject;
 import com.intellij.openapi.project.Project;
@@ -24,6 +25,11 @@ public class AuthInfoHandler implements EventHandler {
         return "auth:info";
     }
 
+    @Override
+    public EventPriority getPriority() {
+        return EventPriority.BACKGROUND;
+    }
+
     @Override
     public void handle(Message message) {
         Logger.debug("Handling auth:info response");
@@ -3,6 +3,7 @@ package com.codeawareness.pycharm.events.handlers;
 import com.codeawareness.pycharm.CodeAwarenessProjectService;
 import com.codeawareness.pycharm.communication.Message;
 import com.codeawareness.pycharm.events.EventHandler;
+import com.codeawareness.pycharm.events.EventPriority;
 import com.codeawareness.pycharm.utils.Logger;
 import com.intellij.openapi.project.Project;
 
@@ -23,6 +24,11 @@ public class AuthLogoutHandler implements EventHandler {
         return "auth:logout";
     }
 
+    @Override
+    public EventPriority getPriority() {
+        return EventPriority.BACKGROUND;
+    }
+
     @Override
     public void handle(Message message) {
         Logger.debug("Handling auth:logout event");
@@ -39,6 +45,7 @@ public class AuthLogoutHandler implements EventHandler {
         projectService.setSelectedBranch(null);
 
         projectService.getHighlightManager().clearAllHighlights();
+        projectService.getPeerChangeIndex().clear();
         projectService.getDiffViewerManager().cleanupAll();
 
         Logger.info("Logged out, cleared all state");
@@ -4,6 +4,7 @@ import com.codeawareness.pycharm.CodeAwarenessProjectService;
 import com.codeawareness.pycharm.communication.Message;
 import com.codeawareness.pycharm.diff.DiffViewerManager;
 import com.codeawareness.pycharm.events.EventHandler;
+import com.codeawareness.pycharm.events.EventPriority;
 import com.codeawareness.pycharm.utils.Logger;
 import com.google.gson.JsonObject;
 import com.intellij.openapi.project.Project;
@@ -31,6 +32,11 @@ public class DiffPeerHandler implements EventHandler {
         return "code:diff-peer";
     }
 
+    @Override
+    public EventPriority getPriority() {
+        return EventPriority.BACKGROUND;
+    }
+
     @Override
     public void handle(Message message) {
         Logger.info("DiffPeerHandler.handle() called for project: " + project.getName() +
@@ -0,0 +1,58 @@
+package com.codeawareness.pycharm.events.handlers;
+
+import com.codeawareness.pycharm.highlighting.LineIndex;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+
+/**
+ * Parses the hl array of an active-path response into a {@link LineIndex}.
+ * Line numbers are read straight into an {@code int[]} that is reused across responses,
+ * so parsing boxes nothing and builds no strings; only the resulting index is allocated.
+ */
+final class HighlightLineParser {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private int[] buffer = new int[INITIAL_CAPACITY];
+    private int lastSkippedCount;
+
+    /**
+     * Parse line numbers (0-based) from the array, skipping elements that are not numbers
+     * or not valid line numbers (negative, or at least {@link LineIndex#MAX_LINE_COUNT}).
+     */
+    synchronized LineIndex parse(JsonArray array) {
+        int size = array.size();
+        if (buffer.length < size) {
+            buffer = new int[Math.max(size, buffer.length * 2)];
+        }
+
+        int count = 0;
+        int skipped = 0;
+        for (int i = 0; i < size; i++) {
+            JsonElement element = array.get(i);
+            long line = element.isJsonPrimitive() && element.getAsJsonPrimitive().isNumber()
+                ? element.getAsLong() : -1;
+            if (line >= 0 && line < LineIndex.MAX_LINE_COUNT) {
+                buffer[count++] = (int) line;
+            } else {
+                skipped++;
+            }
+        }
+        lastSkippedCount = skipped;
+        return LineIndex.of(buffer, count);
+    }
+
+    /**
+     * Get the number of elements skipped by the last {@link #parse}.
+     */
+    synchronized int getLastSkippedCount() {
+        return lastSkippedCount;
+    }
+
+    /**
+     * Get the current buffer capacity (it only grows).
+     */
+    synchronized int getCapacity() {
+        return buffer.length;
+    }
+}
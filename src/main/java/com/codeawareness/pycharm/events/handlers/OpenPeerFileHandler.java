@@ -3,6 +3,7 @@ package com.codeawareness.pycharm.events.handlers;
 import com.codeawareness.pycharm.communication.Message;
 import com.codeawareness.pycharm.diff.DiffViewerManager;
 import com.codeawareness.pycharm.events.EventHandler;
+import com.codeawareness.pycharm.events.EventPriority;
 import com.codeawareness.pycharm.utils.Logger;
 import com.google.gson.JsonObject;
 import com.intellij.openapi.application.ApplicationManager;
@@ -37,6 +38,11 @@ public class OpenPeerFileHandler implements EventHandler {
         return "code:open-peer-file";
     }
 
+    @Override
+    public EventPriority getPriority() {
+        return EventPriority.INTERACTIVE;
+    }
+
     @Override
     public void handle(Message message) {
         // Only process responses (RES or null — Muninn often omits the flow field)
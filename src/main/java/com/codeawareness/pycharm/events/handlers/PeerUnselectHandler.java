@@ -35,6 +35,7 @@ public class PeerUnselectHandler implements EventHandler {
 
             // Clear all highlights and diff temp files
             projectService.getHighlightManager().clearAllHighlights();
+            projectService.getPeerChangeIndex().clear();
             projectService.getDiffViewerManager().cleanupAll();
 
             // Re-request active-path to get base highlights
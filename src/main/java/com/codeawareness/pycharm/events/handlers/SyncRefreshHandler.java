@@ -3,12 +3,15 @@ package com.codeawareness.pycharm.events.handlers;
 import com.codeawareness.pycharm.CodeAwarenessProjectService;
 import com.codeawareness.pycharm.communication.Message;
 import com.codeawareness.pycharm.events.EventHandler;
+import com.codeawareness.pycharm.events.EventPriority;
 import com.codeawareness.pycharm.utils.Logger;
+import com.google.gson.JsonObject;
 import com.intellij.openapi.project.Project;
 
 /**
  * Handles sync:setup response events from the Kawa Code backend.
- * Refreshes highlights by re-requesting the active file path.
+ * Refreshes highlights by re-requesting the active file path, and updates the
+ * project-wide peer-change index if the response lists the changed files.
  */
 public class SyncRefreshHandler implements EventHandler {
 
@@ -23,6 +26,11 @@ public class SyncRefreshHandler implements EventHandler {
         return "sync:setup";
     }
 
+    @Override
+    public EventPriority getPriority() {
+        return EventPriority.BACKGROUND;
+    }
+
     @Override
     public void handle(Message message) {
         if (message.getFlow() == Message.Flow.REQ) {
@@ -34,6 +42,14 @@ public class SyncRefreshHandler implements EventHandler {
         CodeAwarenessProjectService projectService = project.getService(CodeAwarenessProjectService.class);
         if (projectService != null) {
             projectService.getActiveFileTracker().notifyActiveFileChanged(projectService.getActiveFile());
+            // Highlights fetched for background tabs before the sync may be out of date
+            projectService.getHighlightPrefetcher().invalidate();
+
+            JsonObject data = message.getDataAsObject();
+            AggregatedPeerChanges changes = data != null ? AggregatedPeerChanges.parse(data, project.getBasePath()) : null;
+            if (changes != null) {
+                changes.applyTo(projectService.getPeerChangeIndex());
+            }
         }
     }
 }
@@ -3,6 +3,7 @@ package com.codeawareness.pycharm.highlighting;
 import com.codeawareness.pycharm.settings.CodeAwarenessSettings;
 import com.intellij.openapi.editor.colors.EditorColorsManager;
 import com.intellij.openapi.editor.colors.EditorColorsScheme;
+import com.intellij.openapi.editor.markup.TextAttributes;
 import com.intellij.ui.JBColor;
 
 import java.awt.Color;
@@ -10,12 +11,81 @@ import java.awt.Color;
 /**
  * Provides colors for Kawa Code highlights based on the current editor theme.
  * Supports both light and dark themes with user-configurable colors.
+ *
+ * The resolved highlight attributes are cached and shared by all highlighters until
+ * {@link #invalidate()} is called (color settings or editor scheme changed).
  */
 public class ColorSchemeProvider {
 
     // Fallback defaults (used when settings service is unavailable)
     private static final Color DEFAULT_LIGHT_THEME_COLOR = new Color(0xff, 0xea, 0x83);
     private static final Color DEFAULT_DARK_THEME_COLOR = new Color(0x0a, 0x07, 0x1d);
+    // Stale highlights are blended halfway towards a typical editor background
+    private static final Color LIGHT_THEME_BACKGROUND = Color.WHITE;
+    private static final Color DARK_THEME_BACKGROUND = new Color(0x2b, 0x2b, 0x2b);
+    private static final JBColor CONFLICT_COLOR = new JBColor(new Color(0xff, 0xc4, 0xc4), new Color(0x5e, 0x24, 0x24));
+    private static final JBColor CONFLICT_STRIPE_COLOR = new JBColor(new Color(0xe0, 0x40, 0x40), new Color(0xc7, 0x4e, 0x4e));
+
+    private static volatile TextAttributes highlightAttributes;
+    private static volatile TextAttributes staleHighlightAttributes;
+    private static volatile TextAttributes conflictHighlightAttributes;
+
+    /**
+     * Get the shared text attributes for peer highlights.
+     * The instance is shared by every highlighter and must not be modified.
+     */
+    public static TextAttributes getHighlightAttributes() {
+        TextAttributes attributes = highlightAttributes;
+        if (attributes == null) {
+            attributes = new TextAttributes();
+            attributes.setBackgroundColor(getHighlightJBColor());
+            highlightAttributes = attributes;
+        }
+        return attributes;
+    }
+
+    /**
+     * Get the shared text attributes for highlights restored from a previous session that
+     * the backend has not confirmed yet: the highlight color, faded.
+     * The instance is shared by every highlighter and must not be modified.
+     */
+    public static TextAttributes getStaleHighlightAttributes() {
+        TextAttributes attributes = staleHighlightAttributes;
+        if (attributes == null) {
+            attributes = new TextAttributes();
+            attributes.setBackgroundColor(new JBColor(
+                blend(getLightThemeColor(), LIGHT_THEME_BACKGROUND),
+                blend(getDarkThemeColor(), DARK_THEME_BACKGROUND)
+            ));
+            staleHighlightAttributes = attributes;
+        }
+        return attributes;
+    }
+
+    /**
+     * Get the shared text attributes for predicted conflicts: lines changed both locally
+     * and by a peer. Their color does not depend on the settings.
+     * The instance is shared by every highlighter and must not be modified.
+     */
+    public static TextAttributes getConflictHighlightAttributes() {
+        TextAttributes attributes = conflictHighlightAttributes;
+        if (attributes == null) {
+            attributes = new TextAttributes();
+            attributes.setBackgroundColor(CONFLICT_COLOR);
+            attributes.setErrorStripeColor(CONFLICT_STRIPE_COLOR);
+            conflictHighlightAttributes = attributes;
+        }
+        return attributes;
+    }
+
+    /**
+     * Drop the cached attributes so the next lookup re-reads the settings.
+     * Called when the highlight colors or the editor color scheme change.
+     */
+    public static void invalidate() {
+        highlightAttributes = null;
+        staleHighlightAttributes = null;
+    }
 
     /**
      * Get the highlight color for the current theme.
@@ -90,6 +160,14 @@ public class ColorSchemeProvider {
         }
     }
 
+    private static Color blend(Color color, Color background) {
+        return new Color(
+            (color.getRed() + background.getRed()) / 2,
+            (color.getGreen() + background.getGreen()) / 2,
+            (color.getBlue() + background.getBlue()) / 2
+        );
+    }
+
     /**
      * Check if the current theme is dark.
      */
@@ -0,0 +1,81 @@
+package com.codeawareness.pycharm.highlighting;
+
+import com.intellij.openapi.editor.markup.RangeHighlighter;
+
+import java.util.Arrays;
+
+/**
+ * Local and peer changed lines of one file, for predicting conflicts.
+ *
+ * Both sides are sorted, disjoint runs (see {@link LineRuns}). The local runs are the
+ * lines the user changed since the file was last saved, kept up to date edit by edit:
+ * the edited lines are merged in and the runs below shift with inserted or deleted
+ * lines. Overlap queries are binary searches, O(log n + k), so the conflicting lines can
+ * be recomputed on every keystroke. Used on the EDT only.
+ */
+final class ConflictIndex {
+
+    private int[] local = LineRuns.EMPTY;
+    private int[] peer = LineRuns.EMPTY;
+
+    // Conflict runs currently drawn and their highlighters, one per run
+    int[] highlightedRuns = LineRuns.EMPTY;
+    RangeHighlighter[] highlighters = new RangeHighlighter[0];
+
+    /**
+     * Record an edit that replaced the old lines {@code [startLine, oldEndLine]} with the
+     * new lines {@code [startLine, newEndLine]}.
+     */
+    void edit(int startLine, int oldEndLine, int newEndLine) {
+        int delta = newEndLine - oldEndLine;
+        int first = LineRuns.firstEndingAtOrAfter(local, startLine);
+        if (delta == 0 && first < LineRuns.count(local) && local[2 * first] <= startLine
+                && oldEndLine <= local[2 * first + 1]) {
+            // Typing within lines that are already changed
+            return;
+        }
+
+        int[] runs = new int[local.length + 2];
+        System.arraycopy(local, 0, runs, 0, 2 * first);
+        int length = 2 * first;
+        int changedStart = startLine;
+        int changedEnd = newEndLine;
+        int run = first;
+        for (; run < LineRuns.count(local) && local[2 * run] <= oldEndLine; run++) {
+            // Runs touched by the edit merge into the changed range; their tail moves with it
+            changedStart = Math.min(changedStart, local[2 * run]);
+            changedEnd = Math.max(changedEnd, local[2 * run + 1] + delta);
+        }
+        runs[length++] = changedStart;
+        runs[length++] = changedEnd;
+        for (; run < LineRuns.count(local); run++) {
+            runs[length++] = local[2 * run] + delta;
+            runs[length++] = local[2 * run + 1] + delta;
+        }
+        // Joins the changed range with adjacent runs
+        local = LineRuns.union(Arrays.copyOf(runs, length));
+    }
+
+    void clearLocal() {
+        local = LineRuns.EMPTY;
+    }
+
+    boolean hasLocalChanges() {
+        return local.length > 0;
+    }
+
+    int[] localRuns() {
+        return local;
+    }
+
+    void setPeerRuns(int[] runs) {
+        peer = runs;
+    }
+
+    /**
+     * Get the local changes that overlap peer-changed lines, as runs.
+     */
+    int[] conflictRuns() {
+        return LineRuns.intersect(local, peer);
+    }
+}
@@ -0,0 +1,45 @@
+package com.codeawareness.pycharm.highlighting;
+
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.markup.LineMarkerRenderer;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+
+/**
+ * Paints a narrow bar in the gutter next to the highlighted lines of one file.
+ * Shared by the overview marks of the file; each mark paints only the runs of the
+ * current {@link LineIndex} inside its own rectangle, so the bar shows every highlighted
+ * line even in lazy mode, where most runs have no highlighter.
+ */
+final class GutterSummaryRenderer implements LineMarkerRenderer {
+
+    private static final int BAR_WIDTH = 3;
+
+    private volatile LineIndex lines;
+    private final boolean stale;
+
+    GutterSummaryRenderer(LineIndex lines, boolean stale) {
+        this.lines = lines;
+        this.stale = stale;
+    }
+
+    LineIndex getLines() {
+        return lines;
+    }
+
+    void setLines(LineIndex lines) {
+        this.lines = lines;
+    }
+
+    @Override
+    public void paint(Editor editor, Graphics g, Rectangle r) {
+        Color color = (stale ? ColorSchemeProvider.getStaleHighlightAttributes()
+            : ColorSchemeProvider.getHighlightAttributes()).getBackgroundColor();
+        if (color != null) {
+            Rectangle bar = new Rectangle(r.x, r.y, Math.min(r.width, BAR_WIDTH), r.height);
+            LineBackgroundRenderer.paintRuns(editor, g, lines, bar, color);
+        }
+    }
+}
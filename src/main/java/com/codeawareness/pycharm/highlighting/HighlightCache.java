@@ -0,0 +1,152 @@
+package com.codeawareness.pycharm.highlighting;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of the last known highlighted lines per file.
+ *
+ * Lets highlights be shown again the moment a closed file is reopened, without waiting
+ * for a round-trip to the backend; the next active-path response then reconciles them.
+ * Bounded both by the number of files and by the total number of cached lines, evicting
+ * the least recently used files first.
+ */
+public class HighlightCache {
+
+    public static final int DEFAULT_MAX_FILES = 200;
+    public static final int DEFAULT_MAX_LINES = 1_000_000;
+
+    private final LinkedHashMap<String, LineIndex> linesByFile = new LinkedHashMap<>(16, 0.75f, true);
+    private int maxFiles;
+    private int maxLines;
+    private long totalLines;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public HighlightCache() {
+        this(DEFAULT_MAX_FILES, DEFAULT_MAX_LINES);
+    }
+
+    public HighlightCache(int maxFiles, int maxLines) {
+        this.maxFiles = Math.max(0, maxFiles);
+        this.maxLines = Math.max(0, maxLines);
+    }
+
+    /**
+     * Remember the lines of a file, making it the most recently used entry.
+     * An empty line set removes the file.
+     */
+    public synchronized void put(String filePath, LineIndex lines) {
+        if (lines.isEmpty()) {
+            remove(filePath);
+            return;
+        }
+
+        LineIndex previous = linesByFile.put(filePath, lines);
+        totalLines += lines.size() - (previous != null ? previous.size() : 0);
+        evict();
+    }
+
+    /**
+     * Get the cached lines of a file (counted as a hit or miss), or null if not cached.
+     */
+    public synchronized LineIndex get(String filePath) {
+        LineIndex lines = linesByFile.get(filePath);
+        if (lines != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return lines;
+    }
+
+    /**
+     * Add one line to the cached lines of a file (not counted as a lookup).
+     */
+    public synchronized void addLine(String filePath, int line) {
+        LineIndex previous = linesByFile.get(filePath);
+        put(filePath, (previous != null ? previous : LineIndex.EMPTY).with(line));
+    }
+
+    /**
+     * Check whether a file has cached lines (not counted as a lookup).
+     */
+    public synchronized boolean contains(String filePath) {
+        return linesByFile.containsKey(filePath);
+    }
+
+    /**
+     * Get a copy of all entries, least recently used first (not counted as lookups).
+     */
+    public synchronized Map<String, LineIndex> entries() {
+        return new LinkedHashMap<>(linesByFile);
+    }
+
+    public synchronized void remove(String filePath) {
+        LineIndex removed = linesByFile.remove(filePath);
+        if (removed != null) {
+            totalLines -= removed.size();
+        }
+    }
+
+    public synchronized void clear() {
+        linesByFile.clear();
+        totalLines = 0;
+    }
+
+    /**
+     * Set the size limits, evicting entries right away if the cache is over them.
+     */
+    public synchronized void setLimits(int maxFiles, int maxLines) {
+        this.maxFiles = Math.max(0, maxFiles);
+        this.maxLines = Math.max(0, maxLines);
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, LineIndex>> eldest = linesByFile.entrySet().iterator();
+        while (eldest.hasNext() && (linesByFile.size() > maxFiles || totalLines > maxLines)) {
+            totalLines -= eldest.next().getValue().size();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized int getMaxFiles() {
+        return maxFiles;
+    }
+
+    public synchronized int getMaxLines() {
+        return maxLines;
+    }
+
+    public synchronized int size() {
+        return linesByFile.size();
+    }
+
+    public synchronized long getTotalLines() {
+        return totalLines;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Get the fraction of lookups that found cached lines (0 before the first lookup).
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+}
@@ -1,94 +1,1214 @@
 package com.codeawareness.pycharm.highlighting;
 
 import com.codeawareness.pycharm.utils.Logger;
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.editor.ex.RangeHighlighterEx;
+import com.intellij.openapi.editor.impl.DocumentMarkupModel;
+import com.intellij.openapi.editor.markup.CustomHighlighterRenderer;
 import com.intellij.openapi.editor.markup.HighlighterLayer;
 import com.intellij.openapi.editor.markup.HighlighterTargetArea;
 import com.intellij.openapi.editor.markup.MarkupModel;
 import com.intellij.openapi.editor.markup.RangeHighlighter;
 import com.intellij.openapi.editor.markup.TextAttributes;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.fileEditor.FileEditor;
 import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.fileEditor.TextEditor;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
 
+import javax.swing.JComponent;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Manages code highlighting for Kawa Code.
  * Provides full-width line highlights that can be toggled ON/OFF.
+ *
+ * For every file the highlighted lines are held in a {@link LineIndex}, which is the
+ * source of truth; highlighters are a derived view with one highlighter per run of
+ * consecutive lines. A new highlight set is applied as a diff against the current runs,
+ * so unchanged blocks never flicker. Highlighters live in the document's markup model,
+ * so every editor, split pane and window showing the file shares them and line offsets
+ * are computed once per update.
+ *
+ * Line-to-offset resolution and run merging happen in a non-blocking read action off the
+ * EDT, bound to the document's modification stamp; the EDT only diffs the runs and adds
+ * or disposes highlighters, in one batch.
+ *
+ * In documents longer than the lazy threshold only the runs inside the visible areas
+ * (plus a margin) get highlighters. They are created and released as editors scroll.
+ *
+ * Every highlighted file also gets an overview ({@link OverviewMarks}): thin error-stripe
+ * marks aggregated into buckets sized to the stripe's pixel height, and a narrow bar in
+ * the gutter, so changes are easy to find in long files.
+ *
+ * With {@link RenderingStrategy#CUSTOM_RENDERER} each file instead gets a single
+ * whole-document highlighter whose renderer paints the visible lines of the index.
+ *
+ * The last known lines of every file are also kept in a {@link HighlightCache}, so files
+ * that are closed (or not open yet) show their highlights as soon as they are opened.
+ *
+ * The highlighted runs of open files are tracked by range markers ({@link TrackedRegions}),
+ * so local edits that add or remove lines shift the index without asking the backend
+ * again; the next active-path response (on save or sync) reconciles it.
+ *
+ * Lines the user changed since the last save are recorded per file in a
+ * {@link ConflictIndex}; those that overlap peer-changed lines are predicted conflicts
+ * and get highlighters of their own, in the conflict color, above the peer highlights.
+ *
+ * Lines restored from a previous session ({@link #showStaleHighlights}) are drawn with the
+ * dimmer stale attributes until the backend sends fresh lines for the file.
+ *
+ * Peers can also have layers of their own ({@link #setPeerHighlights}): per file a
+ * {@link LineIndex} per peer ({@link PeerLayers}), drawn with the peer's shared key from a
+ * {@link PeerPalette}. Lines shared by visible peers are striped by one renderer, and the
+ * single-color highlights skip the lines the visible layers cover, so no line is stacked.
  */
 public class HighlightManager {
 
+    public static final int DEFAULT_LAZY_LINE_THRESHOLD = 5_000;
+    public static final int DEFAULT_VIEWPORT_MARGIN_LINES = 100;
+    private static final int PEER_LAYER = HighlighterLayer.SELECTION - 2;
+    private static final int CONFLICT_LAYER = HighlighterLayer.SELECTION - 1;
+
     private final Project project;
-    private final Map<String, List<RangeHighlighter>> highlightersByFile = new ConcurrentHashMap<>();
+    private final Map<String, FileHighlights> highlightsByFile = new ConcurrentHashMap<>();
+    private final HighlightCache cache = new HighlightCache();
+    // Lines of the latest update scheduled per file; an older computation that finishes late is dropped
+    private final Map<String, LineIndex> scheduledLines = new ConcurrentHashMap<>();
+    private final Map<String, TrackedRegions> regionsByFile = new ConcurrentHashMap<>();
+    private final Set<String> staleFiles = ConcurrentHashMap.newKeySet();
+    private final Map<String, ConflictIndex> conflictsByFile = new ConcurrentHashMap<>();
+    private final Map<String, PeerLayers> peerLayersByFile = new ConcurrentHashMap<>();
+    private final Set<String> hiddenPeers = ConcurrentHashMap.newKeySet();
+    private final PeerPalette palette = new PeerPalette();
     private boolean highlightsEnabled = true;
+    private final AtomicLong linesAdded = new AtomicLong();
+    private final AtomicLong linesRemoved = new AtomicLong();
+    private final AtomicLong linesUnchanged = new AtomicLong();
+    private volatile HighlightUpdate lastUpdate;
+    private volatile int lazyLineThreshold = DEFAULT_LAZY_LINE_THRESHOLD;
+    private volatile int viewportMarginLines = DEFAULT_VIEWPORT_MARGIN_LINES;
+    private volatile RenderingStrategy renderingStrategy = RenderingStrategy.RUN_HIGHLIGHTERS;
+    private Disposable editorListeners;
 
     public HighlightManager(Project project) {
         this.project = project;
+        ensureEditorListeners();
+    }
+
+    /**
+     * Add a full-width line highlight to the specified file and line.
+     *
+     * @param filePath Absolute path to the file
+     * @param lineNumber Line number (0-indexed)
+     */
+    public void addHighlight(String filePath, int lineNumber) {
+        runOnUiThread(() -> {
+            try {
+                staleFiles.remove(filePath);
+                Editor editor = findEditor(filePath);
+                if (editor == null) {
+                    if (lineNumber >= 0) {
+                        cache.addLine(filePath, lineNumber);
+                    }
+                    return;
+                }
+
+                Document document = editor.getDocument();
+                if (lineNumber < 0 || lineNumber >= document.getLineCount()) {
+                    Logger.warn("Invalid line number: " + lineNumber + " for file: " + filePath);
+                    return;
+                }
+
+                FileHighlights current = highlightsByFile.get(filePath);
+                LineIndex previousLines = current != null ? current.lines : LineIndex.EMPTY;
+                if (previousLines.contains(lineNumber)) {
+                    return;
+                }
+
+                scheduledLines.remove(filePath);
+                updateFile(filePath, document, current, computeOffsets(document, previousLines.with(lineNumber)));
+
+            } catch (Exception e) {
+                Logger.warn("Failed to add highlight", e);
+            }
+        });
+    }
+
+    /**
+     * Replace the highlights of a file with full-width highlights on the given lines.
+     * The file and editor are resolved once, offsets are computed in a background read
+     * action and all highlighter changes happen in a single EDT event.
+     * Lines are sorted and deduplicated first; lines outside the document are skipped.
+     *
+     * Consecutive lines are merged into runs with one highlighter each. Runs that are
+     * unchanged keep their highlighter; runs that grew, shrank, split or merged are
+     * replaced, and runs that disappeared are disposed.
+     *
+     * @param filePath Absolute path to the file
+     * @param lines    Line numbers (0-indexed), in any order
+     */
+    public void applyHighlights(String filePath, int[] lines) {
+        applyHighlights(filePath, LineIndex.of(lines));
+    }
+
+    /**
+     * Replace the highlights of a file with full-width highlights on the lines of an index.
+     *
+     * @see #applyHighlights(String, int[])
+     */
+    public void applyHighlights(String filePath, LineIndex lines) {
+        runOnUiThread(() -> {
+            try {
+                staleFiles.remove(filePath);
+                FileHighlights current = highlightsByFile.get(filePath);
+                Editor editor = !lines.isEmpty() ? findEditor(filePath) : null;
+
+                if (editor == null) {
+                    // Nothing to show now: keep the lines for when the file is opened and
+                    // drop whatever is left from a previous update
+                    cache.put(filePath, truncateToFile(findFile(filePath), lines));
+                    scheduledLines.remove(filePath);
+                    untrack(filePath);
+                    highlightsByFile.remove(filePath);
+                    if (current != null) {
+                        current.dispose();
+                    }
+                    updateConflicts(filePath);
+                    recordUpdate(new HighlightUpdate(filePath, 0, current != null ? current.lines.size() : 0, 0));
+                    return;
+                }
+
+                scheduleUpdate(filePath, editor.getDocument(), lines);
+
+            } catch (Exception e) {
+                Logger.warn("Failed to apply highlights", e);
+            }
+        });
+    }
+
+    /**
+     * Apply highlights to a known editor on the calling thread (the EDT, or a test or
+     * benchmark with a fake editor). Lines outside the document are dropped.
+     */
+    void applyHighlights(String filePath, Editor editor, LineIndex lines) {
+        Document document = editor.getDocument();
+        updateFile(filePath, document, highlightsByFile.get(filePath), computeOffsets(document, lines));
+    }
+
+    /**
+     * Resolve the offsets of the lines in a non-blocking read action and apply them on the
+     * EDT. The computation restarts if the document is modified before the result is
+     * applied, and a newer update for the same file cancels a pending one.
+     */
+    private void scheduleUpdate(String filePath, Document document, LineIndex lines) {
+        if (ApplicationManager.getApplication() == null) {
+            updateFile(filePath, document, highlightsByFile.get(filePath), computeOffsets(document, lines));
+            return;
+        }
+
+        scheduledLines.put(filePath, lines);
+        ReadAction.nonBlocking(() -> computeOffsets(document, lines))
+            .coalesceBy(this, filePath)
+            .expireWith(project)
+            .finishOnUiThread(ModalityState.defaultModalityState(), offsets -> {
+                try {
+                    if (scheduledLines.get(filePath) != lines) {
+                        return;
+                    }
+                    if (offsets.stamp != document.getModificationStamp()) {
+                        scheduleUpdate(filePath, document, lines);
+                        return;
+                    }
+                    scheduledLines.remove(filePath, lines);
+                    updateFile(filePath, document, highlightsByFile.get(filePath), offsets);
+                } catch (Exception e) {
+                    Logger.warn("Failed to apply highlights", e);
+                }
+            })
+            .submit(AppExecutorUtil.getAppExecutorService());
+    }
+
+    /**
+     * Truncate the lines to the document, merge them into runs and resolve the start and
+     * end offset of every run. Needs read access; safe to run off the EDT.
+     */
+    private static RunOffsets computeOffsets(Document document, LineIndex lines) {
+        long stamp = document.getModificationStamp();
+        int lineCount = document.getLineCount();
+        LineIndex validLines = lines.truncate(lineCount);
+        if (validLines.size() < lines.size()) {
+            Logger.warn("Skipped " + (lines.size() - validLines.size()) + " line number(s) outside the document (" +
+                       lineCount + " lines)");
+        }
+
+        int[] runs = validLines.runs();
+        int[] startOffsets = new int[LineRuns.count(runs)];
+        int[] endOffsets = new int[startOffsets.length];
+        for (int run = 0; run < startOffsets.length; run++) {
+            startOffsets[run] = document.getLineStartOffset(runs[2 * run]);
+            endOffsets[run] = document.getLineEndOffset(runs[2 * run + 1]);
+        }
+        return new RunOffsets(stamp, validLines, runs, startOffsets, endOffsets);
+    }
+
+    /**
+     * Bring the highlighters of a file in line with precomputed run offsets. Must run on the EDT.
+     */
+    private void updateFile(String filePath, Document document, FileHighlights current, RunOffsets offsets) {
+        LineIndex lines = offsets.lines;
+        LineIndex previousLines = current != null ? current.lines : LineIndex.EMPTY;
+        ensureEditorListeners();
+        updatePeerLayers(filePath, document);
+        FileHighlights next = materialize(filePath, document, current, lines, offsets);
+        cache.put(filePath, lines);
+        if (next != null) {
+            TrackedRegions previous = regionsByFile.put(
+                filePath, TrackedRegions.track(document, offsets.startOffsets, offsets.endOffsets));
+            if (previous != null) {
+                previous.dispose();
+            }
+        } else {
+            untrack(filePath);
+        }
+        updateConflicts(filePath);
+
+        int added = lines.countNotIn(previousLines);
+        HighlightUpdate update = new HighlightUpdate(
+            filePath, added, previousLines.countNotIn(lines), lines.size() - added);
+        recordUpdate(update);
+        Logger.debug("Applied highlights: " + update + " in " +
+                    (next != null ? next.highlighters.length : 0) + " run(s)" +
+                    (next != null && next.isLazy() ? " (lazy, windows " + Arrays.toString(next.windows) + ")" : ""));
+    }
+
+    /**
+     * Create and release highlighters so that exactly the runs of {@code lines} inside the
+     * materialized windows have one, and store the result. In lazy mode the windows are the
+     * visible areas of the file's editors plus a margin, otherwise the whole document.
+     * Offsets come from {@code offsets} when they are current; otherwise (scrolling in a
+     * lazy file) the few runs in the windows are resolved here. Must run on the EDT.
+     *
+     * @return the stored highlights, or null if the file has no highlighted lines
+     */
+    private FileHighlights materialize(String filePath, Document document, FileHighlights current,
+                                       LineIndex lines, RunOffsets offsets) {
+        if (renderingStrategy == RenderingStrategy.CUSTOM_RENDERER) {
+            return materializeRenderer(filePath, document, current, lines);
+        }
+
+        boolean lazy = !lines.isEmpty() && document.getLineCount() > lazyLineThreshold;
+        int[] windows = lazy ? getViewportWindows(document) : null;
+
+        boolean stale = staleFiles.contains(filePath);
+        if (current != null && (current.document != document || current.renderer != null || current.stale != stale)) {
+            // The file was reloaded into another document (the old highlighters belong to its
+            // markup model), was drawn by a renderer before the strategy changed, or fresh
+            // lines replace stale ones
+            current.dispose();
+            current = null;
+        }
+
+        if (offsets != null && offsets.stamp != document.getModificationStamp()) {
+            offsets = null;
+        }
+        int[] previousRuns = current != null ? current.runs : LineRuns.EMPTY;
+        // Lines of visible peer layers are drawn by the layers
+        LineIndex drawn = lines.minus(getCoveredLines(filePath, document));
+        int[] runs = lazy ? LineRuns.clip(drawn.runs(), windows) : drawn.runs();
+        RangeHighlighter[] highlighters = new RangeHighlighter[LineRuns.count(runs)];
+        boolean[] kept = new boolean[LineRuns.count(previousRuns)];
+
+        MarkupModel markupModel = getMarkupModel(document);
+        TextAttributes attributes = stale
+            ? ColorSchemeProvider.getStaleHighlightAttributes()
+            : ColorSchemeProvider.getHighlightAttributes();
+        for (int run = 0; run < highlighters.length; run++) {
+            int start = runs[2 * run];
+            int end = runs[2 * run + 1];
+            int offsetRun = offsets == null ? -1 : offsets.runs == runs ? run : LineRuns.indexOf(offsets.runs, start, end);
+            int startOffset = offsetRun >= 0 ? offsets.startOffsets[offsetRun] : document.getLineStartOffset(start);
+            int endOffset = offsetRun >= 0 ? offsets.endOffsets[offsetRun] : document.getLineEndOffset(end);
+
+            int previousRun = LineRuns.indexOf(previousRuns, start, end);
+            if (previousRun >= 0 && isAt(current.highlighters[previousRun], document, startOffset, endOffset)) {
+                highlighters[run] = current.highlighters[previousRun];
+                kept[previousRun] = true;
+                continue;
+            }
+
+            // New, resized, split or merged run (or the old highlighter drifted with an edit)
+            highlighters[run] = addRunHighlighter(markupModel, startOffset, endOffset, attributes);
+        }
+
+        for (int previousRun = 0; previousRun < kept.length; previousRun++) {
+            if (!kept[previousRun]) {
+                disposeHighlighter(current.highlighters[previousRun]);
+            }
+        }
+
+        OverviewMarks overview = updateOverview(markupModel, document, current != null ? current.overview : null,
+                                                lines, attributes, stale);
+
+        if (lines.isEmpty()) {
+            highlightsByFile.remove(filePath);
+            return null;
+        }
+        FileHighlights next = new FileHighlights(lines, document, runs, highlighters, windows, overview, null, stale);
+        highlightsByFile.put(filePath, next);
+        return next;
+    }
+
+    /**
+     * Point the renderer of a file at the given lines, attaching a whole-document
+     * highlighter with a new renderer first if the document has none. The renderer paints
+     * in every editor of the document.
+     */
+    private FileHighlights materializeRenderer(String filePath, Document document, FileHighlights current, LineIndex lines) {
+        boolean stale = staleFiles.contains(filePath);
+        if (current != null && (current.renderer == null || current.document != document
+                || !current.highlighters[0].isValid() || current.stale != stale)) {
+            current.dispose();
+            current = null;
+        }
+
+        if (lines.isEmpty()) {
+            highlightsByFile.remove(filePath);
+            if (current != null) {
+                current.dispose();
+            }
+            return null;
+        }
+
+        MarkupModel markupModel = getMarkupModel(document);
+        OverviewMarks overview = updateOverview(markupModel, document, current != null ? current.overview : null, lines,
+            stale ? ColorSchemeProvider.getStaleHighlightAttributes() : ColorSchemeProvider.getHighlightAttributes(), stale);
+        LineIndex drawn = lines.minus(getCoveredLines(filePath, document));
+        FileHighlights next;
+        if (current != null) {
+            current.renderer.setLines(drawn);
+            next = new FileHighlights(lines, document, current.highlighters[0], current.renderer, overview, stale);
+        } else {
+            LineBackgroundRenderer renderer = new LineBackgroundRenderer(drawn, stale);
+            RangeHighlighter highlighter = addDocumentHighlighter(markupModel, document, renderer);
+            next = new FileHighlights(lines, document, highlighter, renderer, overview, stale);
+        }
+        highlightsByFile.put(filePath, next);
+        repaint(document);
+        return next;
+    }
+
+    private void repaint(Document document) {
+        for (Editor editor : getEditors(document)) {
+            // The whole editor, so the gutter is repainted as well
+            JComponent component = editor.getComponent();
+            if (component != null) {
+                component.repaint();
+            }
+        }
+    }
+
+    /**
+     * Get the markup model shared by all editors of a document.
+     */
+    MarkupModel getMarkupModel(Document document) {
+        return DocumentMarkupModel.forDocument(document, project, true);
+    }
+
+    /**
+     * Get every editor showing a document in this project, including split panes and
+     * other windows.
+     */
+    Editor[] getEditors(Document document) {
+        EditorFactory editorFactory = EditorFactory.getInstance();
+        return editorFactory != null ? editorFactory.getEditors(document, project) : new Editor[0];
+    }
+
+    /**
+     * Listen for scrolling and document edits in all editors once the first file is highlighted.
+     * The multicaster is application-wide, so the listeners are removed with the project.
+     */
+    private void ensureEditorListeners() {
+        EditorFactory editorFactory = EditorFactory.getInstance();
+        if (editorListeners != null || editorFactory == null) {
+            return;
+        }
+        editorListeners = Disposer.newDisposable(project, "CodeAwareness editor listeners");
+        editorFactory.getEventMulticaster().addVisibleAreaListener(
+            event -> onVisibleAreaChanged(event.getEditor()), editorListeners);
+        editorFactory.getEventMulticaster().addDocumentListener(new DocumentListener() {
+            @Override
+            public void documentChanged(DocumentEvent event) {
+                onDocumentChanged(event);
+            }
+        }, editorListeners);
+    }
+
+    /**
+     * Record a local edit as changed lines and update the predicted conflicts of its file.
+     * If the edit added or removed line breaks, first shift the highlighted lines of the
+     * document, following the range markers of its tracked regions. Local changes are
+     * recorded whether or not the file has peer lines yet, so conflicts show as soon as
+     * they arrive; edits to documents of other projects are ignored. Called on the EDT.
+     */
+    void onDocumentChanged(DocumentEvent event) {
+        Document document = event.getDocument();
+        String filePath = getFilePath(document);
+        if (filePath == null || !isInProject(document)) {
+            return;
+        }
+
+        int oldLineBreaks = countLineBreaks(event.getOldFragment());
+        if (oldLineBreaks > 0 || countLineBreaks(event.getNewFragment()) > 0) {
+            shiftHighlights(document);
+        }
+        try {
+            if (isUnsaved(document)) {
+                int startLine = document.getLineNumber(event.getOffset());
+                conflictsByFile.computeIfAbsent(filePath, path -> new ConflictIndex()).edit(
+                    startLine, startLine + oldLineBreaks, document.getLineNumber(event.getOffset() + event.getNewLength()));
+            } else {
+                // Reloaded from disk, or undone back to the saved content
+                ConflictIndex conflicts = conflictsByFile.get(filePath);
+                if (conflicts != null) {
+                    conflicts.clearLocal();
+                }
+            }
+            updateConflicts(filePath);
+        } catch (Exception e) {
+            Logger.warn("Failed to update conflicts after an edit", e);
+        }
+    }
+
+    private void shiftHighlights(Document document) {
+        for (Map.Entry<String, PeerLayers> entry : peerLayersByFile.entrySet()) {
+            if (entry.getValue().document == document) {
+                try {
+                    shiftPeerLayers(entry.getKey(), entry.getValue());
+                } catch (Exception e) {
+                    Logger.warn("Failed to shift peer layers after an edit", e);
+                }
+            }
+        }
+
+        for (Map.Entry<String, TrackedRegions> entry : regionsByFile.entrySet()) {
+            TrackedRegions regions = entry.getValue();
+            if (regions.document != document) {
+                continue;
+            }
+
+            String filePath = entry.getKey();
+            FileHighlights current = highlightsByFile.get(filePath);
+            LineIndex shifted = regions.currentLines();
+            if (current != null && !current.lines.equals(shifted)) {
+                try {
+                    materialize(filePath, document, current, shifted, null);
+                    cache.put(filePath, shifted);
+                } catch (Exception e) {
+                    Logger.warn("Failed to shift highlights after an edit", e);
+                }
+            }
+            return;
+        }
+    }
+
+    private static int countLineBreaks(CharSequence text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Resolve the path of the file a document belongs to, or null if it has none.
+     */
+    String getFilePath(Document document) {
+        FileDocumentManager documentManager = FileDocumentManager.getInstance();
+        VirtualFile file = documentManager != null ? documentManager.getFile(document) : null;
+        return file != null ? file.getPath() : null;
+    }
+
+    /**
+     * Check whether a document belongs to a file in the content of this project. The
+     * document listener sees the edits of every open project.
+     */
+    boolean isInProject(Document document) {
+        if (project.isDisposed()) {
+            return false;
+        }
+        FileDocumentManager documentManager = FileDocumentManager.getInstance();
+        VirtualFile file = documentManager != null ? documentManager.getFile(document) : null;
+        ProjectFileIndex fileIndex = file != null ? ProjectFileIndex.getInstance(project) : null;
+        return fileIndex != null && fileIndex.isInContent(file);
+    }
+
+    boolean isUnsaved(Document document) {
+        FileDocumentManager documentManager = FileDocumentManager.getInstance();
+        return documentManager == null || documentManager.isDocumentUnsaved(document);
+    }
+
+    /**
+     * Bring the conflict highlighters of a file in line with its local and peer-changed
+     * lines. Unchanged conflict runs keep their highlighter. Must run on the EDT.
+     */
+    private void updateConflicts(String filePath) {
+        ConflictIndex conflicts = conflictsByFile.get(filePath);
+        if (conflicts == null) {
+            return;
+        }
+
+        FileHighlights current = highlightsByFile.get(filePath);
+        conflicts.setPeerRuns(current != null ? current.lines.runs() : LineRuns.EMPTY);
+        int[] runs = current != null && highlightsEnabled ? conflicts.conflictRuns() : LineRuns.EMPTY;
+        if (runs.length == 0 && !conflicts.hasLocalChanges()) {
+            conflictsByFile.remove(filePath);
+        }
+        if (Arrays.equals(runs, conflicts.highlightedRuns) && allValid(conflicts.highlighters, current)) {
+            // Typing within a conflict: its highlighter moves with the text
+            return;
+        }
+
+        RangeHighlighter[] highlighters = new RangeHighlighter[LineRuns.count(runs)];
+        boolean[] kept = new boolean[conflicts.highlighters.length];
+        if (highlighters.length > 0) {
+            Document document = current.document;
+            MarkupModel markupModel = getMarkupModel(document);
+            TextAttributes attributes = ColorSchemeProvider.getConflictHighlightAttributes();
+            for (int run = 0; run < highlighters.length; run++) {
+                int startOffset = document.getLineStartOffset(runs[2 * run]);
+                int endOffset = document.getLineEndOffset(runs[2 * run + 1]);
+                int previousRun = LineRuns.indexOf(conflicts.highlightedRuns, runs[2 * run], runs[2 * run + 1]);
+                if (previousRun >= 0 && isAt(conflicts.highlighters[previousRun], document, startOffset, endOffset)) {
+                    highlighters[run] = conflicts.highlighters[previousRun];
+                    kept[previousRun] = true;
+                    continue;
+                }
+                highlighters[run] = addRunHighlighter(markupModel, startOffset, endOffset, CONFLICT_LAYER, attributes);
+                highlighters[run].setErrorStripeMarkColor(attributes.getErrorStripeColor());
+                highlighters[run].setErrorStripeTooltip("Kawa Code: local changes overlap peer changes");
+            }
+        }
+        for (int previousRun = 0; previousRun < kept.length; previousRun++) {
+            if (!kept[previousRun]) {
+                disposeHighlighter(conflicts.highlighters[previousRun]);
+            }
+        }
+
+        conflicts.highlightedRuns = runs;
+        conflicts.highlighters = highlighters;
+    }
+
+    private static boolean allValid(RangeHighlighter[] highlighters, FileHighlights current) {
+        return current != null && allValid(highlighters, current.document);
+    }
+
+    private static boolean allValid(RangeHighlighter[] highlighters, Document document) {
+        for (RangeHighlighter highlighter : highlighters) {
+            if (!highlighter.isValid() || highlighter.getDocument() != document) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Forget the local changes of a file that was saved, and its predicted conflicts.
+     */
+    public void onFileSaved(String filePath) {
+        runOnUiThread(() -> {
+            ConflictIndex conflicts = conflictsByFile.get(filePath);
+            if (conflicts != null) {
+                conflicts.clearLocal();
+                updateConflicts(filePath);
+            }
+        });
+    }
+
+    /**
+     * Get the lines of a file where local changes overlap peer changes.
+     */
+    public LineIndex getConflictLines(String filePath) {
+        ConflictIndex conflicts = conflictsByFile.get(filePath);
+        return conflicts != null ? LineIndex.ofRuns(conflicts.highlightedRuns) : LineIndex.EMPTY;
+    }
+
+    /**
+     * Get the lines of a file changed locally since it was last saved.
+     */
+    LineIndex getLocalChanges(String filePath) {
+        ConflictIndex conflicts = conflictsByFile.get(filePath);
+        return conflicts != null ? LineIndex.ofRuns(conflicts.localRuns()) : LineIndex.EMPTY;
+    }
+
+    private void untrack(String filePath) {
+        TrackedRegions regions = regionsByFile.remove(filePath);
+        if (regions != null) {
+            regions.dispose();
+        }
+    }
+
+    /**
+     * Replace the lines of one peer's layer in a file. Each peer with lines is drawn in its
+     * own color from a bounded palette of shared attributes keys; lines that several visible
+     * peers share are painted once, striped. Lines covered by visible layers are left out
+     * of the single-color highlights of the file.
+     *
+     * @param filePath Absolute path to the file
+     * @param peer     The peer the lines belong to
+     * @param lines    The peer's changed lines (0-indexed); empty to remove the layer
+     */
+    public void setPeerHighlights(String filePath, String peer, LineIndex lines) {
+        if (peer == null || peer.isEmpty()) {
+            return;
+        }
+        runOnUiThread(() -> {
+            try {
+                if (!highlightsEnabled) {
+                    return;
+                }
+                PeerLayers layers = peerLayersByFile.computeIfAbsent(filePath, path -> new PeerLayers());
+                LineIndex previous = layers.set(peer, lines);
+                if (previous.isEmpty() && !lines.isEmpty()) {
+                    palette.acquire(peer);
+                } else if (!previous.isEmpty() && lines.isEmpty()) {
+                    palette.release(peer);
+                }
+
+                Document document = layers.document;
+                if (document == null) {
+                    FileHighlights current = highlightsByFile.get(filePath);
+                    Editor editor = current == null && !lines.isEmpty() ? findEditor(filePath) : null;
+                    document = current != null ? current.document : editor != null ? editor.getDocument() : null;
+                }
+                if (document != null) {
+                    redrawPeerLayers(filePath, document);
+                    trackPeer(layers, peer, document);
+                }
+                if (layers.isEmpty()) {
+                    removePeerLayers(filePath);
+                }
+            } catch (Exception e) {
+                Logger.warn("Failed to apply peer highlights", e);
+            }
+        });
+    }
+
+    /**
+     * Show or hide the layers of a peer in every file. Only the files where the peer has
+     * lines are redrawn, and only the runs that change get new highlighters.
+     */
+    public void setPeerLayerVisible(String peer, boolean visible) {
+        if (peer == null || (visible ? !hiddenPeers.remove(peer) : !hiddenPeers.add(peer))) {
+            return;
+        }
+        runOnUiThread(() -> {
+            for (Map.Entry<String, PeerLayers> entry : peerLayersByFile.entrySet()) {
+                PeerLayers layers = entry.getValue();
+                if (layers.contains(peer) && layers.document != null) {
+                    try {
+                        redrawPeerLayers(entry.getKey(), layers.document);
+                    } catch (Exception e) {
+                        Logger.warn("Failed to toggle peer layer", e);
+                    }
+                }
+            }
+        });
+    }
+
+    public boolean isPeerLayerVisible(String peer) {
+        return !hiddenPeers.contains(peer);
+    }
+
+    /**
+     * Remove the peer layers of every file, showing their lines in the single highlight
+     * color again.
+     */
+    public void clearPeerLayers() {
+        runOnUiThread(() -> {
+            for (Map.Entry<String, PeerLayers> entry : new ArrayList<>(peerLayersByFile.entrySet())) {
+                String filePath = entry.getKey();
+                Document document = entry.getValue().document;
+                removePeerLayers(filePath);
+                FileHighlights current = highlightsByFile.get(filePath);
+                if (current != null && current.document == document) {
+                    materialize(filePath, current.document, current, current.lines, null);
+                }
+            }
+            hiddenPeers.clear();
+        });
+    }
+
+    /**
+     * Get the lines of a peer's layer in a file.
+     */
+    public LineIndex getPeerLines(String filePath, String peer) {
+        PeerLayers layers = peerLayersByFile.get(filePath);
+        return layers != null ? layers.get(peer) : LineIndex.EMPTY;
+    }
+
+    /**
+     * Get the number of highlighters drawn for a peer's layer in a file (one per run of its
+     * exclusive lines).
+     */
+    public int getPeerHighlighterCount(String filePath, String peer) {
+        PeerLayers layers = peerLayersByFile.get(filePath);
+        RangeHighlighter[] highlighters = layers != null ? layers.highlighters.get(peer) : null;
+        return highlighters != null ? highlighters.length : 0;
+    }
+
+    /**
+     * Redraw the peer layers of a file and, if that changed the lines they cover, the
+     * single-color highlights around them. Must run on the EDT.
+     */
+    private void redrawPeerLayers(String filePath, Document document) {
+        if (!updatePeerLayers(filePath, document)) {
+            return;
+        }
+        FileHighlights current = highlightsByFile.get(filePath);
+        if (current != null && current.document == document) {
+            materialize(filePath, document, current, current.lines, null);
+        }
+    }
+
+    /**
+     * Bring the highlighters of the peer layers of a file in line with their lines: one
+     * highlighter per run of each visible peer's exclusive lines, keyed by the peer's
+     * palette slot, and one whole-document highlighter painting the overlap. Unchanged runs
+     * keep their highlighter, so a peer whose lines do not touch a change is not touched.
+     * Must run on the EDT.
+     *
+     * @return whether the lines covered by visible layers changed
+     */
+    private boolean updatePeerLayers(String filePath, Document document) {
+        PeerLayers layers = peerLayersByFile.get(filePath);
+        if (layers == null) {
+            return false;
+        }
+        LineIndex previousCovered = layers.getCovered();
+        Document drawnIn = layers.document;
+        if (drawnIn != document) {
+            // First drawn, or the file was reloaded into another document
+            layers.disposeDrawn();
+            previousCovered = LineIndex.EMPTY;
+        }
+        layers.layout(hiddenPeers, document.getLineCount());
+        if (drawnIn != document) {
+            layers.document = document;
+            for (String peer : layers.peers()) {
+                trackPeer(layers, peer, document);
+            }
+        }
+
+        MarkupModel markupModel = getMarkupModel(document);
+        Set<String> peers = new HashSet<>(layers.drawnRuns.keySet());
+        peers.addAll(layers.peers());
+        for (String peer : peers) {
+            int[] runs = layers.exclusiveLines(peer).runs();
+            int[] previousRuns = layers.drawnRuns.getOrDefault(peer, LineRuns.EMPTY);
+            RangeHighlighter[] previous = layers.highlighters.getOrDefault(peer, new RangeHighlighter[0]);
+            if (Arrays.equals(runs, previousRuns) && allValid(previous, document)) {
+                continue;
+            }
+
+            RangeHighlighter[] highlighters = new RangeHighlighter[LineRuns.count(runs)];
+            boolean[] kept = new boolean[previous.length];
+            for (int run = 0; run < highlighters.length; run++) {
+                int startOffset = document.getLineStartOffset(runs[2 * run]);
+                int endOffset = document.getLineEndOffset(runs[2 * run + 1]);
+                int previousRun = LineRuns.indexOf(previousRuns, runs[2 * run], runs[2 * run + 1]);
+                if (previousRun >= 0 && isAt(previous[previousRun], document, startOffset, endOffset)) {
+                    highlighters[run] = previous[previousRun];
+                    kept[previousRun] = true;
+                    continue;
+                }
+                highlighters[run] = markupModel.addRangeHighlighter(
+                    PeerPalette.key(palette.slotOf(peer)), startOffset, endOffset, PEER_LAYER,
+                    HighlighterTargetArea.LINES_IN_RANGE);
+            }
+            for (int previousRun = 0; previousRun < kept.length; previousRun++) {
+                if (!kept[previousRun]) {
+                    disposeHighlighter(previous[previousRun]);
+                }
+            }
+
+            if (highlighters.length == 0) {
+                layers.drawnRuns.remove(peer);
+                layers.highlighters.remove(peer);
+            } else {
+                layers.drawnRuns.put(peer, runs);
+                layers.highlighters.put(peer, highlighters);
+            }
+        }
+
+        updateOverlap(layers, markupModel, document);
+        return !layers.getCovered().equals(previousCovered);
+    }
+
+    /**
+     * Track the runs of a peer's lines with range markers, so local edits shift them.
+     */
+    private static void trackPeer(PeerLayers layers, String peer, Document document) {
+        TrackedRegions previous = layers.regions.remove(peer);
+        if (previous != null) {
+            previous.dispose();
+        }
+        int[] runs = layers.get(peer).truncate(document.getLineCount()).runs();
+        if (runs.length == 0) {
+            return;
+        }
+        int[] startOffsets = new int[LineRuns.count(runs)];
+        int[] endOffsets = new int[startOffsets.length];
+        for (int run = 0; run < startOffsets.length; run++) {
+            startOffsets[run] = document.getLineStartOffset(runs[2 * run]);
+            endOffsets[run] = document.getLineEndOffset(runs[2 * run + 1]);
+        }
+        layers.regions.put(peer, TrackedRegions.track(document, startOffsets, endOffsets));
     }
 
     /**
-     * Add a full-width line highlight to the specified file and line.
-     *
-     * @param filePath Absolute path to the file
-     * @param lineNumber Line number (0-indexed)
+     * Point the overlap renderer of a file at the current layout, attaching its
+     * whole-document highlighter on the first overlap and disposing it with the last.
      */
-    public void addHighlight(String filePath, int lineNumber) {
-        runOnUiThread(() -> {
-            try {
-                VirtualFile file = com.intellij.openapi.vfs.VfsUtil.findFileByIoFile(
-                    new java.io.File(filePath), true
-                );
+    private void updateOverlap(PeerLayers layers, MarkupModel markupModel, Document document) {
+        LineIndex overlap = layers.getOverlap();
+        if (overlap.isEmpty()) {
+            if (layers.overlapHighlighter != null) {
+                disposeHighlighter(layers.overlapHighlighter);
+                layers.overlapHighlighter = null;
+                layers.overlapRenderer = null;
+                repaint(document);
+            }
+            return;
+        }
 
-                if (file == null || !file.isValid()) {
-                    Logger.warn("Cannot highlight: file not found: " + filePath);
-                    return;
-                }
+        List<String> peers = layers.getVisiblePeers();
+        int[] slots = new int[peers.size()];
+        for (int layer = 0; layer < slots.length; layer++) {
+            slots[layer] = palette.slotOf(peers.get(layer));
+        }
+        if (layers.overlapHighlighter != null && layers.overlapHighlighter.isValid()) {
+            layers.overlapRenderer.setLayers(overlap, layers.getVisibleLines(), slots);
+        } else {
+            layers.overlapRenderer = new PeerOverlapRenderer(overlap, layers.getVisibleLines(), slots);
+            layers.overlapHighlighter = addDocumentHighlighter(markupModel, document, layers.overlapRenderer);
+        }
+        repaint(document);
+    }
 
-                Editor editor = getEditorForFile(file);
-                if (editor == null) {
-                    Logger.debug("No editor open for file: " + filePath);
-                    return;
+    /**
+     * Re-read the lines of the peer layers of a file from their range markers after an
+     * edit that added or removed lines, and redraw them. Must run on the EDT.
+     */
+    private void shiftPeerLayers(String filePath, PeerLayers layers) {
+        boolean shifted = false;
+        for (Map.Entry<String, TrackedRegions> entry : new ArrayList<>(layers.regions.entrySet())) {
+            LineIndex lines = entry.getValue().currentLines();
+            if (!lines.equals(layers.get(entry.getKey()))) {
+                if (lines.isEmpty()) {
+                    palette.release(entry.getKey());
+                    layers.regions.remove(entry.getKey()).dispose();
                 }
+                layers.set(entry.getKey(), lines);
+                shifted = true;
+            }
+        }
+        if (shifted) {
+            redrawPeerLayers(filePath, layers.document);
+        }
+    }
 
-                Document document = editor.getDocument();
-                if (lineNumber < 0 || lineNumber >= document.getLineCount()) {
-                    Logger.warn("Invalid line number: " + lineNumber + " for file: " + filePath);
-                    return;
+    /**
+     * Get the lines of a file that visible peer layers draw in a document, which the
+     * single-color highlights leave out.
+     */
+    private LineIndex getCoveredLines(String filePath, Document document) {
+        PeerLayers layers = peerLayersByFile.get(filePath);
+        return layers != null && layers.document == document ? layers.getCovered() : LineIndex.EMPTY;
+    }
+
+    /**
+     * Remove the peer layers of a file, disposing what they draw and releasing their
+     * palette slots. Must run on the EDT.
+     */
+    private void removePeerLayers(String filePath) {
+        PeerLayers layers = peerLayersByFile.remove(filePath);
+        if (layers != null) {
+            layers.peers().forEach(palette::release);
+            layers.disposeDrawn();
+        }
+    }
+
+    /**
+     * Re-materialize a lazy file once the visible area of one of its editors leaves the
+     * materialized windows, and rebuild the overview of a file whose editors were resized
+     * enough to change its bucket size. Called on the EDT.
+     */
+    void onVisibleAreaChanged(Editor editor) {
+        if (editor == null || editor.isDisposed() || (editor.getProject() != null && editor.getProject() != project)) {
+            return;
+        }
+
+        Document document = editor.getDocument();
+        for (Map.Entry<String, FileHighlights> entry : highlightsByFile.entrySet()) {
+            FileHighlights current = entry.getValue();
+            if (current.document != document) {
+                continue;
+            }
+
+            int[] visible = getVisibleLines(editor);
+            if ((current.isLazy() && !LineRuns.covers(current.windows, visible[0], visible[1]))
+                    || current.overview.bucketSize != getOverviewBucketSize(document)) {
+                try {
+                    materialize(entry.getKey(), document, current, current.lines, null);
+                } catch (Exception e) {
+                    Logger.warn("Failed to update highlights for visible area", e);
                 }
+            }
+            return;
+        }
+    }
 
-                // Calculate line offsets
-                int lineStartOffset = document.getLineStartOffset(lineNumber);
-                int lineEndOffset = document.getLineEndOffset(lineNumber);
+    /**
+     * Get the lines to materialize in lazy mode: the visible lines of every editor of the
+     * document plus the margin, as sorted, disjoint windows.
+     */
+    private int[] getViewportWindows(Document document) {
+        int lastLine = document.getLineCount() - 1;
+        Editor[] editors = getEditors(document);
+        int[] windows = new int[2 * editors.length];
+        for (int i = 0; i < editors.length; i++) {
+            int[] visible = getVisibleLines(editors[i]);
+            windows[2 * i] = Math.max(0, visible[0] - viewportMarginLines);
+            windows[2 * i + 1] = Math.min(lastLine, visible[1] + viewportMarginLines);
+        }
+        return LineRuns.union(windows);
+    }
 
-                // Create highlight attributes
-                TextAttributes attributes = new TextAttributes();
-                attributes.setBackgroundColor(ColorSchemeProvider.getHighlightJBColor());
+    /**
+     * Get the first and last logical line of the visible area of an editor.
+     */
+    private static int[] getVisibleLines(Editor editor) {
+        Rectangle area = editor.getScrollingModel().getVisibleArea();
+        int first = editor.xyToLogicalPosition(new Point(0, area.y)).line;
+        int last = editor.xyToLogicalPosition(new Point(0, area.y + area.height)).line;
+        // Positions below the last line map to virtual lines past the end of the document
+        int lastLine = Math.max(0, editor.getDocument().getLineCount() - 1);
+        first = Math.min(first, lastLine);
+        return new int[]{first, Math.max(first, Math.min(last, lastLine))};
+    }
 
-                // Add highlight
-                MarkupModel markupModel = editor.getMarkupModel();
-                RangeHighlighter highlighter = markupModel.addRangeHighlighter(
-                    lineStartOffset,
-                    lineEndOffset,
-                    HighlighterLayer.SELECTION - 1,  // Just below selection layer
-                    attributes,
-                    HighlighterTargetArea.LINES_IN_RANGE  // Full-width highlighting
-                );
+    /**
+     * Bring the overview of a file in line with its lines: one thin error-stripe mark per
+     * non-empty bucket, each also painting the gutter bar. Marks of buckets that did not
+     * change are kept, so an update only touches the buckets around the changed lines. The
+     * marks have no text attributes of their own. Must run on the EDT.
+     *
+     * @param previous the current overview of the file, or null if it has none
+     */
+    private OverviewMarks updateOverview(MarkupModel markupModel, Document document, OverviewMarks previous,
+                                         LineIndex lines, TextAttributes attributes, boolean stale) {
+        int lineCount = document.getLineCount();
+        int bucketSize = getOverviewBucketSize(document);
+        int[] buckets = lines.isEmpty() ? new int[0] : OverviewMarks.buckets(lines, lineCount, bucketSize);
+        if (previous != null && previous.bucketSize == bucketSize && Arrays.equals(previous.buckets, buckets)
+                && allValid(previous.marks, document)) {
+            // Scrolling, or lines that changed within the same buckets: only the gutter bar changes
+            if (!previous.gutter.getLines().equals(lines)) {
+                previous.gutter.setLines(lines);
+                repaint(document);
+            }
+            return previous;
+        }
 
-                // Store highlighter
-                highlightersByFile.computeIfAbsent(filePath, k -> new ArrayList<>()).add(highlighter);
+        GutterSummaryRenderer gutter = previous != null ? previous.gutter : new GutterSummaryRenderer(lines, stale);
+        boolean linesChanged = !gutter.getLines().equals(lines);
+        gutter.setLines(lines);
+        RangeHighlighter[] marks = new RangeHighlighter[buckets.length / 4];
+        boolean[] kept = new boolean[previous != null ? previous.marks.length : 0];
+        for (int bucket = 0; bucket < marks.length; bucket++) {
+            int firstLine = buckets[4 * bucket + 1];
+            int lastLine = buckets[4 * bucket + 2];
+            int count = buckets[4 * bucket + 3];
+            int startOffset = document.getLineStartOffset(firstLine);
+            int endOffset = document.getLineEndOffset(lastLine);
 
-            } catch (Exception e) {
-                Logger.warn("Failed to add highlight", e);
+            int previousMark = previous != null && previous.bucketSize == bucketSize
+                ? OverviewMarks.indexOf(previous.buckets, buckets[4 * bucket], firstLine, lastLine, count) : -1;
+            if (previousMark >= 0 && isAt(previous.marks[previousMark], document, startOffset, endOffset)) {
+                marks[bucket] = previous.marks[previousMark];
+                kept[previousMark] = true;
+                continue;
             }
-        });
+
+            RangeHighlighter mark = addRunHighlighter(markupModel, startOffset, endOffset, null);
+            mark.setErrorStripeMarkColor(attributes.getBackgroundColor());
+            mark.setThinErrorStripeMark(true);
+            mark.setErrorStripeTooltip("Kawa Code: " + count + " highlighted line(s)");
+            mark.setLineMarkerRenderer(gutter);
+            marks[bucket] = mark;
+        }
+        for (int previousMark = 0; previousMark < kept.length; previousMark++) {
+            if (!kept[previousMark]) {
+                disposeHighlighter(previous.marks[previousMark]);
+            }
+        }
+        if (linesChanged) {
+            // Kept marks paint the new lines only once the gutter is repainted
+            repaint(document);
+        }
+        return new OverviewMarks(bucketSize, buckets, marks, gutter);
+    }
+
+    /**
+     * Get the number of lines per overview bucket of a document, for the tallest error
+     * stripe among its editors.
+     */
+    private int getOverviewBucketSize(Document document) {
+        return OverviewMarks.bucketSize(document.getLineCount(), OverviewMarks.bucketCount(getStripeHeight(document)));
+    }
+
+    /**
+     * Get the height in pixels of the tallest error stripe among the editors of a document
+     * (the height of its visible area), or 0 if no editor is showing it.
+     */
+    int getStripeHeight(Document document) {
+        int height = 0;
+        for (Editor editor : getEditors(document)) {
+            if (!editor.isDisposed()) {
+                height = Math.max(height, editor.getScrollingModel().getVisibleArea().height);
+            }
+        }
+        return height;
+    }
+
+    /**
+     * Drop the lines that cannot be in a file: past the end of its document if it is loaded,
+     * otherwise past one line per byte of its content. Lines that are cached are bounded
+     * by the file even when it is not open.
+     */
+    static LineIndex truncateToFile(VirtualFile file, LineIndex lines) {
+        if (file == null || lines.isEmpty()) {
+            return lines;
+        }
+        FileDocumentManager documentManager = FileDocumentManager.getInstance();
+        Document document = documentManager != null ? documentManager.getCachedDocument(file) : null;
+        long lineCount = document != null ? document.getLineCount() : file.getLength() + 1;
+        return lines.truncate((int) Math.min(lineCount, LineIndex.MAX_LINE_COUNT));
+    }
+
+    private static VirtualFile findFile(String filePath) {
+        LocalFileSystem fileSystem = LocalFileSystem.getInstance();
+        return fileSystem != null ? fileSystem.findFileByPath(filePath) : null;
+    }
+
+    /**
+     * Resolve the text editor showing a file, or null (with a log message) if there is none.
+     */
+    private Editor findEditor(String filePath) {
+        VirtualFile file = com.intellij.openapi.vfs.VfsUtil.findFileByIoFile(
+            new java.io.File(filePath), true
+        );
+
+        if (file == null || !file.isValid()) {
+            Logger.warn("Cannot highlight: file not found: " + filePath);
+            return null;
+        }
+
+        Editor editor = getEditorForFile(file);
+        if (editor == null) {
+            Logger.debug("No editor open for file: " + filePath);
+        }
+        return editor;
+    }
+
+    private static boolean isAt(RangeHighlighter highlighter, Document document, int startOffset, int endOffset) {
+        return highlighter != null
+            && highlighter.isValid()
+            && highlighter.getDocument() == document
+            && highlighter.getStartOffset() == startOffset
+            && highlighter.getEndOffset() == endOffset;
+    }
+
+    /**
+     * Attach a renderer to a highlighter spanning the whole document.
+     */
+    private static RangeHighlighter addDocumentHighlighter(MarkupModel markupModel, Document document,
+                                                           CustomHighlighterRenderer renderer) {
+        RangeHighlighter highlighter = markupModel.addRangeHighlighter(
+            0,
+            document.getTextLength(),
+            PEER_LAYER,
+            null,
+            HighlighterTargetArea.LINES_IN_RANGE
+        );
+        // Stay attached to the whole document as text is typed at either end
+        highlighter.setGreedyToLeft(true);
+        highlighter.setGreedyToRight(true);
+        highlighter.setCustomRenderer(renderer);
+        return highlighter;
+    }
+
+    private static RangeHighlighter addRunHighlighter(MarkupModel markupModel, int startOffset, int endOffset,
+                                                      TextAttributes attributes) {
+        // Below the conflicts, which are just below the selection
+        return addRunHighlighter(markupModel, startOffset, endOffset, PEER_LAYER, attributes);
+    }
+
+    private static RangeHighlighter addRunHighlighter(MarkupModel markupModel, int startOffset, int endOffset,
+                                                      int layer, TextAttributes attributes) {
+        return markupModel.addRangeHighlighter(
+            startOffset,
+            endOffset,
+            layer,
+            attributes,
+            HighlighterTargetArea.LINES_IN_RANGE  // Full-width highlighting
+        );
+    }
+
+    private static void disposeHighlighter(RangeHighlighter highlighter) {
+        if (highlighter != null && highlighter.isValid()) {
+            highlighter.dispose();
+        }
+    }
+
+    private static void disposeAll(RangeHighlighter[] highlighters) {
+        for (RangeHighlighter highlighter : highlighters) {
+            disposeHighlighter(highlighter);
+        }
+    }
+
+    private void recordUpdate(HighlightUpdate update) {
+        linesAdded.addAndGet(update.getAdded());
+        linesRemoved.addAndGet(update.getRemoved());
+        linesUnchanged.addAndGet(update.getUnchanged());
+        lastUpdate = update;
     }
 
     /**
@@ -98,15 +1218,17 @@ public class HighlightManager {
      */
     public void clearHighlights(String filePath) {
         runOnUiThread(() -> {
-            List<RangeHighlighter> highlighters = highlightersByFile.remove(filePath);
-            if (highlighters != null) {
-                for (RangeHighlighter highlighter : highlighters) {
-                    if (highlighter.isValid()) {
-                        highlighter.dispose();
-                    }
-                }
-                Logger.debug("Cleared " + highlighters.size() + " highlights from: " + filePath);
+            cache.remove(filePath);
+            scheduledLines.remove(filePath);
+            staleFiles.remove(filePath);
+            untrack(filePath);
+            removePeerLayers(filePath);
+            FileHighlights highlights = highlightsByFile.remove(filePath);
+            if (highlights != null) {
+                highlights.dispose();
+                Logger.debug("Cleared " + highlights.lines.size() + " highlighted lines from: " + filePath);
             }
+            updateConflicts(filePath);
         });
     }
 
@@ -116,15 +1238,21 @@ public class HighlightManager {
     public void clearAllHighlights() {
         runOnUiThread(() -> {
             int totalCleared = 0;
-            for (Map.Entry<String, List<RangeHighlighter>> entry : highlightersByFile.entrySet()) {
-                for (RangeHighlighter highlighter : entry.getValue()) {
-                    if (highlighter.isValid()) {
-                        highlighter.dispose();
-                        totalCleared++;
-                    }
-                }
+            for (FileHighlights highlights : highlightsByFile.values()) {
+                highlights.dispose();
+                totalCleared += highlights.lines.size();
             }
-            highlightersByFile.clear();
+            highlightsByFile.clear();
+            scheduledLines.clear();
+            staleFiles.clear();
+            for (TrackedRegions regions : regionsByFile.values()) {
+                regions.dispose();
+            }
+            regionsByFile.clear();
+            new ArrayList<>(peerLayersByFile.keySet()).forEach(this::removePeerLayers);
+            palette.clear();
+            conflictsByFile.keySet().forEach(this::updateConflicts);
+            cache.clear();
             Logger.info("Cleared all highlights (" + totalCleared + " total)");
         });
     }
@@ -150,55 +1278,50 @@ public class HighlightManager {
 
     /**
      * Refresh all existing highlights with updated colors.
-     * This recreates all highlights using the current color scheme settings.
+     * Existing highlighters are switched to the current shared attributes in place, in a
+     * single EDT pass; nothing is disposed or recreated.
      */
     public void refreshHighlightColors() {
         runOnUiThread(() -> {
             try {
-                // Store all current highlights with their file paths and line numbers
-                Map<String, List<Integer>> lineNumbersByFile = new ConcurrentHashMap<>();
-
-                for (Map.Entry<String, List<RangeHighlighter>> entry : this.highlightersByFile.entrySet()) {
-                    String filePath = entry.getKey();
-                    List<Integer> lineNumbers = new ArrayList<>();
-
-                    for (RangeHighlighter highlighter : entry.getValue()) {
-                        if (highlighter.isValid()) {
-                            // Get the document to find line number from offset
-                            Document document = highlighter.getDocument();
-                            if (document != null) {
-                                int lineNumber = document.getLineNumber(highlighter.getStartOffset());
-                                lineNumbers.add(lineNumber);
-                            }
+                int recolored = 0;
+                List<String> stale = null;
+
+                for (Map.Entry<String, FileHighlights> entry : highlightsByFile.entrySet()) {
+                    TextAttributes attributes = entry.getValue().stale
+                        ? ColorSchemeProvider.getStaleHighlightAttributes()
+                        : ColorSchemeProvider.getHighlightAttributes();
+                    for (RangeHighlighter mark : entry.getValue().overview.marks) {
+                        if (mark.isValid()) {
+                            mark.setErrorStripeMarkColor(attributes.getBackgroundColor());
                         }
                     }
-
-                    if (!lineNumbers.isEmpty()) {
-                        lineNumbersByFile.put(filePath, lineNumbers);
+                    if (entry.getValue().renderer != null) {
+                        // The renderers read the shared attributes on every paint
+                        repaint(entry.getValue().document);
+                        continue;
                     }
-                }
-
-                // Clear all existing highlights
-                for (Map.Entry<String, List<RangeHighlighter>> entry : this.highlightersByFile.entrySet()) {
-                    for (RangeHighlighter highlighter : entry.getValue()) {
-                        if (highlighter.isValid()) {
-                            highlighter.dispose();
+                    for (RangeHighlighter highlighter : entry.getValue().highlighters) {
+                        if (highlighter instanceof RangeHighlighterEx && highlighter.isValid()) {
+                            ((RangeHighlighterEx) highlighter).setTextAttributes(attributes);
+                            recolored++;
+                        } else {
+                            if (stale == null) {
+                                stale = new ArrayList<>();
+                            }
+                            stale.add(entry.getKey());
+                            break;
                         }
                     }
                 }
-                this.highlightersByFile.clear();
-
-                // Recreate highlights with new colors
-                int totalRefreshed = 0;
-                for (Map.Entry<String, List<Integer>> entry : lineNumbersByFile.entrySet()) {
-                    String filePath = entry.getKey();
-                    for (Integer lineNumber : entry.getValue()) {
-                        addHighlight(filePath, lineNumber);
-                        totalRefreshed++;
-                    }
+
+                // Highlighters that cannot be recolored (invalidated by an edit) are rebuilt inline
+                if (stale != null) {
+                    stale.forEach(this::rebuildFile);
                 }
 
-                Logger.info("Refreshed " + totalRefreshed + " highlights with new colors");
+                Logger.info("Recolored " + recolored + " highlighters" +
+                           (stale != null ? ", rebuilt highlights of " + stale.size() + " file(s)" : ""));
 
             } catch (Exception e) {
                 Logger.warn("Failed to refresh highlight colors", e);
@@ -206,6 +1329,148 @@ public class HighlightManager {
         });
     }
 
+    /**
+     * Show the cached highlights of a file that was just opened, without waiting for the
+     * backend. The next active-path response for the file replaces them as a normal diff.
+     */
+    public void restoreHighlights(VirtualFile file) {
+        if (!highlightsEnabled || file == null) {
+            return;
+        }
+        String filePath = file.getPath();
+        LineIndex cached = cache.get(filePath);
+        if (cached == null) {
+            return;
+        }
+
+        runOnUiThread(() -> {
+            try {
+                Editor editor = getEditorForFile(file);
+                FileHighlights current = highlightsByFile.get(filePath);
+                if (editor == null || (current != null && current.document == editor.getDocument())) {
+                    // Not a text editor, or a backend response got there first
+                    return;
+                }
+                scheduleUpdate(filePath, editor.getDocument(), cached);
+                Logger.debug("Restoring " + cached.size() + " cached highlight lines for: " + filePath);
+            } catch (Exception e) {
+                Logger.warn("Failed to restore cached highlights", e);
+            }
+        });
+    }
+
+    /**
+     * Show lines restored from a previous session, marked as stale until the backend sends
+     * fresh lines for the file. Ignored if the file already has lines from this session.
+     */
+    public void showStaleHighlights(VirtualFile file, LineIndex lines) {
+        if (file == null || lines.isEmpty()) {
+            return;
+        }
+        String filePath = file.getPath();
+
+        runOnUiThread(() -> {
+            try {
+                if (highlightsByFile.containsKey(filePath) || scheduledLines.containsKey(filePath)
+                        || cache.contains(filePath)) {
+                    return;
+                }
+                staleFiles.add(filePath);
+                cache.put(filePath, truncateToFile(file, lines));
+
+                Editor editor = highlightsEnabled ? getEditorForFile(file) : null;
+                if (editor != null) {
+                    scheduleUpdate(filePath, editor.getDocument(), lines);
+                    Logger.debug("Showing " + lines.size() + " stale highlight lines for: " + filePath);
+                }
+            } catch (Exception e) {
+                Logger.warn("Failed to show stale highlights", e);
+            }
+        });
+    }
+
+    /**
+     * Check whether a file has lines from this session (shown or cached), so fetching
+     * them ahead of time is not needed.
+     */
+    public boolean hasFreshHighlights(String filePath) {
+        return cache.contains(filePath) && !staleFiles.contains(filePath);
+    }
+
+    /**
+     * Check whether the highlights of a file were restored from a previous session and
+     * have not been confirmed by the backend yet.
+     */
+    public boolean isStale(String filePath) {
+        return staleFiles.contains(filePath);
+    }
+
+    /**
+     * Drop the highlighters of a file whose last editor was closed. Its lines stay cached.
+     */
+    public void releaseHighlights(VirtualFile file) {
+        runOnUiThread(() -> {
+            untrack(file.getPath());
+            PeerLayers layers = peerLayersByFile.get(file.getPath());
+            if (layers != null) {
+                layers.disposeDrawn();
+            }
+            FileHighlights highlights = highlightsByFile.remove(file.getPath());
+            if (highlights != null) {
+                highlights.dispose();
+            }
+            updateConflicts(file.getPath());
+        });
+    }
+
+    /**
+     * Get the cache of last known lines per file, for size limits and hit-rate metrics.
+     */
+    public HighlightCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Dispose everything drawn for a file and draw its lines again from scratch.
+     * Must run on the EDT.
+     */
+    private void rebuildFile(String filePath) {
+        FileHighlights highlights = highlightsByFile.remove(filePath);
+        if (highlights == null) {
+            return;
+        }
+        untrack(filePath);
+        highlights.dispose();
+        Editor editor = findEditor(filePath);
+        if (editor != null) {
+            scheduleUpdate(filePath, editor.getDocument(), highlights.lines);
+        }
+    }
+
+    /**
+     * Select how highlighted lines are drawn. Files that are already highlighted are
+     * redrawn with the new strategy.
+     */
+    public void setRenderingStrategy(RenderingStrategy strategy) {
+        if (strategy == null || strategy == renderingStrategy) {
+            return;
+        }
+        renderingStrategy = strategy;
+
+        runOnUiThread(() -> {
+            try {
+                new ArrayList<>(highlightsByFile.keySet()).forEach(this::rebuildFile);
+                Logger.info("Highlight rendering strategy: " + strategy);
+            } catch (Exception e) {
+                Logger.warn("Failed to switch highlight rendering strategy", e);
+            }
+        });
+    }
+
+    public RenderingStrategy getRenderingStrategy() {
+        return renderingStrategy;
+    }
+
     /**
      * Check if highlights are currently enabled.
      */
@@ -214,7 +1479,8 @@ public class HighlightManager {
     }
 
     /**
-     * Get the editor for a given virtual file.
+     * Get the first text editor for a given virtual file. Used to resolve the document;
+     * highlights themselves go to the document and show in all of its editors.
      */
     private Editor getEditorForFile(VirtualFile file) {
         FileEditorManager fileEditorManager = FileEditorManager.getInstance(project);
@@ -237,19 +1503,106 @@ public class HighlightManager {
      * Get the count of highlights for a specific file.
      */
     public int getHighlightCount(String filePath) {
-        List<RangeHighlighter> highlighters = highlightersByFile.get(filePath);
-        return highlighters != null ? highlighters.size() : 0;
+        FileHighlights highlights = highlightsByFile.get(filePath);
+        return highlights != null ? highlights.lines.size() : 0;
+    }
+
+    /**
+     * Get an immutable snapshot of the highlighted lines of a file.
+     */
+    public LineIndex getLineIndex(String filePath) {
+        FileHighlights highlights = highlightsByFile.get(filePath);
+        return highlights != null ? highlights.lines : LineIndex.EMPTY;
+    }
+
+    /**
+     * Get the highlighted lines of every file with peer changes, shown or cached, sorted by
+     * path. Shown lines win over cached ones, which may lag behind local edits.
+     */
+    public NavigableMap<String, LineIndex> getKnownLines() {
+        NavigableMap<String, LineIndex> lines = new TreeMap<>(cache.entries());
+        for (Map.Entry<String, FileHighlights> entry : highlightsByFile.entrySet()) {
+            lines.put(entry.getKey(), entry.getValue().lines);
+        }
+        return lines;
+    }
+
+    /**
+     * Get the number of range highlighters (one per run of consecutive lines) for a file.
+     * In lazy mode only the runs near the visible area are counted; with the custom
+     * renderer there is a single highlighter per file.
+     */
+    public int getHighlighterCount(String filePath) {
+        FileHighlights highlights = highlightsByFile.get(filePath);
+        return highlights != null ? highlights.highlighters.length : 0;
     }
 
     /**
      * Get the total count of all highlights.
      */
     public int getTotalHighlightCount() {
-        return highlightersByFile.values().stream()
-            .mapToInt(List::size)
+        return highlightsByFile.values().stream()
+            .mapToInt(highlights -> highlights.lines.size())
             .sum();
     }
 
+    /**
+     * Get the result of the most recent highlight update, or null if none happened yet.
+     */
+    public HighlightUpdate getLastUpdate() {
+        return lastUpdate;
+    }
+
+    /**
+     * Get the total number of lines that gained a highlighter across all updates.
+     */
+    public long getLinesAddedCount() {
+        return linesAdded.get();
+    }
+
+    /**
+     * Get the total number of lines that lost their highlighter across all updates.
+     */
+    public long getLinesRemovedCount() {
+        return linesRemoved.get();
+    }
+
+    /**
+     * Get the total number of lines whose highlighter was kept across all updates.
+     */
+    public long getLinesUnchangedCount() {
+        return linesUnchanged.get();
+    }
+
+    /**
+     * Set the document length (in lines) above which highlighters are only materialized
+     * around the visible area. Applies from the next update of each file.
+     */
+    public void setLazyLineThreshold(int lazyLineThreshold) {
+        this.lazyLineThreshold = Math.max(0, lazyLineThreshold);
+    }
+
+    public int getLazyLineThreshold() {
+        return lazyLineThreshold;
+    }
+
+    /**
+     * Set how many lines above and below the visible area get highlighters in lazy mode.
+     */
+    public void setViewportMarginLines(int viewportMarginLines) {
+        this.viewportMarginLines = Math.max(0, viewportMarginLines);
+    }
+
+    /**
+     * Stop listening for scrolling and edits. Highlighters are cleared separately with {@link #clearAllHighlights()}.
+     */
+    public void dispose() {
+        if (editorListeners != null) {
+            Disposer.dispose(editorListeners);
+            editorListeners = null;
+        }
+    }
+
     private void runOnUiThread(Runnable action) {
         var application = ApplicationManager.getApplication();
         if (application != null) {
@@ -258,4 +1611,68 @@ public class HighlightManager {
             action.run();
         }
     }
+
+    /**
+     * Runs of a line set with the start and end offset of each run, resolved against the
+     * document at a given modification stamp.
+     */
+    private static final class RunOffsets {
+        final long stamp;
+        final LineIndex lines;
+        final int[] runs;
+        final int[] startOffsets;
+        final int[] endOffsets;
+
+        RunOffsets(long stamp, LineIndex lines, int[] runs, int[] startOffsets, int[] endOffsets) {
+            this.stamp = stamp;
+            this.lines = lines;
+            this.runs = runs;
+            this.startOffsets = startOffsets;
+            this.endOffsets = endOffsets;
+        }
+    }
+
+    /**
+     * Highlighted lines of one file and one highlighter per run of {@link LineIndex#runs()}
+     * inside the materialized windows (the whole document unless the file is lazy), or a
+     * single whole-document highlighter painted by {@link #renderer}, plus the overview
+     * marks. All highlighters are in the document's markup model. Only replaced as a whole,
+     * on the EDT.
+     */
+    private static final class FileHighlights {
+        final LineIndex lines;
+        final Document document;
+        final int[] runs;
+        final RangeHighlighter[] highlighters;
+        final int[] windows;
+        final OverviewMarks overview;
+        final LineBackgroundRenderer renderer;
+        final boolean stale;
+
+        FileHighlights(LineIndex lines, Document document, RangeHighlighter highlighter, LineBackgroundRenderer renderer,
+                       OverviewMarks overview, boolean stale) {
+            this(lines, document, LineRuns.EMPTY, new RangeHighlighter[]{highlighter}, null, overview, renderer, stale);
+        }
+
+        FileHighlights(LineIndex lines, Document document, int[] runs, RangeHighlighter[] highlighters,
+                       int[] windows, OverviewMarks overview, LineBackgroundRenderer renderer, boolean stale) {
+            this.lines = lines;
+            this.document = document;
+            this.runs = runs;
+            this.highlighters = highlighters;
+            this.windows = windows;
+            this.overview = overview;
+            this.renderer = renderer;
+            this.stale = stale;
+        }
+
+        boolean isLazy() {
+            return windows != null;
+        }
+
+        void dispose() {
+            disposeAll(highlighters);
+            disposeAll(overview.marks);
+        }
+    }
 }
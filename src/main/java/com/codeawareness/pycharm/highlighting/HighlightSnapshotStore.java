@@ -0,0 +1,206 @@
+package com.codeawareness.pycharm.highlighting;
+
+import com.codeawareness.pycharm.utils.Logger;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.project.Project;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Persists the last known highlighted lines of a project across IDE restarts, so they can
+ * be shown (as stale) before the backend is connected.
+ *
+ * Every entry is keyed by file path and a hash of the file content the lines were valid
+ * for; an entry is only returned while the file still has that content. Entries are
+ * recorded as responses arrive, so closing the project only writes them out. The file is
+ * read lazily on first access and written as a whole, through a temporary file.
+ *
+ * File layout (big-endian):
+ *   header: magic "KAWAHL" (6 bytes), version (1 byte), entry count (int)
+ *   entry: path (modified UTF-8), content hash (long), run count (int), runs (int pairs,
+ *          first line and last line of each run)
+ */
+public class HighlightSnapshotStore {
+
+    static final byte[] MAGIC = "KAWAHL".getBytes(StandardCharsets.US_ASCII);
+    static final byte VERSION = 1;
+
+    // Smallest possible entry: empty path (2), content hash (8), run count (4)
+    private static final int MIN_ENTRY_BYTES = 14;
+    // Disjoint runs of lines below LineIndex.MAX_LINE_COUNT
+    private static final int MAX_RUNS = LineIndex.MAX_LINE_COUNT / 2;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Path file;
+    // Insertion-ordered, most recently stored last, so trimming drops the oldest entries
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private boolean loaded;
+
+    public HighlightSnapshotStore(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Get the snapshot file of a project, inside the IDE system directory.
+     */
+    public static Path getDefaultFile(Project project) {
+        return Paths.get(PathManager.getSystemPath(), "kawa-code", "highlights",
+            project.getName() + "." + project.getLocationHash() + ".bin");
+    }
+
+    /**
+     * Hash file content for use as the key of an entry (64-bit FNV-1a).
+     */
+    public static long contentHash(byte[] content) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : content) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Get the stored lines of a file, or null if there are none for this content.
+     */
+    public synchronized LineIndex get(String filePath, long contentHash) {
+        ensureLoaded();
+        Entry entry = entries.get(filePath);
+        return entry != null && entry.contentHash == contentHash ? entry.lines : null;
+    }
+
+    /**
+     * Store the lines of a file for the given content, replacing any previous entry.
+     * An empty line set removes the file.
+     */
+    public synchronized void put(String filePath, long contentHash, LineIndex lines) {
+        ensureLoaded();
+        entries.remove(filePath);
+        if (!lines.isEmpty()) {
+            entries.put(filePath, new Entry(contentHash, lines));
+        }
+    }
+
+    public synchronized void remove(String filePath) {
+        ensureLoaded();
+        entries.remove(filePath);
+    }
+
+    /**
+     * Drop the entries of every file not in the given set.
+     */
+    public synchronized void retainAll(Collection<String> filePaths) {
+        ensureLoaded();
+        entries.keySet().retainAll(filePaths);
+    }
+
+    public synchronized int size() {
+        ensureLoaded();
+        return entries.size();
+    }
+
+    /**
+     * Drop the oldest entries until at most {@code maxFiles} are left.
+     */
+    public synchronized void trim(int maxFiles) {
+        ensureLoaded();
+        Iterator<String> oldest = entries.keySet().iterator();
+        while (entries.size() > Math.max(0, maxFiles) && oldest.hasNext()) {
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    /**
+     * Write all entries to the snapshot file.
+     */
+    public synchronized void save() throws IOException {
+        ensureLoaded();
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                int[] runs = entry.getValue().lines.runs();
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().contentHash);
+                out.writeInt(LineRuns.count(runs));
+                for (int value : runs) {
+                    out.writeInt(value);
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            long size = Files.size(file);
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readByte() != VERSION) {
+                Logger.warn("Ignoring highlight snapshot with unknown format: " + file);
+                return;
+            }
+            // Counts are checked against the file size before anything is allocated, so a
+            // corrupt file cannot ask for more memory than it could hold
+            int count = in.readInt();
+            if (count < 0 || (long) count * MIN_ENTRY_BYTES > size) {
+                throw new IOException("Invalid entry count " + count);
+            }
+            for (int i = 0; i < count; i++) {
+                String filePath = in.readUTF();
+                long contentHash = in.readLong();
+                int runCount = in.readInt();
+                if (runCount < 0 || runCount > MAX_RUNS || 8L * runCount > size) {
+                    throw new IOException("Invalid run count " + runCount + " for " + filePath);
+                }
+                int[] runs = new int[2 * runCount];
+                for (int j = 0; j < runs.length; j++) {
+                    runs[j] = in.readInt();
+                }
+                // Clipped to LineIndex.MAX_LINE_COUNT
+                entries.put(filePath, new Entry(contentHash, LineIndex.ofRuns(runs, LineIndex.MAX_LINE_COUNT)));
+            }
+            Logger.debug("Loaded " + entries.size() + " highlight snapshot(s) from " + file);
+        } catch (IOException | RuntimeException e) {
+            Logger.warn("Ignoring unreadable highlight snapshot: " + file, e);
+            entries.clear();
+        }
+    }
+
+    private static final class Entry {
+        final long contentHash;
+        final LineIndex lines;
+
+        Entry(long contentHash, LineIndex lines) {
+            this.contentHash = contentHash;
+            this.lines = lines;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.codeawareness.pycharm.highlighting;
+
+/**
+ * Outcome of one highlight update for a file: how many lines gained a highlighter,
+ * lost one, or kept their existing one.
+ */
+public final class HighlightUpdate {
+
+    private final String filePath;
+    private final int added;
+    private final int removed;
+    private final int unchanged;
+
+    HighlightUpdate(String filePath, int added, int removed, int unchanged) {
+        this.filePath = filePath;
+        this.added = added;
+        this.removed = removed;
+        this.unchanged = unchanged;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public int getAdded() {
+        return added;
+    }
+
+    public int getRemoved() {
+        return removed;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    @Override
+    public String toString() {
+        return "HighlightUpdate{" + filePath +
+                ": +" + added +
+                " -" + removed +
+                " =" + unchanged + '}';
+    }
+}
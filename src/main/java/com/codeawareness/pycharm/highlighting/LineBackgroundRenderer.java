@@ -0,0 +1,78 @@
+package com.codeawareness.pycharm.highlighting;
+
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.LogicalPosition;
+import com.intellij.openapi.editor.markup.CustomHighlighterRenderer;
+import com.intellij.openapi.editor.markup.RangeHighlighter;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+
+/**
+ * Paints full-width backgrounds for the highlighted lines of one file.
+ * Attached to a single whole-document highlighter; each paint consults the current
+ * {@link LineIndex} and only fills the runs that intersect the clip, so the cost of a
+ * repaint depends on what is visible rather than on the size of the line set.
+ */
+final class LineBackgroundRenderer implements CustomHighlighterRenderer {
+
+    private volatile LineIndex lines;
+    private final boolean stale;
+
+    LineBackgroundRenderer(LineIndex lines, boolean stale) {
+        this.lines = lines;
+        this.stale = stale;
+    }
+
+    LineIndex getLines() {
+        return lines;
+    }
+
+    void setLines(LineIndex lines) {
+        this.lines = lines;
+    }
+
+    @Override
+    public void paint(Editor editor, RangeHighlighter highlighter, Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = editor.getScrollingModel().getVisibleArea();
+        }
+        Color color = (stale ? ColorSchemeProvider.getStaleHighlightAttributes()
+            : ColorSchemeProvider.getHighlightAttributes()).getBackgroundColor();
+        if (color != null) {
+            paintRuns(editor, g, lines, clip, color);
+        }
+    }
+
+    /**
+     * Fill the runs of {@code lines} that intersect {@code clip}.
+     *
+     * @return the number of runs painted
+     */
+    static int paintRuns(Editor editor, Graphics g, LineIndex lines, Rectangle clip, Color color) {
+        int lineCount = editor.getDocument().getLineCount();
+        if (lines.isEmpty() || lineCount == 0) {
+            return 0;
+        }
+        int firstLine = Math.min(editor.xyToLogicalPosition(new Point(0, clip.y)).line, lineCount - 1);
+        int lastLine = Math.min(editor.xyToLogicalPosition(new Point(0, clip.y + clip.height)).line, lineCount - 1);
+        int lineHeight = editor.getLineHeight();
+
+        g.setColor(color);
+        int painted = 0;
+        // A run that starts above the clip is painted from the first visible line
+        int start = lines.nextLine(firstLine);
+        while (start >= 0 && start <= lastLine) {
+            int end = Math.min(lines.nextMissingLine(start) - 1, lastLine);
+            int top = editor.logicalPositionToXY(new LogicalPosition(start, 0)).y;
+            int bottom = editor.logicalPositionToXY(new LogicalPosition(end, 0)).y + lineHeight;
+            g.fillRect(clip.x, top, clip.width, bottom - top);
+            painted++;
+            start = lines.nextLine(end + 1);
+        }
+        return painted;
+    }
+}
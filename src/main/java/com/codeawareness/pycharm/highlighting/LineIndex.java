@@ -0,0 +1,454 @@
+package com.codeawareness.pycharm.highlighting;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable set of highlighted line numbers for one file, stored as a {@code long[]} bitset.
+ *
+ * Membership is O(1), iteration and run extraction scan 64 lines per word, and because
+ * instances never change a snapshot is just a reference: consumers can hold on to an
+ * index while the highlight manager moves on to a newer one. Negative line numbers and
+ * lines at or above {@link #MAX_LINE_COUNT} are ignored, so no input can make the bitset
+ * larger than 512 KB.
+ */
+public final class LineIndex {
+
+    public static final LineIndex EMPTY = new LineIndex(new long[0], 0);
+
+    /** Lines at or above this are dropped when building an index (larger than any editable file). */
+    public static final int MAX_LINE_COUNT = 1 << 22;
+
+    private final long[] words;
+    private final int size;
+    private volatile int[] runs;
+
+    private LineIndex(long[] words, int size) {
+        this.words = words;
+        this.size = size;
+    }
+
+    /**
+     * Build an index from line numbers in any order; duplicates and negative lines are ignored.
+     */
+    public static LineIndex of(int... lines) {
+        return lines == null ? EMPTY : of(lines, lines.length);
+    }
+
+    /**
+     * Build an index from the first {@code length} entries of a (possibly reused) buffer.
+     */
+    public static LineIndex of(int[] lines, int length) {
+        return of(lines, length, MAX_LINE_COUNT);
+    }
+
+    /**
+     * Build an index from the first {@code length} entries of a buffer, dropping lines at or
+     * above {@code lineCount} (capped at {@link #MAX_LINE_COUNT}).
+     */
+    public static LineIndex of(int[] lines, int length, int lineCount) {
+        int limit = Math.min(lineCount, MAX_LINE_COUNT);
+        int max = -1;
+        for (int i = 0; i < length; i++) {
+            if (lines[i] < limit) {
+                max = Math.max(max, lines[i]);
+            }
+        }
+        if (max < 0) {
+            return EMPTY;
+        }
+
+        long[] words = new long[wordIndex(max) + 1];
+        for (int i = 0; i < length; i++) {
+            int line = lines[i];
+            if (line >= 0 && line < limit) {
+                words[wordIndex(line)] |= 1L << line;
+            }
+        }
+        return fromWords(words);
+    }
+
+    /**
+     * Build an index from runs packed as {@code [start0, end0, start1, end1, ...]} with
+     * inclusive ends, in any order; overlapping runs are merged and negative lines ignored.
+     */
+    public static LineIndex ofRuns(int[] runs) {
+        return ofRuns(runs, MAX_LINE_COUNT);
+    }
+
+    /**
+     * Build an index from packed runs (see {@link #ofRuns(int[])}), clipping them to the
+     * lines below {@code lineCount} (capped at {@link #MAX_LINE_COUNT}).
+     */
+    public static LineIndex ofRuns(int[] runs, int lineCount) {
+        int lastLine = Math.min(lineCount, MAX_LINE_COUNT) - 1;
+        int max = -1;
+        for (int i = 1; i < runs.length; i += 2) {
+            if (runs[i - 1] <= lastLine) {
+                max = Math.max(max, Math.min(runs[i], lastLine));
+            }
+        }
+        if (max < 0) {
+            return EMPTY;
+        }
+
+        long[] words = new long[wordIndex(max) + 1];
+        for (int i = 0; i < runs.length; i += 2) {
+            int start = Math.max(0, runs[i]);
+            int end = Math.min(runs[i + 1], lastLine);
+            if (start > end) {
+                continue;
+            }
+            int first = wordIndex(start);
+            int last = wordIndex(end);
+            long firstMask = -1L << start;
+            long lastMask = -1L >>> (63 - (end & 63));
+            if (first == last) {
+                words[first] |= firstMask & lastMask;
+            } else {
+                words[first] |= firstMask;
+                Arrays.fill(words, first + 1, last, -1L);
+                words[last] |= lastMask;
+            }
+        }
+        return fromWords(words);
+    }
+
+    private static LineIndex fromWords(long[] words) {
+        int length = words.length;
+        while (length > 0 && words[length - 1] == 0) {
+            length--;
+        }
+        if (length == 0) {
+            return EMPTY;
+        }
+
+        long[] trimmed = length == words.length ? words : Arrays.copyOf(words, length);
+        int size = 0;
+        for (long word : trimmed) {
+            size += Long.bitCount(word);
+        }
+        return new LineIndex(trimmed, size);
+    }
+
+    private static int wordIndex(int line) {
+        return line >>> 6;
+    }
+
+    /**
+     * Check whether a line is in the set.
+     */
+    public boolean contains(int line) {
+        if (line < 0) {
+            return false;
+        }
+        int index = wordIndex(line);
+        return index < words.length && (words[index] & (1L << line)) != 0;
+    }
+
+    /**
+     * Get the number of lines in the set.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the first line at or after {@code from}, or -1 if there is none.
+     */
+    public int nextLine(int from) {
+        if (from < 0) {
+            from = 0;
+        }
+        int index = wordIndex(from);
+        if (index >= words.length) {
+            return -1;
+        }
+
+        long word = words[index] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return index * 64 + Long.numberOfTrailingZeros(word);
+            }
+            if (++index == words.length) {
+                return -1;
+            }
+            word = words[index];
+        }
+    }
+
+    /**
+     * Get the last line at or before {@code from}, or -1 if there is none.
+     */
+    public int previousLine(int from) {
+        if (from < 0 || words.length == 0) {
+            return -1;
+        }
+        int index = wordIndex(from);
+        if (index >= words.length) {
+            index = words.length - 1;
+            from = index * 64 + 63;
+        }
+
+        long word = words[index] & (-1L >>> (63 - (from & 63)));
+        while (true) {
+            if (word != 0) {
+                return index * 64 + 63 - Long.numberOfLeadingZeros(word);
+            }
+            if (index-- == 0) {
+                return -1;
+            }
+            word = words[index];
+        }
+    }
+
+    /**
+     * Get the first line that is not in the set at or after {@code from}.
+     */
+    public int nextMissingLine(int from) {
+        if (from < 0) {
+            from = 0;
+        }
+        int index = wordIndex(from);
+        if (index >= words.length) {
+            return from;
+        }
+
+        long word = ~words[index] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return index * 64 + Long.numberOfTrailingZeros(word);
+            }
+            if (++index == words.length) {
+                return index * 64;
+            }
+            word = ~words[index];
+        }
+    }
+
+    /**
+     * Visit every line in {@code [fromLine, toLine)} in ascending order.
+     */
+    public void forEachInRange(int fromLine, int toLine, IntConsumer action) {
+        for (int line = nextLine(fromLine); line >= 0 && line < toLine; line = nextLine(line + 1)) {
+            action.accept(line);
+        }
+    }
+
+    /**
+     * Count the lines in {@code [fromLine, toLine)}.
+     */
+    public int countInRange(int fromLine, int toLine) {
+        if (fromLine < 0) {
+            fromLine = 0;
+        }
+        if (toLine <= fromLine || words.length == 0) {
+            return 0;
+        }
+
+        int lastWord = Math.min(wordIndex(toLine - 1), words.length - 1);
+        int firstWord = wordIndex(fromLine);
+        int count = 0;
+        for (int index = firstWord; index <= lastWord; index++) {
+            long word = words[index];
+            if (index == firstWord) {
+                word &= -1L << fromLine;
+            }
+            if (index == wordIndex(toLine - 1)) {
+                word &= -1L >>> (63 - ((toLine - 1) & 63));
+            }
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Get the lines as a sorted array.
+     */
+    public int[] toArray() {
+        int[] lines = new int[size];
+        int count = 0;
+        for (int index = 0; index < words.length; index++) {
+            long word = words[index];
+            while (word != 0) {
+                lines[count++] = index * 64 + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Get the maximal runs of consecutive lines, packed as {@code [start0, end0, start1, end1, ...]}
+     * with inclusive ends (see {@link LineRuns}). Computed once and cached; do not modify.
+     */
+    public int[] runs() {
+        int[] cached = runs;
+        if (cached != null) {
+            return cached;
+        }
+
+        int[] packed = new int[16];
+        int count = 0;
+        for (int start = nextLine(0); start >= 0; ) {
+            int end = nextMissingLine(start) - 1;
+            if (count == packed.length) {
+                packed = Arrays.copyOf(packed, count * 2);
+            }
+            packed[count++] = start;
+            packed[count++] = end;
+            start = nextLine(end + 1);
+        }
+
+        cached = count == 0 ? LineRuns.EMPTY : Arrays.copyOf(packed, count);
+        runs = cached;
+        return cached;
+    }
+
+    /**
+     * Get the first line of the first run that starts after {@code line}, or -1 if there
+     * is none. A binary search over the cached {@link #runs()}.
+     */
+    public int nextRunStart(int line) {
+        int[] runs = runs();
+        int run = LineRuns.firstStartingAfter(runs, line);
+        return run < LineRuns.count(runs) ? runs[2 * run] : -1;
+    }
+
+    /**
+     * Get the first line of the last run that ends before {@code line}, or -1 if there is
+     * none. A binary search over the cached {@link #runs()}.
+     */
+    public int previousRunStart(int line) {
+        int[] runs = runs();
+        int run = LineRuns.firstEndingAtOrAfter(runs, line) - 1;
+        return run >= 0 ? runs[2 * run] : -1;
+    }
+
+    /**
+     * Get an index with one more line.
+     */
+    public LineIndex with(int line) {
+        if (line < 0 || line >= MAX_LINE_COUNT || contains(line)) {
+            return this;
+        }
+        long[] copy = Arrays.copyOf(words, Math.max(words.length, wordIndex(line) + 1));
+        copy[wordIndex(line)] |= 1L << line;
+        return new LineIndex(copy, size + 1);
+    }
+
+    /**
+     * Get an index without the given line.
+     */
+    public LineIndex without(int line) {
+        if (!contains(line)) {
+            return this;
+        }
+        long[] copy = words.clone();
+        copy[wordIndex(line)] &= ~(1L << line);
+        return fromWords(copy);
+    }
+
+    /**
+     * Get the lines below {@code lineCount} (e.g. the lines that exist in a document).
+     */
+    public LineIndex truncate(int lineCount) {
+        if (lineCount <= 0) {
+            return EMPTY;
+        }
+        if (words.length == 0 || lineCount > (words.length - 1) * 64 + 63 - Long.numberOfLeadingZeros(words[words.length - 1])) {
+            return this;
+        }
+
+        long[] copy = Arrays.copyOf(words, wordIndex(lineCount - 1) + 1);
+        copy[copy.length - 1] &= -1L >>> (63 - ((lineCount - 1) & 63));
+        return fromWords(copy);
+    }
+
+    /**
+     * Get the lines that are in this index or in {@code other}.
+     */
+    public LineIndex union(LineIndex other) {
+        if (other.words.length > words.length) {
+            return other.union(this);
+        }
+        if (other.size == 0) {
+            return this;
+        }
+        long[] copy = words.clone();
+        for (int index = 0; index < other.words.length; index++) {
+            copy[index] |= other.words[index];
+        }
+        return fromWords(copy);
+    }
+
+    /**
+     * Get the lines of this index that are not in {@code other}.
+     */
+    public LineIndex minus(LineIndex other) {
+        if (other.size == 0 || size == 0) {
+            return this;
+        }
+        long[] copy = words.clone();
+        for (int index = 0; index < Math.min(words.length, other.words.length); index++) {
+            copy[index] &= ~other.words[index];
+        }
+        return fromWords(copy);
+    }
+
+    /**
+     * Get the lines that are in at least two of the given indexes, a word at a time.
+     */
+    public static LineIndex inAtLeastTwo(Iterable<LineIndex> indexes) {
+        int length = 0;
+        for (LineIndex index : indexes) {
+            length = Math.max(length, index.words.length);
+        }
+        long[] once = new long[length];
+        long[] twice = new long[length];
+        for (LineIndex index : indexes) {
+            for (int word = 0; word < index.words.length; word++) {
+                twice[word] |= once[word] & index.words[word];
+                once[word] |= index.words[word];
+            }
+        }
+        return fromWords(twice);
+    }
+
+    /**
+     * Count the lines of this index that are not in {@code other}.
+     */
+    public int countNotIn(LineIndex other) {
+        int count = 0;
+        for (int index = 0; index < words.length; index++) {
+            long otherWord = index < other.words.length ? other.words[index] : 0;
+            count += Long.bitCount(words[index] & ~otherWord);
+        }
+        return count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LineIndex)) {
+            return false;
+        }
+        return Arrays.equals(words, ((LineIndex) o).words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+
+    @Override
+    public String toString() {
+        return "LineIndex{size=" + size + ", runs=" + LineRuns.count(runs()) + '}';
+    }
+}
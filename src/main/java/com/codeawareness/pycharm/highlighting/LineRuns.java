@@ -0,0 +1,197 @@
+package com.codeawareness.pycharm.highlighting;
+
+import java.util.Arrays;
+
+/**
+ * Helpers for maximal runs of consecutive lines (see {@link LineIndex#runs()}).
+ * Runs are packed into a single array as {@code [start0, end0, start1, end1, ...]}
+ * with inclusive ends, so a block of 10,000 rewritten lines is one entry.
+ */
+final class LineRuns {
+
+    static final int[] EMPTY = new int[0];
+
+    private LineRuns() {
+    }
+
+    /**
+     * Get the number of runs in a packed run array.
+     */
+    static int count(int[] runs) {
+        return runs.length / 2;
+    }
+
+    /**
+     * Merge line ranges (packed like runs, inclusive ends, in any order) into sorted,
+     * disjoint ranges; overlapping and adjacent ranges are joined.
+     */
+    static int[] union(int[] ranges) {
+        int count = count(ranges);
+        if (count < 2) {
+            return ranges;
+        }
+        long[] sorted = new long[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = ((long) ranges[2 * i] << 32) | (ranges[2 * i + 1] & 0xFFFFFFFFL);
+        }
+        Arrays.sort(sorted);
+
+        int[] merged = new int[ranges.length];
+        int length = 0;
+        for (long range : sorted) {
+            int start = (int) (range >> 32);
+            int end = (int) range;
+            if (length > 0 && start <= merged[length - 1] + 1) {
+                merged[length - 1] = Math.max(merged[length - 1], end);
+            } else {
+                merged[length++] = start;
+                merged[length++] = end;
+            }
+        }
+        return length == merged.length ? merged : Arrays.copyOf(merged, length);
+    }
+
+    /**
+     * Clip runs to sorted, disjoint windows (see {@link #union}), dropping runs outside all
+     * windows and splitting runs that span a gap between windows.
+     */
+    static int[] clip(int[] runs, int[] windows) {
+        // Every piece ends a run or a window, so there are fewer pieces than both together
+        int[] clipped = new int[runs.length + windows.length];
+        int count = 0;
+        int run = 0;
+        int window = 0;
+        while (run < runs.length && window < windows.length) {
+            int start = Math.max(runs[run], windows[window]);
+            int end = Math.min(runs[run + 1], windows[window + 1]);
+            if (start <= end) {
+                clipped[count++] = start;
+                clipped[count++] = end;
+            }
+            if (runs[run + 1] < windows[window + 1]) {
+                run += 2;
+            } else {
+                window += 2;
+            }
+        }
+        if (count == runs.length && Arrays.equals(clipped, 0, count, runs, 0, count)) {
+            return runs;
+        }
+        return count == 0 ? EMPTY : Arrays.copyOf(clipped, count);
+    }
+
+    /**
+     * Check whether the lines {@code [first, last]} lie within one of the windows.
+     */
+    static boolean covers(int[] windows, int first, int last) {
+        for (int i = 0; i < windows.length; i += 2) {
+            if (windows[i] <= first && last <= windows[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the first run that starts after a line, by binary search.
+     *
+     * @return the run index, or the run count if no run starts after the line
+     */
+    static int firstStartingAfter(int[] runs, int line) {
+        int low = 0;
+        int high = count(runs);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (runs[2 * mid] <= line) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Find the first run that ends at or after a line, by binary search.
+     *
+     * @return the run index, or the run count if every run ends before the line
+     */
+    static int firstEndingAtOrAfter(int[] runs, int line) {
+        int low = 0;
+        int high = count(runs);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (runs[2 * mid + 1] < line) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Get the parts of the runs that overlap the lines {@code [start, end]}, in
+     * O(log n + k) for k overlapping runs.
+     */
+    static int[] overlapping(int[] runs, int start, int end) {
+        int first = firstEndingAtOrAfter(runs, start);
+        int last = first;
+        while (last < count(runs) && runs[2 * last] <= end) {
+            last++;
+        }
+        if (first == last) {
+            return EMPTY;
+        }
+        int[] overlap = Arrays.copyOfRange(runs, 2 * first, 2 * last);
+        overlap[0] = Math.max(overlap[0], start);
+        overlap[overlap.length - 1] = Math.min(overlap[overlap.length - 1], end);
+        return overlap;
+    }
+
+    /**
+     * Get the lines that are in both run arrays, as runs. Each run of {@code few} is looked
+     * up by binary search in {@code many}, so pass the shorter array first.
+     */
+    static int[] intersect(int[] few, int[] many) {
+        if (few.length == 0 || many.length == 0) {
+            return EMPTY;
+        }
+        int[] result = EMPTY;
+        int length = 0;
+        for (int i = 0; i < few.length; i += 2) {
+            int[] overlap = overlapping(many, few[i], few[i + 1]);
+            if (overlap.length == 0) {
+                continue;
+            }
+            if (length + overlap.length > result.length) {
+                result = Arrays.copyOf(result, Math.max(2 * result.length, length + overlap.length));
+            }
+            System.arraycopy(overlap, 0, result, length, overlap.length);
+            length += overlap.length;
+        }
+        return length == 0 ? EMPTY : length == result.length ? result : Arrays.copyOf(result, length);
+    }
+
+    /**
+     * Find the run that starts and ends exactly at the given lines.
+     *
+     * @return the run index, or -1 if there is no such run
+     */
+    static int indexOf(int[] runs, int start, int end) {
+        int low = 0;
+        int high = count(runs) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midStart = runs[2 * mid];
+            if (midStart < start) {
+                low = mid + 1;
+            } else if (midStart > start) {
+                high = mid - 1;
+            } else {
+                return runs[2 * mid + 1] == end ? mid : -1;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,103 @@
+package com.codeawareness.pycharm.highlighting;
+
+import com.intellij.openapi.editor.markup.RangeHighlighter;
+
+import java.util.Arrays;
+
+/**
+ * Error-stripe overview of the highlighted lines of one file.
+ *
+ * The document is split into equal buckets of lines, as many as fit on the error stripe
+ * at a few pixels each, and every bucket with highlighted lines gets one thin mark from
+ * its first to its last highlighted line. A 50,000-line file thus has at most a few
+ * hundred marks, however its lines are spread. The marks share a {@link GutterSummaryRenderer}
+ * that draws the highlighted lines as a bar in the gutter.
+ *
+ * Buckets are stored as {@code [bucket, firstLine, lastLine, lineCount]} quadruples,
+ * sorted by bucket, so an update keeps the mark of every bucket that did not change.
+ * Only replaced as a whole, on the EDT.
+ */
+final class OverviewMarks {
+
+    static final int DEFAULT_BUCKETS = 64;
+    static final int MAX_BUCKETS = 300;
+    // Thin marks are a couple of pixels high; closer buckets would overlap on the stripe
+    static final int PIXELS_PER_BUCKET = 4;
+
+    final int bucketSize;
+    final int[] buckets;
+    final RangeHighlighter[] marks;
+    final GutterSummaryRenderer gutter;
+
+    OverviewMarks(int bucketSize, int[] buckets, RangeHighlighter[] marks, GutterSummaryRenderer gutter) {
+        this.bucketSize = bucketSize;
+        this.buckets = buckets;
+        this.marks = marks;
+        this.gutter = gutter;
+    }
+
+    /**
+     * Get the number of buckets for an error stripe of the given height, or the default
+     * if no editor is showing (height 0).
+     */
+    static int bucketCount(int stripeHeight) {
+        if (stripeHeight <= 0) {
+            return DEFAULT_BUCKETS;
+        }
+        return Math.max(1, Math.min(MAX_BUCKETS, stripeHeight / PIXELS_PER_BUCKET));
+    }
+
+    /**
+     * Get the number of lines per bucket for a document split into {@code bucketCount} buckets.
+     */
+    static int bucketSize(int lineCount, int bucketCount) {
+        return Math.max(1, (lineCount + bucketCount - 1) / bucketCount);
+    }
+
+    /**
+     * Split the lines of a document into buckets of {@code bucketSize} lines and describe
+     * every non-empty bucket. Costs O(buckets) index lookups, not O(lines).
+     *
+     * @return {@code [bucket, firstLine, lastLine, lineCount]} quadruples, sorted by bucket
+     */
+    static int[] buckets(LineIndex lines, int lineCount, int bucketSize) {
+        int[] buckets = new int[0];
+        int length = 0;
+        for (int first = lines.nextLine(0); first >= 0 && first < lineCount; ) {
+            int bucket = first / bucketSize;
+            int bucketEnd = Math.min(lineCount, (bucket + 1) * bucketSize);
+            if (length == buckets.length) {
+                buckets = Arrays.copyOf(buckets, Math.max(16, 2 * length));
+            }
+            buckets[length++] = bucket;
+            buckets[length++] = first;
+            buckets[length++] = lines.previousLine(bucketEnd - 1);
+            buckets[length++] = lines.countInRange(first, bucketEnd);
+            first = lines.nextLine(bucketEnd);
+        }
+        return Arrays.copyOf(buckets, length);
+    }
+
+    /**
+     * Find the quadruple of a bucket with the same lines in {@code buckets}.
+     *
+     * @return the index of the quadruple, or -1 if the bucket is missing or differs
+     */
+    static int indexOf(int[] buckets, int bucket, int firstLine, int lastLine, int lineCount) {
+        int low = 0;
+        int high = buckets.length / 4 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midBucket = buckets[4 * mid];
+            if (midBucket < bucket) {
+                low = mid + 1;
+            } else if (midBucket > bucket) {
+                high = mid - 1;
+            } else {
+                return buckets[4 * mid + 1] == firstLine && buckets[4 * mid + 2] == lastLine
+                    && buckets[4 * mid + 3] == lineCount ? mid : -1;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,383 @@
+package com.codeawareness.pycharm.highlighting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Project-wide summary of peer changes: for every file, how many lines peers changed and
+ * which peers changed it, with totals for every directory above it.
+ *
+ * Paths are stored as a trie of interned path segments, so a deep tree with many files
+ * costs one node per segment rather than one string per path. Node data lives in parallel
+ * primitive arrays indexed by node id: the file's own line count and peers, and the
+ * aggregates of its subtree (changed files, changed lines, peers). Peers are bits of a
+ * {@code long} mask over a table of peer names.
+ *
+ * Updating a file adjusts the aggregates of its ancestors by the difference, O(depth), so
+ * answering a query never rescans a directory. Only when a peer disappears from a file
+ * are the peer masks of its ancestors recomputed, from their direct children, and only
+ * up to the first ancestor whose mask does not change. Nodes are kept once created;
+ * {@link #clear()} drops everything.
+ */
+public class PeerChangeIndex {
+
+    /** Peers beyond this many share the last bit of the mask. */
+    public static final int MAX_PEERS = 64;
+
+    private static final int ROOT = 0;
+    private static final int NO_NODE = -1;
+
+    // Interned path segments; the trie refers to them by id
+    private final Map<String, Integer> segmentIds = new HashMap<>();
+    // Child of a node by segment, keyed by (node << 32 | segment)
+    private final Map<Long, Integer> children = new HashMap<>();
+    private final Map<String, Integer> peerIds = new HashMap<>();
+    private final List<String> peers = new ArrayList<>();
+    private final List<Runnable> listeners = new ArrayList<>();
+
+    private int nodeCount;
+    private int[] parent;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private int[] ownLines;
+    private long[] ownPeers;
+    private int[] changedFiles;
+    private long[] changedLines;
+    private long[] subtreePeers;
+
+    public PeerChangeIndex() {
+        clearNodes();
+    }
+
+    /**
+     * Set the peer changes of a file, replacing what was recorded before.
+     * A file with no changed lines and no peers is removed.
+     *
+     * @param filePath  absolute path of the file
+     * @param lineCount number of lines changed by peers
+     * @param peerNames the peers that changed the file, or null to keep the recorded ones
+     */
+    public void update(String filePath, int lineCount, Collection<String> peerNames) {
+        boolean changed;
+        synchronized (this) {
+            changed = set(filePath, lineCount, peerNames);
+        }
+        if (changed) {
+            fireChanged();
+        }
+    }
+
+    /**
+     * Replace the peer changes of all files below a directory (the project root, for a
+     * result that covers the whole project): recorded files missing from
+     * {@code lineCounts} are removed.
+     *
+     * @param directory  absolute path of the directory
+     * @param lineCounts number of changed lines by absolute file path
+     * @param peerNames  peers by absolute file path; files without an entry keep their peers
+     */
+    public void replaceAll(String directory, Map<String, Integer> lineCounts,
+                           Map<String, ? extends Collection<String>> peerNames) {
+        boolean changed = false;
+        synchronized (this) {
+            Set<Integer> kept = new HashSet<>();
+            for (Map.Entry<String, Integer> entry : lineCounts.entrySet()) {
+                changed |= set(entry.getKey(), entry.getValue(), peerNames.get(entry.getKey()));
+                kept.add(find(entry.getKey()));
+            }
+            int node = find(directory);
+            if (node != NO_NODE) {
+                List<Integer> files = new ArrayList<>();
+                collectChangedFiles(node, files);
+                for (int file : files) {
+                    if (!kept.contains(file)) {
+                        changed |= setNode(file, 0, 0L);
+                    }
+                }
+            }
+        }
+        if (changed) {
+            fireChanged();
+        }
+    }
+
+    public void remove(String filePath) {
+        update(filePath, 0, Collections.emptyList());
+    }
+
+    public void clear() {
+        synchronized (this) {
+            if (changedFiles[ROOT] == 0) {
+                return;
+            }
+            clearNodes();
+        }
+        fireChanged();
+    }
+
+    /**
+     * Get the peer changes of a file, or the totals of a directory, or null if there are none.
+     */
+    public synchronized Summary get(String path) {
+        int node = find(path);
+        if (node == NO_NODE || changedFiles[node] == 0) {
+            return null;
+        }
+        return new Summary(changedFiles[node], changedLines[node], peerNames(subtreePeers[node]));
+    }
+
+    /**
+     * Get the number of files with peer changes.
+     */
+    public synchronized int getChangedFileCount() {
+        return changedFiles[ROOT];
+    }
+
+    /**
+     * Get the number of trie nodes (stored path segments), for memory diagnostics.
+     */
+    public synchronized int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Call a listener after every change, on the thread that made it.
+     */
+    public synchronized void addChangeListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    private void fireChanged() {
+        Runnable[] current;
+        synchronized (this) {
+            current = listeners.toArray(new Runnable[0]);
+        }
+        for (Runnable listener : current) {
+            listener.run();
+        }
+    }
+
+    private boolean set(String filePath, int lineCount, Collection<String> peerNames) {
+        lineCount = Math.max(0, lineCount);
+        long mask = peerNames != null ? peerMask(peerNames) : 0L;
+        boolean empty = lineCount == 0 && mask == 0;
+        int node = empty ? find(filePath) : intern(filePath);
+        if (node == NO_NODE) {
+            return false;
+        }
+        if (peerNames == null && !empty) {
+            mask = ownPeers[node];
+        }
+        return setNode(node, lineCount, mask);
+    }
+
+    /**
+     * Record the changes of one file node and adjust its ancestors.
+     *
+     * @return whether anything changed
+     */
+    private boolean setNode(int node, int lineCount, long mask) {
+        boolean wasChanged = ownLines[node] > 0 || ownPeers[node] != 0;
+        boolean isChanged = lineCount > 0 || mask != 0;
+        int fileDelta = (isChanged ? 1 : 0) - (wasChanged ? 1 : 0);
+        long lineDelta = (long) lineCount - ownLines[node];
+        boolean peersRemoved = (ownPeers[node] & ~mask) != 0;
+        if (fileDelta == 0 && lineDelta == 0 && ownPeers[node] == mask) {
+            return false;
+        }
+
+        ownLines[node] = lineCount;
+        ownPeers[node] = mask;
+        for (int ancestor = node; ancestor != NO_NODE; ancestor = parent[ancestor]) {
+            changedFiles[ancestor] += fileDelta;
+            changedLines[ancestor] += lineDelta;
+            long previous = subtreePeers[ancestor];
+            subtreePeers[ancestor] = peersRemoved ? recomputePeers(ancestor) : previous | mask;
+            if (fileDelta == 0 && lineDelta == 0 && subtreePeers[ancestor] == previous) {
+                // Nothing else changes further up
+                break;
+            }
+        }
+        return true;
+    }
+
+    private long recomputePeers(int node) {
+        long mask = ownPeers[node];
+        for (int child = firstChild[node]; child != NO_NODE; child = nextSibling[child]) {
+            mask |= subtreePeers[child];
+        }
+        return mask;
+    }
+
+    private long peerMask(Collection<String> peerNames) {
+        long mask = 0;
+        for (String peer : peerNames) {
+            if (peer == null || peer.isEmpty()) {
+                continue;
+            }
+            Integer id = peerIds.get(peer);
+            if (id == null) {
+                id = Math.min(peers.size(), MAX_PEERS - 1);
+                if (peers.size() < MAX_PEERS) {
+                    peers.add(peer);
+                    peerIds.put(peer, id);
+                }
+            }
+            mask |= 1L << id;
+        }
+        return mask;
+    }
+
+    private List<String> peerNames(long mask) {
+        List<String> names = new ArrayList<>(Long.bitCount(mask));
+        for (long bits = mask; bits != 0; bits &= bits - 1) {
+            names.add(peers.get(Long.numberOfTrailingZeros(bits)));
+        }
+        return names;
+    }
+
+    /**
+     * Find the node of a path without creating it, or NO_NODE.
+     */
+    private int find(String path) {
+        int node = ROOT;
+        for (int start = 0; start < path.length() && node != NO_NODE; ) {
+            int end = nextSeparator(path, start);
+            if (end > start) {
+                Integer segment = segmentIds.get(path.substring(start, end));
+                node = segment != null ? child(node, segment) : NO_NODE;
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+
+    /**
+     * Find the node of a path, creating it and its missing ancestors.
+     */
+    private int intern(String path) {
+        int node = ROOT;
+        for (int start = 0; start < path.length(); ) {
+            int end = nextSeparator(path, start);
+            if (end > start) {
+                int segment = segmentIds.computeIfAbsent(path.substring(start, end), name -> segmentIds.size());
+                int next = child(node, segment);
+                node = next != NO_NODE ? next : addNode(node, segment);
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+
+    private static int nextSeparator(String path, int from) {
+        for (int i = from; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '/' || c == '\\') {
+                return i;
+            }
+        }
+        return path.length();
+    }
+
+    private int child(int node, int segment) {
+        Integer child = children.get(childKey(node, segment));
+        return child != null ? child : NO_NODE;
+    }
+
+    private static long childKey(int node, int segment) {
+        return (long) node << 32 | segment;
+    }
+
+    private int addNode(int parentNode, int segment) {
+        int node = nodeCount++;
+        if (node == parent.length) {
+            int capacity = Math.max(64, 2 * node);
+            parent = Arrays.copyOf(parent, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            ownLines = Arrays.copyOf(ownLines, capacity);
+            ownPeers = Arrays.copyOf(ownPeers, capacity);
+            changedFiles = Arrays.copyOf(changedFiles, capacity);
+            changedLines = Arrays.copyOf(changedLines, capacity);
+            subtreePeers = Arrays.copyOf(subtreePeers, capacity);
+        }
+        parent[node] = parentNode;
+        firstChild[node] = NO_NODE;
+        nextSibling[node] = NO_NODE;
+        if (parentNode != NO_NODE) {
+            nextSibling[node] = firstChild[parentNode];
+            firstChild[parentNode] = node;
+            children.put(childKey(parentNode, segment), node);
+        }
+        return node;
+    }
+
+    private void clearNodes() {
+        segmentIds.clear();
+        children.clear();
+        peerIds.clear();
+        peers.clear();
+        nodeCount = 0;
+        parent = new int[0];
+        firstChild = new int[0];
+        nextSibling = new int[0];
+        ownLines = new int[0];
+        ownPeers = new long[0];
+        changedFiles = new int[0];
+        changedLines = new long[0];
+        subtreePeers = new long[0];
+        addNode(NO_NODE, -1);
+    }
+
+    /**
+     * Collect the nodes with changes of their own below a node, skipping unchanged subtrees.
+     */
+    private void collectChangedFiles(int node, List<Integer> files) {
+        if (changedFiles[node] == 0) {
+            return;
+        }
+        if (ownLines[node] > 0 || ownPeers[node] != 0) {
+            files.add(node);
+        }
+        for (int child = firstChild[node]; child != NO_NODE; child = nextSibling[child]) {
+            collectChangedFiles(child, files);
+        }
+    }
+
+    /**
+     * Peer changes of a file, or the totals of a directory.
+     */
+    public static final class Summary {
+        private final int changedFiles;
+        private final long changedLines;
+        private final List<String> peers;
+
+        Summary(int changedFiles, long changedLines, List<String> peers) {
+            this.changedFiles = changedFiles;
+            this.changedLines = changedLines;
+            this.peers = Collections.unmodifiableList(peers);
+        }
+
+        /**
+         * Get the number of files with peer changes (1 for a file).
+         */
+        public int getChangedFiles() {
+            return changedFiles;
+        }
+
+        public long getChangedLines() {
+            return changedLines;
+        }
+
+        public List<String> getPeers() {
+            return peers;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.codeawareness.pycharm.highlighting;
+
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * Finds the next or previous peer-changed region from a position, for navigation.
+ *
+ * A region is a run of consecutive highlighted lines. Within a file the answer is a binary
+ * search over the runs of its {@link LineIndex}, O(log n) however many lines are
+ * highlighted. Past the last (or before the first) region of the file, navigation wraps
+ * around to the next (or previous) file with peer changes, in path order, and back to the
+ * same file if it is the only one.
+ */
+public final class PeerChangeNavigator {
+
+    private PeerChangeNavigator() {
+    }
+
+    /**
+     * Find the first region that starts after {@code line}.
+     *
+     * @param files the highlighted lines of every file with peer changes, by path
+     * @return the start of the region, or null if no file has peer changes
+     */
+    public static Location next(NavigableMap<String, LineIndex> files, String filePath, int line) {
+        LineIndex lines = files.get(filePath);
+        int start = lines != null ? lines.nextRunStart(line) : -1;
+        if (start >= 0) {
+            return new Location(filePath, start);
+        }
+
+        Map.Entry<String, LineIndex> entry = files.higherEntry(filePath);
+        for (int visited = 0; visited < files.size(); visited++) {
+            if (entry == null) {
+                entry = files.firstEntry();
+            }
+            start = entry.getValue().nextLine(0);
+            if (start >= 0) {
+                return new Location(entry.getKey(), start);
+            }
+            entry = files.higherEntry(entry.getKey());
+        }
+        return null;
+    }
+
+    /**
+     * Find the last region that ends before {@code line}.
+     *
+     * @param files the highlighted lines of every file with peer changes, by path
+     * @return the start of the region, or null if no file has peer changes
+     */
+    public static Location previous(NavigableMap<String, LineIndex> files, String filePath, int line) {
+        LineIndex lines = files.get(filePath);
+        int start = lines != null ? lines.previousRunStart(line) : -1;
+        if (start >= 0) {
+            return new Location(filePath, start);
+        }
+
+        Map.Entry<String, LineIndex> entry = files.lowerEntry(filePath);
+        for (int visited = 0; visited < files.size(); visited++) {
+            if (entry == null) {
+                entry = files.lastEntry();
+            }
+            start = entry.getValue().previousRunStart(Integer.MAX_VALUE);
+            if (start >= 0) {
+                return new Location(entry.getKey(), start);
+            }
+            entry = files.lowerEntry(entry.getKey());
+        }
+        return null;
+    }
+
+    /**
+     * A line (0-based) in a file.
+     */
+    public static final class Location {
+        private final String filePath;
+        private final int line;
+
+        Location(String filePath, int line) {
+            this.filePath = filePath;
+            this.line = line;
+        }
+
+        public String getFilePath() {
+            return filePath;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        @Override
+        public String toString() {
+            return filePath + ":" + line;
+        }
+    }
+}
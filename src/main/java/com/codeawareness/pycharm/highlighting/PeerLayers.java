@@ -0,0 +1,134 @@
+package com.codeawareness.pycharm.highlighting;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.markup.RangeHighlighter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-peer highlighted lines of one file, and what is drawn for them.
+ *
+ * Every peer has its own {@link LineIndex}. The lines that at least two visible peers
+ * share are the overlap: they are painted once, striped, by a {@link PeerOverlapRenderer},
+ * and every visible peer draws only its other (exclusive) lines, one highlighter per run
+ * in its palette color. {@link #covered} is the union of the visible peers, which the
+ * single-color highlights leave out. Used on the EDT only.
+ */
+final class PeerLayers {
+
+    private final Map<String, LineIndex> linesByPeer = new LinkedHashMap<>();
+    private List<String> visiblePeers = new ArrayList<>();
+    private LineIndex[] visibleLines = new LineIndex[0];
+    private LineIndex overlap = LineIndex.EMPTY;
+    private LineIndex covered = LineIndex.EMPTY;
+
+    // What is drawn, in the markup model of the document
+    Document document;
+    final Map<String, int[]> drawnRuns = new HashMap<>();
+    final Map<String, RangeHighlighter[]> highlighters = new HashMap<>();
+    final Map<String, TrackedRegions> regions = new HashMap<>();
+    RangeHighlighter overlapHighlighter;
+    PeerOverlapRenderer overlapRenderer;
+
+    /**
+     * Replace the lines of a peer; empty lines remove its layer.
+     *
+     * @return the lines the peer had before
+     */
+    LineIndex set(String peer, LineIndex lines) {
+        LineIndex previous = lines.isEmpty() ? linesByPeer.remove(peer) : linesByPeer.put(peer, lines);
+        return previous != null ? previous : LineIndex.EMPTY;
+    }
+
+    LineIndex get(String peer) {
+        return linesByPeer.getOrDefault(peer, LineIndex.EMPTY);
+    }
+
+    Set<String> peers() {
+        return linesByPeer.keySet();
+    }
+
+    boolean contains(String peer) {
+        return linesByPeer.containsKey(peer);
+    }
+
+    boolean isEmpty() {
+        return linesByPeer.isEmpty();
+    }
+
+    /**
+     * Recompute the overlap and the covered lines for the peers that are not hidden,
+     * within a document of {@code lineCount} lines.
+     */
+    void layout(Collection<String> hiddenPeers, int lineCount) {
+        List<String> peers = new ArrayList<>();
+        List<LineIndex> lines = new ArrayList<>();
+        LineIndex union = LineIndex.EMPTY;
+        for (Map.Entry<String, LineIndex> entry : linesByPeer.entrySet()) {
+            if (!hiddenPeers.contains(entry.getKey())) {
+                LineIndex valid = entry.getValue().truncate(lineCount);
+                peers.add(entry.getKey());
+                lines.add(valid);
+                union = union.union(valid);
+            }
+        }
+        visiblePeers = peers;
+        visibleLines = lines.toArray(new LineIndex[0]);
+        overlap = LineIndex.inAtLeastTwo(lines);
+        covered = union;
+    }
+
+    /**
+     * Get the lines a peer draws with its own highlighters: its lines outside the overlap,
+     * or none if it is hidden. As of the last {@link #layout}.
+     */
+    LineIndex exclusiveLines(String peer) {
+        int layer = visiblePeers.indexOf(peer);
+        return layer >= 0 ? visibleLines[layer].minus(overlap) : LineIndex.EMPTY;
+    }
+
+    LineIndex getOverlap() {
+        return overlap;
+    }
+
+    LineIndex getCovered() {
+        return covered;
+    }
+
+    List<String> getVisiblePeers() {
+        return visiblePeers;
+    }
+
+    LineIndex[] getVisibleLines() {
+        return visibleLines;
+    }
+
+    /**
+     * Dispose everything drawn and tracked; the lines are kept.
+     */
+    void disposeDrawn() {
+        for (RangeHighlighter[] drawn : highlighters.values()) {
+            for (RangeHighlighter highlighter : drawn) {
+                if (highlighter.isValid()) {
+                    highlighter.dispose();
+                }
+            }
+        }
+        if (overlapHighlighter != null && overlapHighlighter.isValid()) {
+            overlapHighlighter.dispose();
+        }
+        regions.values().forEach(TrackedRegions::dispose);
+        drawnRuns.clear();
+        highlighters.clear();
+        regions.clear();
+        overlapHighlighter = null;
+        overlapRenderer = null;
+        document = null;
+    }
+}
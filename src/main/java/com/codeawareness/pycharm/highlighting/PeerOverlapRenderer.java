@@ -0,0 +1,107 @@
+package com.codeawareness.pycharm.highlighting;
+
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.LogicalPosition;
+import com.intellij.openapi.editor.colors.EditorColorsScheme;
+import com.intellij.openapi.editor.markup.CustomHighlighterRenderer;
+import com.intellij.openapi.editor.markup.RangeHighlighter;
+import com.intellij.openapi.editor.markup.TextAttributes;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+
+/**
+ * Paints the lines that several visible peer layers share, once, as vertical stripes in
+ * the colors of those peers. Attached to a single whole-document highlighter; like
+ * {@link LineBackgroundRenderer} it only looks at the lines inside the clip.
+ */
+final class PeerOverlapRenderer implements CustomHighlighterRenderer {
+
+    static final int STRIPE_WIDTH = 8;
+
+    private volatile Snapshot snapshot;
+
+    PeerOverlapRenderer(LineIndex overlap, LineIndex[] lines, int[] slots) {
+        this.snapshot = new Snapshot(overlap, lines, slots);
+    }
+
+    LineIndex getOverlap() {
+        return snapshot.overlap;
+    }
+
+    /**
+     * Replace what is painted: the overlapping lines, and the lines and palette slot of
+     * every visible peer.
+     */
+    void setLayers(LineIndex overlap, LineIndex[] lines, int[] slots) {
+        this.snapshot = new Snapshot(overlap, lines, slots);
+    }
+
+    @Override
+    public void paint(Editor editor, RangeHighlighter highlighter, Graphics g) {
+        Snapshot current = snapshot;
+        int lineCount = editor.getDocument().getLineCount();
+        if (current.overlap.isEmpty() || lineCount == 0) {
+            return;
+        }
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = editor.getScrollingModel().getVisibleArea();
+        }
+        int firstLine = Math.min(editor.xyToLogicalPosition(new Point(0, clip.y)).line, lineCount - 1);
+        int lastLine = Math.min(editor.xyToLogicalPosition(new Point(0, clip.y + clip.height)).line, lineCount - 1);
+
+        Color[] colors = resolveColors(editor.getColorsScheme(), current.slots);
+        Color[] lineColors = new Color[colors.length];
+        int lineHeight = editor.getLineHeight();
+        for (int line = current.overlap.nextLine(firstLine); line >= 0 && line <= lastLine;
+             line = current.overlap.nextLine(line + 1)) {
+            int count = 0;
+            for (int layer = 0; layer < current.lines.length; layer++) {
+                if (colors[layer] != null && current.lines[layer].contains(line)) {
+                    lineColors[count++] = colors[layer];
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+            int top = editor.logicalPositionToXY(new LogicalPosition(line, 0)).y;
+            paintStripes(g, lineColors, count, clip.x, clip.x + clip.width, top, lineHeight);
+        }
+    }
+
+    /**
+     * Fill {@code [left, right)} with stripes cycling through the first {@code count}
+     * colors. Stripes are aligned to x = 0, so adjacent lines and repaints line up.
+     */
+    static void paintStripes(Graphics g, Color[] colors, int count, int left, int right, int top, int height) {
+        for (int x = left - Math.floorMod(left, STRIPE_WIDTH); x < right; x += STRIPE_WIDTH) {
+            g.setColor(colors[Math.floorMod(Math.floorDiv(x, STRIPE_WIDTH), count)]);
+            int start = Math.max(x, left);
+            g.fillRect(start, top, Math.min(x + STRIPE_WIDTH, right) - start, height);
+        }
+    }
+
+    private static Color[] resolveColors(EditorColorsScheme scheme, int[] slots) {
+        Color[] colors = new Color[slots.length];
+        for (int layer = 0; layer < slots.length; layer++) {
+            TextAttributes attributes = scheme != null ? scheme.getAttributes(PeerPalette.key(slots[layer])) : null;
+            colors[layer] = attributes != null ? attributes.getBackgroundColor() : null;
+        }
+        return colors;
+    }
+
+    private static final class Snapshot {
+        final LineIndex overlap;
+        final LineIndex[] lines;
+        final int[] slots;
+
+        Snapshot(LineIndex overlap, LineIndex[] lines, int[] slots) {
+            this.overlap = overlap;
+            this.lines = lines;
+            this.slots = slots;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.codeawareness.pycharm.highlighting;
+
+import com.intellij.openapi.editor.colors.TextAttributesKey;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bounded palette of text attributes keys for peer layers.
+ *
+ * The keys are created once and shared by every highlighter of every file, so the markup
+ * model resolves their colors from the editor color scheme (see the {@code colorSchemes}
+ * resources) and a scheme change recolors them without touching a highlighter. A peer
+ * keeps its slot while it has a layer in any file; when all slots are taken a new peer
+ * shares the slot with the fewest peers.
+ */
+final class PeerPalette {
+
+    static final int SIZE = 8;
+
+    private static final TextAttributesKey[] KEYS = new TextAttributesKey[SIZE];
+
+    static {
+        for (int slot = 0; slot < SIZE; slot++) {
+            KEYS[slot] = TextAttributesKey.createTextAttributesKey("KAWA_CODE_PEER_" + slot);
+        }
+    }
+
+    private final Map<String, Integer> slotByPeer = new HashMap<>();
+    // Number of layers (files) using a peer's slot
+    private final Map<String, Integer> referencesByPeer = new HashMap<>();
+    private final int[] peersBySlot = new int[SIZE];
+
+    /**
+     * Take a reference to the slot of a peer, assigning one on the first reference.
+     */
+    synchronized int acquire(String peer) {
+        referencesByPeer.merge(peer, 1, Integer::sum);
+        Integer slot = slotByPeer.get(peer);
+        if (slot == null) {
+            slot = 0;
+            for (int candidate = 1; candidate < SIZE; candidate++) {
+                if (peersBySlot[candidate] < peersBySlot[slot]) {
+                    slot = candidate;
+                }
+            }
+            slotByPeer.put(peer, slot);
+            peersBySlot[slot]++;
+        }
+        return slot;
+    }
+
+    /**
+     * Drop a reference taken with {@link #acquire}; the peer's slot is freed with the last one.
+     */
+    synchronized void release(String peer) {
+        Integer references = referencesByPeer.get(peer);
+        if (references == null) {
+            return;
+        }
+        if (references > 1) {
+            referencesByPeer.put(peer, references - 1);
+            return;
+        }
+        referencesByPeer.remove(peer);
+        peersBySlot[slotByPeer.remove(peer)]--;
+    }
+
+    /**
+     * Get the slot of a peer, or -1 if it has no layer.
+     */
+    synchronized int slotOf(String peer) {
+        Integer slot = slotByPeer.get(peer);
+        return slot != null ? slot : -1;
+    }
+
+    synchronized void clear() {
+        slotByPeer.clear();
+        referencesByPeer.clear();
+        Arrays.fill(peersBySlot, 0);
+    }
+
+    static TextAttributesKey key(int slot) {
+        return KEYS[slot];
+    }
+}
@@ -0,0 +1,11 @@
+package com.codeawareness.pycharm.highlighting;
+
+/**
+ * How {@link HighlightManager} puts highlighted lines on screen.
+ */
+public enum RenderingStrategy {
+    /** One range highlighter per run of consecutive lines (lazy around the viewport in long files). */
+    RUN_HIGHLIGHTERS,
+    /** One whole-document highlighter per editor whose renderer paints the visible highlighted lines. */
+    CUSTOM_RENDERER
+}
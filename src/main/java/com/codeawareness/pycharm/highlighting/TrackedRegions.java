@@ -0,0 +1,68 @@
+package com.codeawareness.pycharm.highlighting;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.RangeMarker;
+
+import java.util.Arrays;
+
+/**
+ * Peer-changed regions of one document, as one {@link RangeMarker} per run of highlighted
+ * lines. The markers move with local edits, so the highlighted lines can be recomputed
+ * after the user types without asking the backend again.
+ */
+final class TrackedRegions {
+
+    final Document document;
+    private final RangeMarker[] markers;
+    private final boolean[] emptyWhenTracked;
+
+    private TrackedRegions(Document document, RangeMarker[] markers, boolean[] emptyWhenTracked) {
+        this.document = document;
+        this.markers = markers;
+        this.emptyWhenTracked = emptyWhenTracked;
+    }
+
+    /**
+     * Start tracking runs given by their start and end offsets in the document.
+     */
+    static TrackedRegions track(Document document, int[] startOffsets, int[] endOffsets) {
+        RangeMarker[] markers = new RangeMarker[startOffsets.length];
+        boolean[] emptyWhenTracked = new boolean[startOffsets.length];
+        for (int run = 0; run < markers.length; run++) {
+            markers[run] = document.createRangeMarker(startOffsets[run], endOffsets[run]);
+            emptyWhenTracked[run] = startOffsets[run] == endOffsets[run];
+        }
+        return new TrackedRegions(document, markers, emptyWhenTracked);
+    }
+
+    /**
+     * Get the lines the regions cover now. A region whose text was deleted entirely is
+     * dropped. Needs read access.
+     */
+    LineIndex currentLines() {
+        int[] runs = new int[2 * markers.length];
+        int count = 0;
+        for (int run = 0; run < markers.length; run++) {
+            RangeMarker marker = markers[run];
+            if (marker == null || !marker.isValid()) {
+                continue;
+            }
+            int startOffset = marker.getStartOffset();
+            int endOffset = marker.getEndOffset();
+            if (startOffset == endOffset && !emptyWhenTracked[run]) {
+                continue;
+            }
+            runs[count++] = document.getLineNumber(startOffset);
+            runs[count++] = document.getLineNumber(endOffset);
+        }
+        return LineIndex.ofRuns(count == runs.length ? runs : Arrays.copyOf(runs, count));
+    }
+
+    void dispose() {
+        for (RangeMarker marker : markers) {
+            if (marker != null) {
+                marker.dispose();
+            }
+        }
+    }
+}
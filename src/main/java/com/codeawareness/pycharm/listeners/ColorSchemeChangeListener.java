@@ -0,0 +1,34 @@
+package com.codeawareness.pycharm.listeners;
+
+import com.codeawareness.pycharm.CodeAwarenessProjectService;
+import com.codeawareness.pycharm.highlighting.ColorSchemeProvider;
+import com.codeawareness.pycharm.utils.Logger;
+import com.intellij.openapi.editor.colors.EditorColorsListener;
+import com.intellij.openapi.editor.colors.EditorColorsScheme;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Listens for editor color scheme changes.
+ * Drops the cached highlight attributes and recolors highlights in all open projects.
+ */
+public class ColorSchemeChangeListener implements EditorColorsListener {
+
+    @Override
+    public void globalSchemeChange(@Nullable EditorColorsScheme scheme) {
+        Logger.debug("Editor color scheme changed, refreshing highlight colors");
+        ColorSchemeProvider.invalidate();
+
+        for (Project project : ProjectManager.getInstance().getOpenProjects()) {
+            if (project.isDisposed()) {
+                continue;
+            }
+
+            CodeAwarenessProjectService projectService = project.getService(CodeAwarenessProjectService.class);
+            if (projectService != null) {
+                projectService.getHighlightManager().refreshHighlightColors();
+            }
+        }
+    }
+}
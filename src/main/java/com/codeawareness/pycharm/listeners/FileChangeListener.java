@@ -14,6 +14,7 @@ import java.util.List;
 /**
  * Listens for file changes in the virtual file system.
  * Detects file saves and notifies the Kawa Code backend via FileMonitor.
+ * A save also resets the local changes used to predict conflicts.
  */
 public class FileChangeListener implements BulkFileListener {
 
@@ -44,6 +45,7 @@ public class FileChangeListener implements BulkFileListener {
         CodeAwarenessProjectService projectService = project.getService(CodeAwarenessProjectService.class);
         if (projectService != null) {
             projectService.getFileMonitor().notifyFileSaved(file);
+            projectService.getHighlightManager().onFileSaved(file.getPath());
         }
     }
 
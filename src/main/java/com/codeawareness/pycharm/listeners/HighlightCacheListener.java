@@ -0,0 +1,52 @@
+package com.codeawareness.pycharm.listeners;
+
+import com.codeawareness.pycharm.CodeAwarenessProjectService;
+import com.codeawareness.pycharm.highlighting.HighlightManager;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.FileEditorManagerListener;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Listens for files being opened and closed in the editor.
+ * Shows cached highlights as soon as a file is opened (or, for files not seen in this
+ * session, the stale highlights saved in a previous one) and releases the highlighters
+ * of files whose last editor was closed, keeping their lines cached and no longer
+ * prefetching them.
+ */
+public class HighlightCacheListener implements FileEditorManagerListener {
+
+    @Override
+    public void fileOpened(@NotNull FileEditorManager source, @NotNull VirtualFile file) {
+        CodeAwarenessProjectService projectService = getProjectService(source);
+        if (projectService == null || !file.isValid()) {
+            return;
+        }
+        HighlightManager highlightManager = projectService.getHighlightManager();
+        highlightManager.restoreHighlights(file);
+        if (!highlightManager.getCache().contains(file.getPath())) {
+            ApplicationManager.getApplication().executeOnPooledThread(
+                () -> projectService.restoreHighlightSnapshot(file));
+        }
+    }
+
+    @Override
+    public void fileClosed(@NotNull FileEditorManager source, @NotNull VirtualFile file) {
+        CodeAwarenessProjectService projectService = getProjectService(source);
+        // The file may still be open in another split
+        if (projectService != null && !source.isFileOpen(file)) {
+            projectService.getHighlightManager().releaseHighlights(file);
+            projectService.getHighlightPrefetcher().cancel(file);
+        }
+    }
+
+    private static CodeAwarenessProjectService getProjectService(FileEditorManager source) {
+        Project project = source.getProject();
+        if (project == null || project.isDisposed()) {
+            return null;
+        }
+        return project.getService(CodeAwarenessProjectService.class);
+    }
+}
@@ -84,7 +84,7 @@ public class ActiveFileTracker implements FileEditorManagerListener {
         }
 
         // Filter out non-project files
-        if (file != null && !isProjectFile(file)) {
+        if (file != null && !isProjectFile(project, file)) {
             Logger.debug("Skipping non-project file: " + filePath);
             return;
         }
@@ -108,7 +108,9 @@ public class ActiveFileTracker implements FileEditorManagerListener {
         // Schedule new notification with debounce
         Runnable notificationTask = () -> {
             pendingNotification.set(null);
-            sendActivePathMessage(filePath, file != null ? file.getName() : null);
+            if (sendActivePathMessage(filePath, file != null ? file.getName() : null) && projectService != null) {
+                projectService.getHighlightPrefetcher().onActivePathSent(file);
+            }
         };
 
         pendingNotification.set(notificationTask);
@@ -116,9 +118,9 @@ public class ActiveFileTracker implements FileEditorManagerListener {
     }
 
     /**
-     * Check if the file belongs to this project.
+     * Check if the file belongs to the project.
      */
-    private boolean isProjectFile(VirtualFile file) {
+    static boolean isProjectFile(Project project, VirtualFile file) {
         String projectBasePath = project.getBasePath();
         if (projectBasePath == null) {
             return false;
@@ -146,15 +148,17 @@ public class ActiveFileTracker implements FileEditorManagerListener {
 
     /**
      * Send active-path message to backend.
+     *
+     * @return true if the message was sent
      */
-    private void sendActivePathMessage(String filePath, String fileName) {
+    static boolean sendActivePathMessage(String filePath, String fileName) {
         try {
             CodeAwarenessApplicationService appService =
                 ApplicationManager.getApplication().getService(CodeAwarenessApplicationService.class);
 
             if (appService == null || !appService.isConnected()) {
                 Logger.debug("Cannot send active-path: not connected");
-                return;
+                return false;
             }
 
             // Build message using the static helper method
@@ -168,11 +172,13 @@ public class ActiveFileTracker implements FileEditorManagerListener {
             if (appService.getIpcConnection() != null) {
                 appService.getIpcConnection().sendMessage(message);
                 Logger.debug("Sent active-path message: " + (filePath != null ? filePath : "<none>"));
+                return true;
             }
 
         } catch (Exception e) {
             Logger.warn("Failed to send active-path message", e);
         }
+        return false;
     }
 
     /**
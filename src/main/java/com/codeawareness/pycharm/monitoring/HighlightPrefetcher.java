@@ -0,0 +1,285 @@
+package com.codeawareness.pycharm.monitoring;
+
+import com.codeawareness.pycharm.CodeAwarenessApplicationService;
+import com.codeawareness.pycharm.highlighting.HighlightManager;
+import com.codeawareness.pycharm.utils.Logger;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches highlights for open tabs and recently used files in the background, so
+ * switching tabs shows highlights right away instead of after a round-trip.
+ *
+ * The backend only answers active-path requests, for one file at a time and without a
+ * request id. Prefetching therefore sends one active-path request per tick, only once
+ * the user's own request has had time to be answered, and waits for the response (or a
+ * timeout) before the next one. {@link #matchResponse} tells the active-path handler
+ * which file a response belongs to, from the path the response names; the handler then
+ * {@link #claimResponse claims} the responses it applies, which lets the next prefetch
+ * go out. When a round is done, the active file is sent again so the backend's notion of
+ * the active file is restored.
+ */
+public class HighlightPrefetcher {
+
+    public static final long DEFAULT_INTERVAL_MS = 750;
+    private static final long IDLE_DELAY_MS = 2_000;
+    private static final long RESPONSE_TIMEOUT_MS = 5_000;
+    private static final long REFETCH_AFTER_MS = 5 * 60_000;
+    private static final int MAX_RECENT_FILES = 20;
+
+    private final Project project;
+    private final HighlightManager highlightManager;
+    private final ScheduledExecutorService scheduler;
+    private final long intervalMs;
+
+    // All state below is guarded by this
+    private final LinkedHashSet<VirtualFile> queue = new LinkedHashSet<>();
+    private final ArrayDeque<VirtualFile> recentFiles = new ArrayDeque<>();
+    private final Map<String, Long> fetchedAt = new HashMap<>();
+    private VirtualFile activeFile;
+    private long lastUserRequestAt;
+    private String inFlightPath;
+    private long inFlightSentAt;
+    private boolean restoreActiveFile;
+    private ScheduledFuture<?> task;
+
+    public HighlightPrefetcher(Project project, HighlightManager highlightManager) {
+        this(project, highlightManager, DEFAULT_INTERVAL_MS);
+    }
+
+    public HighlightPrefetcher(Project project, HighlightManager highlightManager, long intervalMs) {
+        this.project = project;
+        this.highlightManager = highlightManager;
+        this.intervalMs = intervalMs;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "HighlightPrefetcher-" + project.getName());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Note that an active-path request was sent for the file the user selected, and queue
+     * the other open and recently used files behind it.
+     */
+    public synchronized void onActivePathSent(VirtualFile file) {
+        activeFile = file;
+        lastUserRequestAt = now();
+        // The user's request supersedes the prefetch (its response may be mistaken for ours)
+        inFlightPath = null;
+        restoreActiveFile = false;
+        if (file != null) {
+            recentFiles.remove(file);
+            recentFiles.addFirst(file);
+            if (recentFiles.size() > MAX_RECENT_FILES) {
+                recentFiles.removeLast();
+            }
+        }
+        enqueueCandidates();
+    }
+
+    /**
+     * Forget when files were fetched (e.g. after a sync) and prefetch them again.
+     */
+    public synchronized void invalidate() {
+        fetchedAt.clear();
+        enqueueCandidates();
+    }
+
+    /**
+     * Stop prefetching a file that was closed.
+     */
+    public synchronized void cancel(VirtualFile file) {
+        queue.remove(file);
+        recentFiles.remove(file);
+    }
+
+    /**
+     * Tell which file an active-path response belongs to, if it answers a prefetch. Does
+     * not change any state; see {@link #claimResponse}.
+     *
+     * @param responsePath the {@code activePath} of the response (relative to the root or
+     *                     absolute), or null if the response does not name its file
+     * @return the path of the prefetched file, or null if the response is not for it
+     */
+    public synchronized String matchResponse(String responsePath) {
+        return responsePath != null && isAwaitingResponse() && matchesPath(inFlightPath, responsePath)
+            ? inFlightPath : null;
+    }
+
+    /**
+     * Tell which file an active-path response is for: the prefetched file if the response
+     * names it, otherwise the active file if the response names that one. A response that
+     * names another file (a late answer to a timed-out or superseded prefetch) is not for
+     * either; one that names no file is only taken for the active file while no prefetch
+     * is in flight, since it could answer either request.
+     *
+     * @param responsePath   the {@code activePath} of the response, or null if it has none
+     * @param activeFilePath the path of the active file, or null if there is none
+     * @return the path to apply the response to, or null to drop it
+     */
+    public synchronized String resolveResponse(String responsePath, String activeFilePath) {
+        if (responsePath == null) {
+            return isAwaitingResponse() ? null : activeFilePath;
+        }
+        String prefetched = matchResponse(responsePath);
+        if (prefetched != null) {
+            return prefetched;
+        }
+        return activeFilePath != null && matchesPath(activeFilePath, responsePath) ? activeFilePath : null;
+    }
+
+    /**
+     * Check whether a prefetch request is waiting for its response. A response that does
+     * not name its file cannot be told apart from it in the meantime.
+     */
+    public synchronized boolean isAwaitingResponse() {
+        return inFlightPath != null && now() - inFlightSentAt <= RESPONSE_TIMEOUT_MS;
+    }
+
+    /**
+     * Mark the prefetch of a file as answered, once its response is applied, so the next
+     * file can be fetched.
+     *
+     * @return whether the file was being prefetched
+     */
+    public synchronized boolean claimResponse(String filePath) {
+        if (filePath == null || !filePath.equals(inFlightPath)) {
+            return false;
+        }
+        inFlightPath = null;
+        return true;
+    }
+
+    /**
+     * Check whether a response path, relative or absolute, names the given file.
+     */
+    static boolean matchesPath(String filePath, String responsePath) {
+        String normalized = responsePath.replace('\\', '/');
+        while (normalized.startsWith("./")) {
+            normalized = normalized.substring(2);
+        }
+        return !normalized.isEmpty()
+            && (filePath.equals(normalized) || filePath.endsWith(normalized.startsWith("/") ? normalized : "/" + normalized));
+    }
+
+    private void enqueueCandidates() {
+        FileEditorManager editorManager = FileEditorManager.getInstance(project);
+        if (editorManager != null) {
+            for (VirtualFile file : editorManager.getOpenFiles()) {
+                queue.add(file);
+            }
+        }
+        queue.addAll(recentFiles);
+        if (!queue.isEmpty() && (task == null || task.isDone()) && !scheduler.isShutdown()) {
+            task = scheduler.scheduleWithFixedDelay(this::tick, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Send the next prefetch request, if the previous one was answered (or timed out) and
+     * the user has been idle long enough; finish the round by sending the active file again.
+     * Runs on the scheduler; package-private so tests can drive it.
+     */
+    void tick() {
+        VirtualFile file;
+        boolean prefetch;
+        synchronized (this) {
+            long now = now();
+            if (inFlightPath != null && now - inFlightSentAt < RESPONSE_TIMEOUT_MS) {
+                return;
+            }
+            inFlightPath = null;
+            if (now - lastUserRequestAt < IDLE_DELAY_MS) {
+                return;
+            }
+
+            file = nextFile(now);
+            prefetch = file != null;
+            if (prefetch) {
+                inFlightPath = file.getPath();
+                inFlightSentAt = now;
+                fetchedAt.put(file.getPath(), now);
+                restoreActiveFile = true;
+            } else {
+                if (restoreActiveFile && activeFile != null && activeFile.isValid()) {
+                    file = activeFile;
+                }
+                restoreActiveFile = false;
+                task.cancel(false);
+            }
+        }
+
+        if (file != null && !send(file)) {
+            // Not connected: try again on the next user request
+            synchronized (this) {
+                queue.clear();
+                inFlightPath = null;
+                restoreActiveFile = false;
+                task.cancel(false);
+            }
+        } else if (prefetch) {
+            Logger.debug("Prefetching highlights for: " + file.getPath());
+        }
+    }
+
+    /**
+     * Take the next queued file that is still worth fetching: valid, in the project, not
+     * the active file, without fresh highlights and not fetched recently.
+     */
+    private VirtualFile nextFile(long now) {
+        for (Iterator<VirtualFile> it = queue.iterator(); it.hasNext(); ) {
+            VirtualFile file = it.next();
+            it.remove();
+            String path = file.getPath();
+            Long fetched = fetchedAt.get(path);
+            if (file.isValid() && !file.isDirectory() && !file.equals(activeFile)
+                    && ActiveFileTracker.isProjectFile(project, file)
+                    && !highlightManager.hasFreshHighlights(path)
+                    && (fetched == null || now - fetched > REFETCH_AFTER_MS)) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Send an active-path request for a file. Package-private so tests can record requests.
+     */
+    boolean send(VirtualFile file) {
+        CodeAwarenessApplicationService appService =
+            ApplicationManager.getApplication().getService(CodeAwarenessApplicationService.class);
+        if (appService == null || !appService.isConnected()) {
+            return false;
+        }
+        return ActiveFileTracker.sendActivePathMessage(file.getPath(), file.getName());
+    }
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Stop prefetching and shut down the background thread.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            queue.clear();
+            inFlightPath = null;
+        }
+        scheduler.shutdownNow();
+    }
+}
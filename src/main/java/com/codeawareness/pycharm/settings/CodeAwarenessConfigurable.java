@@ -1,7 +1,9 @@
 package com.codeawareness.pycharm.settings;
 
+import com.codeawareness.pycharm.highlighting.HighlightCache;
 import com.intellij.openapi.options.Configurable;
 import com.intellij.ui.ColorPanel;
+import com.intellij.ui.JBIntSpinner;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.util.ui.FormBuilder;
 import com.intellij.util.ui.JBUI;
@@ -17,8 +19,13 @@ import java.awt.*;
  */
 public class CodeAwarenessConfigurable implements Configurable {
 
+    private static final int MAX_CACHE_FILES = 10_000;
+    private static final int MAX_CACHE_LINES = 10_000_000;
+
     private ColorPanel lightThemeColorPanel;
     private ColorPanel darkThemeColorPanel;
+    private JBIntSpinner cacheMaxFilesSpinner;
+    private JBIntSpinner cacheMaxLinesSpinner;
     private JPanel mainPanel;
 
     @Nls
@@ -39,17 +46,25 @@ public class CodeAwarenessConfigurable implements Configurable {
         darkThemeColorPanel = new ColorPanel();
         darkThemeColorPanel.setSelectedColor(parseColor(settings.getDarkThemeColor()));
 
+        // Create highlight cache limit spinners
+        cacheMaxFilesSpinner = new JBIntSpinner(clamp(settings.highlightCacheMaxFiles, MAX_CACHE_FILES), 0, MAX_CACHE_FILES);
+        cacheMaxLinesSpinner = new JBIntSpinner(clamp(settings.highlightCacheMaxLines, MAX_CACHE_LINES), 0, MAX_CACHE_LINES, 10_000);
+
         // Create reset button
         JButton resetButton = new JButton("Reset to Defaults");
         resetButton.addActionListener(e -> {
             lightThemeColorPanel.setSelectedColor(parseColor("ffea83"));
             darkThemeColorPanel.setSelectedColor(parseColor("0a071d"));
+            cacheMaxFilesSpinner.setNumber(HighlightCache.DEFAULT_MAX_FILES);
+            cacheMaxLinesSpinner.setNumber(HighlightCache.DEFAULT_MAX_LINES);
         });
 
         // Build the form
         mainPanel = FormBuilder.createFormBuilder()
             .addLabeledComponent(new JBLabel("Light theme highlight color:"), lightThemeColorPanel, 1, false)
             .addLabeledComponent(new JBLabel("Dark theme highlight color:"), darkThemeColorPanel, 1, false)
+            .addLabeledComponent(new JBLabel("Highlight cache size (files):"), cacheMaxFilesSpinner, 1, false)
+            .addLabeledComponent(new JBLabel("Highlight cache size (lines):"), cacheMaxLinesSpinner, 1, false)
             .addComponentFillVertically(new JPanel(), 0)
             .addComponent(resetButton)
             .addComponentFillVertically(new JPanel(), 0)
@@ -71,7 +86,9 @@ public class CodeAwarenessConfigurable implements Configurable {
         Color selectedDarkColor = darkThemeColorPanel.getSelectedColor();
 
         return !currentLightColor.equals(selectedLightColor) ||
-               !currentDarkColor.equals(selectedDarkColor);
+               !currentDarkColor.equals(selectedDarkColor) ||
+               settings.highlightCacheMaxFiles != cacheMaxFilesSpinner.getNumber() ||
+               settings.highlightCacheMaxLines != cacheMaxLinesSpinner.getNumber();
     }
 
     @Override
@@ -80,6 +97,7 @@ public class CodeAwarenessConfigurable implements Configurable {
 
         settings.setLightThemeColor(colorToHex(lightThemeColorPanel.getSelectedColor()));
         settings.setDarkThemeColor(colorToHex(darkThemeColorPanel.getSelectedColor()));
+        settings.setHighlightCacheLimits(cacheMaxFilesSpinner.getNumber(), cacheMaxLinesSpinner.getNumber());
     }
 
     @Override
@@ -87,6 +105,15 @@ public class CodeAwarenessConfigurable implements Configurable {
         CodeAwarenessSettings settings = CodeAwarenessSettings.getInstance();
         lightThemeColorPanel.setSelectedColor(parseColor(settings.getLightThemeColor()));
         darkThemeColorPanel.setSelectedColor(parseColor(settings.getDarkThemeColor()));
+        cacheMaxFilesSpinner.setNumber(clamp(settings.highlightCacheMaxFiles, MAX_CACHE_FILES));
+        cacheMaxLinesSpinner.setNumber(clamp(settings.highlightCacheMaxLines, MAX_CACHE_LINES));
+    }
+
+    /**
+     * Keep a stored (possibly hand-edited) limit within the range of its spinner.
+     */
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(value, max));
     }
 
     /**
@@ -1,5 +1,6 @@
 package com.codeawareness.pycharm.settings;
 
+import com.codeawareness.pycharm.highlighting.HighlightCache;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.PersistentStateComponent;
 import com.intellij.openapi.components.Service;
@@ -47,6 +48,16 @@ public final class CodeAwarenessSettings implements PersistentStateComponent<Cod
      */
     public int activeFileDebounceMs = 300;
 
+    /**
+     * Maximum number of files whose highlights are cached for when they are reopened.
+     */
+    public int highlightCacheMaxFiles = HighlightCache.DEFAULT_MAX_FILES;
+
+    /**
+     * Maximum total number of highlighted lines kept in the highlight cache.
+     */
+    public int highlightCacheMaxLines = HighlightCache.DEFAULT_MAX_LINES;
+
     /**
      * Highlight color for light theme (RGB hex format without #, e.g., "ffea83").
      */
@@ -144,6 +155,17 @@ public final class CodeAwarenessSettings implements PersistentStateComponent<Cod
         notifyColorSettingsChanged();
     }
 
+    /**
+     * Set the size limits of the highlight cache; open projects apply them right away.
+     */
+    public void setHighlightCacheLimits(int maxFiles, int maxLines) {
+        if (highlightCacheMaxFiles != maxFiles || highlightCacheMaxLines != maxLines) {
+            highlightCacheMaxFiles = maxFiles;
+            highlightCacheMaxLines = maxLines;
+            notifyHighlightCacheLimitsChanged();
+        }
+    }
+
     /**
      * Register a settings change listener.
      */
@@ -173,6 +195,19 @@ public final class CodeAwarenessSettings implements PersistentStateComponent<Cod
         }
     }
 
+    /**
+     * Notify all listeners that the highlight cache limits have changed.
+     */
+    private void notifyHighlightCacheLimitsChanged() {
+        for (SettingsChangeListener listener : listeners) {
+            try {
+                listener.onHighlightCacheLimitsChanged(highlightCacheMaxFiles, highlightCacheMaxLines);
+            } catch (Exception e) {
+                // Ignore listener exceptions
+            }
+        }
+    }
+
     /**
      * Notify all listeners that highlights enabled state has changed.
      */
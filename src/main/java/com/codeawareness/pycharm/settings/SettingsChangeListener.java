@@ -17,4 +17,9 @@ public interface SettingsChangeListener {
      * @param enabled true if highlights are now enabled, false otherwise
      */
     void onHighlightsEnabledChanged(boolean enabled);
+
+    /**
+     * Called when the size limits of the highlight cache have been changed.
+     */
+    void onHighlightCacheLimitsChanged(int maxFiles, int maxLines);
 }
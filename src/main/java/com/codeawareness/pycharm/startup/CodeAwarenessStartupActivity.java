@@ -24,6 +24,13 @@ public class CodeAwarenessStartupActivity implements StartupActivity.DumbAware {
         // Delay initialization to allow IDE and other plugins to fully initialize
         ApplicationManager.getApplication().executeOnPooledThread(() -> {
             try {
+                // Show the highlights saved at the last close right away, marked stale
+                // until the backend answers
+                CodeAwarenessProjectService snapshotService = project.getService(CodeAwarenessProjectService.class);
+                if (snapshotService != null) {
+                    snapshotService.restoreHighlightSnapshot();
+                }
+
                 Logger.info("Waiting " + INITIALIZATION_DELAY_MS + "ms before initializing Kawa Code plugin...");
                 Thread.sleep(INITIALIZATION_DELAY_MS);
 
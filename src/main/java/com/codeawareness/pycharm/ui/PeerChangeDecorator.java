@@ -0,0 +1,53 @@
+package com.codeawareness.pycharm.ui;
+
+import com.codeawareness.pycharm.CodeAwarenessProjectService;
+import com.codeawareness.pycharm.highlighting.PeerChangeIndex;
+import com.intellij.ide.projectView.PresentationData;
+import com.intellij.ide.projectView.ProjectViewNode;
+import com.intellij.ide.projectView.ProjectViewNodeDecorator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+
+import java.util.List;
+
+/**
+ * Marks files and directories changed by peers in the project view, with the number of
+ * changed lines (files) or changed files (directories) and the peers in the tooltip.
+ * Each node is one lookup in the {@link PeerChangeIndex}, whose directory totals are kept
+ * up to date as files change, so decorating a large tree scans nothing.
+ */
+public class PeerChangeDecorator implements ProjectViewNodeDecorator {
+
+    private static final int MAX_PEERS_SHOWN = 3;
+
+    @Override
+    public void decorate(ProjectViewNode<?> node, PresentationData data) {
+        Project project = node.getProject();
+        VirtualFile file = node.getVirtualFile();
+        if (project == null || project.isDisposed() || file == null) {
+            return;
+        }
+        CodeAwarenessProjectService projectService = project.getService(CodeAwarenessProjectService.class);
+        PeerChangeIndex.Summary summary = projectService != null
+            ? projectService.getPeerChangeIndex().get(file.getPath()) : null;
+        if (summary == null) {
+            return;
+        }
+
+        String label = file.isDirectory()
+            ? summary.getChangedFiles() + (summary.getChangedFiles() == 1 ? " file" : " files") + " changed by peers"
+            : summary.getChangedLines() > 0 ? summary.getChangedLines() + " lines changed by peers" : "changed by peers";
+        String location = data.getLocationString();
+        data.setLocationString(location == null || location.isEmpty() ? label : location + " · " + label);
+        if (!summary.getPeers().isEmpty()) {
+            data.setTooltip("Kawa Code: " + describePeers(summary.getPeers()));
+        }
+    }
+
+    private static String describePeers(List<String> peers) {
+        if (peers.size() <= MAX_PEERS_SHOWN) {
+            return String.join(", ", peers);
+        }
+        return String.join(", ", peers.subList(0, MAX_PEERS_SHOWN)) + " and " + (peers.size() - MAX_PEERS_SHOWN) + " more";
+    }
+}
@@ -0,0 +1,18 @@
+package com.codeawareness.pycharm.ui.actions;
+
+import com.codeawareness.pycharm.highlighting.LineIndex;
+import com.codeawareness.pycharm.highlighting.PeerChangeNavigator;
+
+import java.util.NavigableMap;
+
+/**
+ * Action to move the caret to the next peer-changed region, or to the first one of the
+ * next file with peer changes.
+ */
+public class NextPeerChangeAction extends PeerChangeNavigationAction {
+
+    @Override
+    protected PeerChangeNavigator.Location find(NavigableMap<String, LineIndex> files, String filePath, int line) {
+        return PeerChangeNavigator.next(files, filePath, line);
+    }
+}
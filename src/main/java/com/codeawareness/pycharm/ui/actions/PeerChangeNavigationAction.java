@@ -0,0 +1,71 @@
+package com.codeawareness.pycharm.ui.actions;
+
+import com.codeawareness.pycharm.CodeAwarenessProjectService;
+import com.codeawareness.pycharm.highlighting.LineIndex;
+import com.codeawareness.pycharm.highlighting.PeerChangeNavigator;
+import com.codeawareness.pycharm.utils.Logger;
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.fileEditor.OpenFileDescriptor;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.NavigableMap;
+
+/**
+ * Base for the actions that move the caret to the next or previous peer-changed region,
+ * wrapping around to other files with peer changes.
+ */
+public abstract class PeerChangeNavigationAction extends AnAction {
+
+    /**
+     * Find the region to go to from a line of a file.
+     */
+    protected abstract PeerChangeNavigator.Location find(NavigableMap<String, LineIndex> files,
+                                                         String filePath, int line);
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        e.getPresentation().setEnabled(e.getProject() != null && e.getData(CommonDataKeys.EDITOR) != null);
+    }
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        Editor editor = e.getData(CommonDataKeys.EDITOR);
+        VirtualFile file = e.getData(CommonDataKeys.VIRTUAL_FILE);
+        if (project == null || editor == null || file == null) {
+            return;
+        }
+        CodeAwarenessProjectService projectService = project.getService(CodeAwarenessProjectService.class);
+        if (projectService == null) {
+            return;
+        }
+
+        int line = editor.getCaretModel().getLogicalPosition().line;
+        PeerChangeNavigator.Location target =
+            find(projectService.getHighlightManager().getKnownLines(), file.getPath(), line);
+        if (target == null) {
+            Logger.debug("No peer changes to navigate to");
+            return;
+        }
+
+        VirtualFile targetFile = target.getFilePath().equals(file.getPath())
+            ? file : LocalFileSystem.getInstance().findFileByPath(target.getFilePath());
+        if (targetFile == null || !targetFile.isValid()) {
+            Logger.warn("Cannot navigate to peer change, file not found: " + target.getFilePath());
+            return;
+        }
+        new OpenFileDescriptor(project, targetFile, target.getLine(), 0).navigate(true);
+    }
+}
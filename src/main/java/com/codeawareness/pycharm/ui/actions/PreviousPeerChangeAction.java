@@ -0,0 +1,18 @@
+package com.codeawareness.pycharm.ui.actions;
+
+import com.codeawareness.pycharm.highlighting.LineIndex;
+import com.codeawareness.pycharm.highlighting.PeerChangeNavigator;
+
+import java.util.NavigableMap;
+
+/**
+ * Action to move the caret to the previous peer-changed region, or to the last one of the
+ * previous file with peer changes.
+ */
+public class PreviousPeerChangeAction extends PeerChangeNavigationAction {
+
+    @Override
+    protected PeerChangeNavigator.Location find(NavigableMap<String, LineIndex> files, String filePath, int line) {
+        return PeerChangeNavigator.previous(files, filePath, line);
+    }
+}
@@ -0,0 +1,40 @@
+package com.codeawareness.pycharm.ui.actions;
+
+import com.codeawareness.pycharm.CodeAwarenessApplicationService;
+import com.codeawareness.pycharm.ui.NotificationHelper;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+
+/**
+ * Action to start or stop recording raw Muninn IPC traffic for offline replay.
+ */
+public class ToggleIpcRecordingAction extends AnAction {
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        CodeAwarenessApplicationService appService =
+            ApplicationManager.getApplication().getService(CodeAwarenessApplicationService.class);
+        if (appService == null) {
+            return;
+        }
+
+        if (appService.isIpcRecording()) {
+            appService.stopIpcRecording();
+            NotificationHelper.showInfo("Kawa Code", "IPC recording stopped", e.getProject());
+        } else {
+            Path file = CodeAwarenessApplicationService.getDefaultIpcRecordingFile();
+            appService.startIpcRecording(file);
+            // Starting clears the recording state if the file cannot be opened
+            if (appService.isIpcRecording()) {
+                NotificationHelper.showInfo("Kawa Code", "Recording IPC traffic to " + file, e.getProject());
+            } else {
+                NotificationHelper.showError("Kawa Code", "Could not record IPC traffic to " + file +
+                    " (see the IDE log)", e.getProject());
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.codeawareness.pycharm.utils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed timer wheel for large numbers of cheap, mostly-cancelled timeouts.
+ *
+ * Scheduling and cancelling are O(1) and lock-free once the worker is running (only the
+ * first schedule takes a lock, to start it); a single daemon worker thread advances the
+ * wheel once per tick and expires the timeouts in the current bucket. Expired tasks run
+ * after the wheel's lock is released, so a slow task delays later ticks but never blocks
+ * callers that schedule or cancel.
+ * Timeouts fire with tick granularity (never early, less than two ticks late). Timeouts
+ * longer than one revolution are kept in their bucket with a remaining-rounds counter.
+ *
+ * A wheel created with {@link #manual(long, int)} has no worker thread and only moves
+ * when {@link #tick()} is called, which makes expiry deterministic in tests.
+ */
+public class HashedTimerWheel {
+
+    /**
+     * Handle to a scheduled timeout.
+     */
+    public interface Timeout {
+        /**
+         * Cancel the timeout.
+         *
+         * @return true if the timeout was pending and is now cancelled
+         */
+        boolean cancel();
+
+        boolean isExpired();
+
+        boolean isCancelled();
+    }
+
+    private static final int ST_PENDING = 0;
+    private static final int ST_CANCELLED = 1;
+    private static final int ST_EXPIRED = 2;
+
+    private final long tickNanos;
+    private final int mask;
+    private final List<Entry>[] buckets;
+    private final ConcurrentLinkedQueue<Entry> incoming = new ConcurrentLinkedQueue<>();
+    private final String threadName;
+    private final boolean manual;
+    private volatile long ticks = 0;
+    private volatile boolean stopped = false;
+    private volatile Thread worker;
+    private final Object lock = new Object();
+
+    /**
+     * Create a wheel driven by its own daemon thread (started on first use).
+     *
+     * @param tickMs     Tick duration in milliseconds
+     * @param wheelSize  Number of buckets (rounded up to a power of two)
+     * @param threadName Name of the worker thread
+     */
+    public HashedTimerWheel(long tickMs, int wheelSize, String threadName) {
+        this(tickMs, wheelSize, threadName, false);
+    }
+
+    /**
+     * Create a wheel without a worker thread; time only advances via {@link #tick()}.
+     */
+    public static HashedTimerWheel manual(long tickMs, int wheelSize) {
+        return new HashedTimerWheel(tickMs, wheelSize, null, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private HashedTimerWheel(long tickMs, int wheelSize, String threadName, boolean manual) {
+        if (tickMs <= 0) {
+            throw new IllegalArgumentException("tickMs must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        this.mask = size - 1;
+        this.buckets = new List[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        this.threadName = threadName;
+        this.manual = manual;
+    }
+
+    /**
+     * Schedule a task to run once the delay has elapsed.
+     * The task runs on the worker thread and must be short.
+     */
+    public Timeout schedule(Runnable task, long delayMs) {
+        long delayTicks = Math.max(1, (TimeUnit.MILLISECONDS.toNanos(delayMs) + tickNanos - 1) / tickNanos);
+        // The next tick may be due at any moment, so it does not count towards the delay
+        Entry entry = new Entry(task, ticks + delayTicks);
+        incoming.add(entry);
+        if (!manual) {
+            ensureStarted();
+        }
+        return entry;
+    }
+
+    /**
+     * Advance the wheel by one tick, expiring every due timeout in the current bucket.
+     * Called by the worker thread, or directly for wheels created with {@link #manual}.
+     */
+    public void tick() {
+        List<Entry> expired = null;
+        synchronized (lock) {
+            long current = ticks;
+            transferIncoming(current);
+
+            Iterator<Entry> iterator = buckets[(int) (current & mask)].iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.state.get() == ST_CANCELLED) {
+                    iterator.remove();
+                } else if (entry.remainingRounds <= 0) {
+                    iterator.remove();
+                    if (entry.state.compareAndSet(ST_PENDING, ST_EXPIRED)) {
+                        if (expired == null) {
+                            expired = new ArrayList<>();
+                        }
+                        expired.add(entry);
+                    }
+                } else {
+                    entry.remainingRounds--;
+                }
+            }
+
+            ticks = current + 1;
+        }
+
+        // Outside the lock: a slow task must not hold up the next tick's bookkeeping
+        if (expired != null) {
+            for (Entry entry : expired) {
+                try {
+                    entry.task.run();
+                } catch (Exception e) {
+                    Logger.warn("Error in timer wheel task", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the number of ticks processed so far.
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Stop the worker thread. Pending timeouts never fire.
+     */
+    public void stop() {
+        synchronized (lock) {
+            stopped = true;
+            if (worker != null) {
+                worker.interrupt();
+                worker = null;
+            }
+        }
+    }
+
+    private void transferIncoming(long current) {
+        Entry entry;
+        while ((entry = incoming.poll()) != null) {
+            if (entry.state.get() == ST_CANCELLED) {
+                continue;
+            }
+            long deadline = Math.max(entry.deadlineTick, current);
+            entry.remainingRounds = (deadline - current) / buckets.length;
+            buckets[(int) (deadline & mask)].add(entry);
+        }
+    }
+
+    private void ensureStarted() {
+        if (worker != null || stopped) {
+            // Fast path: no lock once the worker runs
+            return;
+        }
+        synchronized (lock) {
+            if (worker == null && !stopped) {
+                startWorker();
+            }
+        }
+    }
+
+    private void startWorker() {
+        Thread thread = new Thread(() -> {
+            long start = System.nanoTime();
+            while (!stopped) {
+                long deadline = start + (ticks + 1) * tickNanos;
+                long sleepNanos = deadline - System.nanoTime();
+                if (sleepNanos > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                    } catch (InterruptedException e) {
+                        if (stopped) {
+                            return;
+                        }
+                        continue;
+                    }
+                }
+                tick();
+            }
+        }, threadName);
+        thread.setDaemon(true);
+        worker = thread;
+        thread.start();
+    }
+
+    private static final class Entry implements Timeout {
+        private final Runnable task;
+        private final long deadlineTick;
+        private final AtomicInteger state = new AtomicInteger(ST_PENDING);
+        private long remainingRounds;
+
+        Entry(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        @Override
+        public boolean cancel() {
+            return state.compareAndSet(ST_PENDING, ST_CANCELLED);
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+    }
+}
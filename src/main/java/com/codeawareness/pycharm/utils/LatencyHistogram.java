@@ -0,0 +1,99 @@
+package com.codeawareness.pycharm.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two microsecond buckets.
+ * Bucket 0 holds samples below 1us, bucket i holds samples in [2^(i-1), 2^i) us.
+ * Percentiles are therefore approximate (reported as the bucket's upper bound).
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKET_COUNT = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Long::max, 0);
+
+    /**
+     * Record a latency sample.
+     */
+    public void record(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+        int bucket = micros == 0 ? 0 : Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        totalMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+
+    /**
+     * Get the number of recorded samples.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Get the mean latency in microseconds.
+     */
+    public long getMeanMicros() {
+        long samples = count.sum();
+        return samples == 0 ? 0 : totalMicros.sum() / samples;
+    }
+
+    /**
+     * Get the largest recorded latency in microseconds.
+     */
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * Get the approximate latency (upper bucket bound, in microseconds) below which the
+     * given fraction of samples fall.
+     *
+     * @param quantile Fraction between 0 and 1 (e.g. 0.99)
+     */
+    public long getPercentileMicros(double quantile) {
+        long samples = count.sum();
+        if (samples == 0) {
+            return 0;
+        }
+
+        long threshold = (long) Math.ceil(Math.min(1.0, Math.max(0.0, quantile)) * samples);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= Math.max(1, threshold)) {
+                return i == 0 ? 1 : 1L << i;
+            }
+        }
+        return maxMicros.get();
+    }
+
+    /**
+     * Reset all samples.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        totalMicros.reset();
+        maxMicros.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() +
+                ", mean=" + getMeanMicros() + "us" +
+                ", p50<=" + getPercentileMicros(0.50) + "us" +
+                ", p99<=" + getPercentileMicros(0.99) + "us" +
+                ", max=" + getMaxMicros() + "us";
+    }
+}
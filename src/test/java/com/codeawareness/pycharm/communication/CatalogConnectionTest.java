@@ -0,0 +1,102 @@
+package com.codeawareness.pycharm.communication;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the CatalogConnection handshake, against a fake socket.
+ */
+class CatalogConnectionTest {
+
+    @Test
+    void testHandshakeNegotiatesTheSmallerWindow() throws IOException {
+        FakeSocket socket = new FakeSocket(handshakeResponse("{\"caw\":\"42\",\"flowControl\":{\"window\":16}}"));
+        CatalogConnection connection = new CatalogConnection(32);
+
+        connection.connect(socket);
+
+        assertEquals("42", connection.getAssignedCaw());
+        assertEquals(16, connection.getFlowControlWindow());
+        JsonObject sent = JsonParser.parseString(socket.written.get(0).trim()).getAsJsonObject();
+        assertEquals("handshake", sent.get("action").getAsString());
+        assertEquals(32, sent.getAsJsonObject("data").getAsJsonObject("flowControl").get("window").getAsInt());
+    }
+
+    @Test
+    void testMalformedWindowDisablesFlowControl() throws IOException {
+        FakeSocket socket = new FakeSocket(handshakeResponse("{\"caw\":\"42\",\"flowControl\":{\"window\":\"lots\"}}"));
+        CatalogConnection connection = new CatalogConnection(32);
+
+        connection.connect(socket);
+
+        assertEquals("42", connection.getAssignedCaw());
+        assertEquals(0, connection.getFlowControlWindow());
+    }
+
+    @Test
+    void testServerWithoutFlowControlDisablesIt() throws IOException {
+        FakeSocket socket = new FakeSocket(handshakeResponse("{\"caw\":\"42\"}"));
+        CatalogConnection connection = new CatalogConnection(32);
+
+        connection.connect(socket);
+
+        assertEquals(0, connection.getFlowControlWindow());
+    }
+
+    @Test
+    void testResponseWithoutCawFails() {
+        FakeSocket socket = new FakeSocket(handshakeResponse("{}"));
+
+        assertThrows(IOException.class, () -> new CatalogConnection(32).connect(socket));
+    }
+
+    private static String handshakeResponse(String data) {
+        return "{\"flow\":\"res\",\"domain\":\"system\",\"action\":\"handshake\",\"data\":" + data + "}";
+    }
+
+    /**
+     * Socket that records what is written and answers every read with a canned response.
+     */
+    private static final class FakeSocket extends SocketManager {
+        final List<String> written = new ArrayList<>();
+        private final String response;
+        private boolean connected;
+
+        FakeSocket(String response) {
+            super("/tmp/fake-muninn");
+            this.response = response;
+        }
+
+        @Override
+        public void connect(int maxAttempts) {
+            connected = true;
+        }
+
+        @Override
+        public void write(String message) {
+            written.add(message);
+        }
+
+        @Override
+        public String readUntilDelimiter(char delimiter) {
+            return response;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public void close() {
+            connected = false;
+        }
+    }
+}
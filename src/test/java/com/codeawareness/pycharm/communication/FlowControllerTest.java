@@ -0,0 +1,167 @@
+package com.codeawareness.pycharm.communication;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for FlowController, driven by a fake Muninn that honours the credit window.
+ */
+class FlowControllerTest {
+
+    @Test
+    void testServerNeverExceedsWindowWhileIdeIsSlow() {
+        FakeMuninn server = new FakeMuninn(8);
+        FlowController controller = new FlowController(8, server::grant);
+        server.connect(controller);
+
+        server.publish(100);
+
+        // The IDE has not finished anything yet: exactly one window is outstanding
+        assertEquals(8, controller.getInFlight());
+        assertEquals(92, server.backlog());
+
+        // Work completes slowly; credits flow back and the server keeps the window full
+        while (!server.unprocessed.isEmpty()) {
+            server.unprocessed.poll().run();
+            assertTrue(controller.getInFlight() <= 8);
+        }
+
+        assertEquals(0, server.backlog());
+        assertEquals(100, controller.getReceivedCount());
+        assertEquals(100, controller.getCreditsGranted());
+        assertEquals(8, controller.getMaxInFlight());
+        assertEquals(0, controller.getOverrunCount());
+    }
+
+    @Test
+    void testCreditsAreGrantedInBatches() {
+        FakeMuninn server = new FakeMuninn(8);
+        FlowController controller = new FlowController(8, server::grant);
+        server.connect(controller);
+        server.publish(8);
+
+        server.unprocessed.poll().run();
+        assertTrue(server.grants.isEmpty(), "A single completion should not produce a credit frame");
+
+        server.unprocessed.poll().run();
+        assertEquals(List.of(2), server.grants, "Credits are returned a quarter window at a time");
+    }
+
+    @Test
+    void testRemainingCreditsGrantedWhenIdle() {
+        FakeMuninn server = new FakeMuninn(16);
+        FlowController controller = new FlowController(16, server::grant);
+        server.connect(controller);
+        server.publish(3);
+
+        while (!server.unprocessed.isEmpty()) {
+            server.unprocessed.poll().run();
+        }
+
+        assertEquals(List.of(3), server.grants, "Leftover credits should be returned once nothing is in flight");
+        assertEquals(0, controller.getInFlight());
+    }
+
+    @Test
+    void testReleaseIsIdempotent() {
+        List<Integer> grants = new ArrayList<>();
+        FlowController controller = new FlowController(1, grants::add);
+
+        Runnable release = controller.onMessageReceived();
+        release.run();
+        release.run();
+
+        assertEquals(0, controller.getInFlight());
+        assertEquals(List.of(1), grants);
+    }
+
+    @Test
+    void testOverrunIsCounted() {
+        FlowController controller = new FlowController(2, credits -> { });
+
+        controller.onMessageReceived();
+        controller.onMessageReceived();
+        controller.onMessageReceived();
+
+        assertEquals(1, controller.getOverrunCount());
+        assertEquals(3, controller.getMaxInFlight());
+    }
+
+    @Test
+    void testFailedGrantIsRetried() {
+        List<Integer> grants = new ArrayList<>();
+        boolean[] fail = {true};
+        FlowController controller = new FlowController(4, credits -> {
+            if (fail[0]) {
+                throw new IOException("Broken pipe");
+            }
+            grants.add(credits);
+        });
+
+        Runnable first = controller.onMessageReceived();
+        Runnable second = controller.onMessageReceived();
+        first.run();
+        assertTrue(grants.isEmpty());
+
+        fail[0] = false;
+        second.run();
+        assertEquals(List.of(2), grants, "Credits from the failed grant should be carried over");
+        assertEquals(2, controller.getCreditsGranted());
+    }
+
+    @Test
+    void testRejectsNonPositiveWindow() {
+        assertThrows(IllegalArgumentException.class, () -> new FlowController(0, credits -> { }));
+    }
+
+    /**
+     * Local stand-in for Muninn: holds a backlog of broadcasts and only sends while it
+     * has credits. Delivered messages wait in {@code unprocessed} until the test runs
+     * their release callback, simulating handler work finishing.
+     */
+    private static final class FakeMuninn {
+        final Deque<Runnable> unprocessed = new ArrayDeque<>();
+        final List<Integer> grants = new ArrayList<>();
+        private FlowController controller;
+        private int credits;
+        private int backlog;
+
+        FakeMuninn(int window) {
+            this.credits = window;
+        }
+
+        void connect(FlowController controller) {
+            this.controller = controller;
+        }
+
+        void publish(int count) {
+            backlog += count;
+            pump();
+        }
+
+        void grant(int granted) {
+            grants.add(granted);
+            credits += granted;
+            pump();
+        }
+
+        int backlog() {
+            return backlog;
+        }
+
+        private void pump() {
+            while (credits > 0 && backlog > 0) {
+                credits--;
+                backlog--;
+                unprocessed.add(controller.onMessageReceived());
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.codeawareness.pycharm.communication;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for IpcTrafficRecorder and IpcTrafficReplayer.
+ */
+class IpcTrafficRecorderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRecordAndReadBack() throws IOException {
+        Path file = tempDir.resolve("session.rec");
+
+        try (IpcTrafficRecorder recorder = new IpcTrafficRecorder(file)) {
+            recorder.recordOutbound("{\"flow\":\"req\",\"action\":\"active-path\"}\n");
+            recorder.recordInbound("{\"flow\":\"res\",\"action\":\"active-path\"}");
+        }
+
+        List<IpcTrafficReplayer.Frame> frames = IpcTrafficReplayer.readRecording(file);
+
+        assertEquals(2, frames.size());
+        assertEquals(IpcTrafficRecorder.Direction.OUTBOUND, frames.get(0).getDirection());
+        assertEquals("{\"flow\":\"req\",\"action\":\"active-path\"}", frames.get(0).getPayload(),
+            "Trailing delimiter should be stripped");
+        assertEquals(IpcTrafficRecorder.Direction.INBOUND, frames.get(1).getDirection());
+        assertTrue(frames.get(1).getTimestampNanos() >= frames.get(0).getTimestampNanos());
+    }
+
+    @Test
+    void testStopsAcceptingFramesAfterClose() throws IOException {
+        Path file = tempDir.resolve("closed.rec");
+        IpcTrafficRecorder recorder = new IpcTrafficRecorder(file);
+        recorder.recordInbound("one");
+        recorder.close();
+        recorder.recordInbound("two");
+
+        assertFalse(recorder.isRecording());
+        assertEquals(1, IpcTrafficReplayer.readRecording(file).size());
+    }
+
+    @Test
+    void testRotationFailureStopsRecordingAndNotifies() throws IOException {
+        Path file = tempDir.resolve("failing.rec");
+        // A non-empty directory where the rotated segment goes cannot be replaced
+        Path blocked = IpcTrafficRecorder.rotatedSegment(file, 1);
+        Files.createDirectories(blocked.resolve("child"));
+        long maxBytes = IpcTrafficRecorder.HEADER_SIZE + IpcTrafficRecorder.RECORD_OVERHEAD + 10;
+        List<String> failures = new ArrayList<>();
+
+        IpcTrafficRecorder recorder = new IpcTrafficRecorder(file, maxBytes, 1);
+        recorder.setFailureListener(() -> failures.add("stopped"));
+        recorder.recordInbound("0123456789");
+        assertTrue(recorder.isRecording());
+        recorder.recordInbound("0123456789");
+
+        assertFalse(recorder.isRecording());
+        assertEquals(List.of("stopped"), failures);
+        recorder.close();
+    }
+
+    @Test
+    void testRotationKeepsBoundedSegmentsInOrder() throws IOException {
+        Path file = tempDir.resolve("rotating.rec");
+        String payload = "x".repeat(100);
+        long maxBytes = IpcTrafficRecorder.HEADER_SIZE + 2L * (IpcTrafficRecorder.RECORD_OVERHEAD + 100 + 3);
+
+        try (IpcTrafficRecorder recorder = new IpcTrafficRecorder(file, maxBytes, 2)) {
+            for (int i = 0; i < 10; i++) {
+                recorder.recordInbound(String.format("%03d", i) + payload);
+            }
+        }
+
+        assertTrue(Files.exists(IpcTrafficRecorder.rotatedSegment(file, 1)));
+        assertTrue(Files.exists(IpcTrafficRecorder.rotatedSegment(file, 2)));
+        assertFalse(Files.exists(IpcTrafficRecorder.rotatedSegment(file, 3)), "Oldest segment should be dropped");
+
+        List<IpcTrafficReplayer.Frame> frames = IpcTrafficReplayer.readRecording(file);
+        assertEquals(6, frames.size(), "Three segments of two frames each should survive");
+        for (int i = 0; i < frames.size(); i++) {
+            assertTrue(frames.get(i).getPayload().startsWith(String.format("%03d", i + 4)));
+        }
+    }
+
+    @Test
+    void testTruncatedTrailingRecordIsIgnored() throws IOException {
+        Path file = tempDir.resolve("truncated.rec");
+        try (IpcTrafficRecorder recorder = new IpcTrafficRecorder(file)) {
+            recorder.recordInbound("complete");
+        }
+        Files.write(file, new byte[]{0, 0, 0}, StandardOpenOption.APPEND);
+
+        List<IpcTrafficReplayer.Frame> frames = IpcTrafficReplayer.readRecording(file);
+        assertEquals(1, frames.size());
+        assertEquals("complete", frames.get(0).getPayload());
+    }
+
+    @Test
+    void testRejectsForeignFile() throws IOException {
+        Path file = tempDir.resolve("foreign.rec");
+        Files.writeString(file, "definitely not a recording");
+
+        assertThrows(IOException.class, () -> IpcTrafficReplayer.readRecording(file));
+    }
+
+    @Test
+    void testReplayDeliversOnlyInboundMessages() throws Exception {
+        Path file = tempDir.resolve("replay.rec");
+        try (IpcTrafficRecorder recorder = new IpcTrafficRecorder(file)) {
+            recorder.recordOutbound("{\"flow\":\"req\",\"domain\":\"code\",\"action\":\"active-path\"}");
+            recorder.recordInbound("{\"flow\":\"res\",\"domain\":\"code\",\"action\":\"active-path\"}");
+            recorder.recordInbound("{\"flow\":\"brdc\",\"domain\":\"code\",\"action\":\"peer:select\"}");
+        }
+
+        List<Message> delivered = new ArrayList<>();
+        IpcTrafficReplayer.ReplayStats stats =
+            IpcTrafficReplayer.replay(file, IpcTrafficReplayer.Speed.AS_FAST_AS_POSSIBLE, delivered::add);
+
+        assertEquals(2, stats.getFramesReplayed());
+        assertEquals(2, stats.getMessagesDelivered());
+        assertEquals("active-path", delivered.get(0).getAction());
+        assertEquals("peer:select", delivered.get(1).getAction());
+    }
+}
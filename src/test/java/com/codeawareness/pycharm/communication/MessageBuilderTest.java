@@ -73,6 +73,29 @@ class MessageBuilderTest {
         assertEquals("intellij", data.get("clientType").getAsString());
     }
 
+    @Test
+    void testBuildHandshakeAdvertisesFlowControlWindow() {
+        Message message = MessageBuilder.buildHandshake(128);
+
+        JsonObject data = message.getData().getAsJsonObject();
+        assertEquals("intellij", data.get("clientType").getAsString());
+        assertEquals(128, data.getAsJsonObject("flowControl").get("window").getAsInt());
+
+        assertFalse(MessageBuilder.buildHandshake().getData().getAsJsonObject().has("flowControl"),
+            "Handshake without a window should not advertise flow control");
+    }
+
+    @Test
+    void testBuildFlowCredit() {
+        Message message = MessageBuilder.buildFlowCredit("test-caw", 16);
+
+        assertEquals(Message.Flow.REQ, message.getFlow());
+        assertEquals("system", message.getDomain());
+        assertEquals("flow-credit", message.getAction());
+        assertEquals("test-caw", message.getCaw());
+        assertEquals(16, message.getData().getAsJsonObject().get("credits").getAsInt());
+    }
+
     @Test
     void testBuildClientIdDelegatesToHandshake() {
         // buildClientId is deprecated and should delegate to buildHandshake
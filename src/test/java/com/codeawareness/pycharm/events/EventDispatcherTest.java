@@ -0,0 +1,170 @@
+package com.codeawareness.pycharm.events;
+
+import com.codeawareness.pycharm.communication.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for EventDispatcher.
+ * Uses a direct executor so handlers run on the dispatching (or batch scheduler) thread.
+ */
+class EventDispatcherTest {
+
+    private EventDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    void testPlainHandlerInvokedPerMessage() {
+        dispatcher = new EventDispatcher(Runnable::run, 1000, 64);
+        List<Message> received = new ArrayList<>();
+        dispatcher.registerHandler(new EventHandler() {
+            @Override
+            public String getAction() {
+                return "code:peer:select";
+            }
+
+            @Override
+            public void handle(Message message) {
+                received.add(message);
+            }
+        });
+
+        assertTrue(dispatcher.dispatch(message("peer:select")));
+        assertTrue(dispatcher.dispatch(message("peer:select")));
+
+        assertEquals(2, received.size());
+    }
+
+    @Test
+    void testBatchHandlerReceivesMessagesWithinWindowTogether() throws InterruptedException {
+        dispatcher = new EventDispatcher(Runnable::run, 50, 64);
+        RecordingBatchHandler handler = new RecordingBatchHandler(1);
+        dispatcher.registerHandler(handler);
+
+        dispatcher.dispatch(message("active-path"));
+        dispatcher.dispatch(message("active-path"));
+        dispatcher.dispatch(message("active-path"));
+
+        assertTrue(handler.delivered.await(2, TimeUnit.SECONDS), "Batch should be flushed after the window");
+        assertEquals(1, handler.batchSizes.size());
+        assertEquals(3, (int) handler.batchSizes.get(0));
+    }
+
+    @Test
+    void testFullBatchIsFlushedImmediately() {
+        dispatcher = new EventDispatcher(Runnable::run, 60_000, 2);
+        RecordingBatchHandler handler = new RecordingBatchHandler(1);
+        dispatcher.registerHandler(handler);
+
+        dispatcher.dispatch(message("active-path"));
+        assertTrue(handler.batchSizes.isEmpty(), "Batch should wait for the window");
+
+        dispatcher.dispatch(message("active-path"));
+        assertEquals(1, handler.batchSizes.size(), "Full batch should not wait for the window");
+        assertEquals(2, (int) handler.batchSizes.get(0));
+    }
+
+    @Test
+    void testUnregisterDiscardsPendingBatch() throws InterruptedException {
+        dispatcher = new EventDispatcher(Runnable::run, 30, 64);
+        RecordingBatchHandler handler = new RecordingBatchHandler(1);
+        dispatcher.registerHandler(handler);
+
+        dispatcher.dispatch(message("active-path"));
+        dispatcher.unregisterHandler(handler);
+
+        assertFalse(handler.delivered.await(200, TimeUnit.MILLISECONDS));
+        assertTrue(handler.batchSizes.isEmpty());
+    }
+
+    @Test
+    void testCompletionRunsAfterAllHandlersFinish() {
+        dispatcher = new EventDispatcher(Runnable::run, 60_000, 2);
+        AtomicInteger completions = new AtomicInteger();
+        RecordingBatchHandler batchHandler = new RecordingBatchHandler(1);
+        dispatcher.registerHandler(batchHandler);
+        dispatcher.registerHandler(new EventHandler() {
+            @Override
+            public String getAction() {
+                return "code:active-path";
+            }
+
+            @Override
+            public void handle(Message message) {
+            }
+        });
+
+        dispatcher.dispatch(message("active-path"), completions::incrementAndGet);
+        assertEquals(0, completions.get(), "Completion should wait for the pending batch");
+
+        dispatcher.dispatch(message("active-path"), completions::incrementAndGet);
+        assertEquals(2, completions.get(), "Both messages complete once their batch is delivered");
+    }
+
+    @Test
+    void testCompletionRunsWhenNoHandlerMatches() {
+        dispatcher = new EventDispatcher(Runnable::run, 1000, 64);
+        AtomicInteger completions = new AtomicInteger();
+
+        assertFalse(dispatcher.dispatch(message("unknown"), completions::incrementAndGet));
+        assertEquals(1, completions.get());
+    }
+
+    @Test
+    void testCompletionRunsForDiscardedBatch() {
+        dispatcher = new EventDispatcher(Runnable::run, 60_000, 64);
+        AtomicInteger completions = new AtomicInteger();
+        RecordingBatchHandler handler = new RecordingBatchHandler(1);
+        dispatcher.registerHandler(handler);
+
+        dispatcher.dispatch(message("active-path"), completions::incrementAndGet);
+        dispatcher.unregisterHandler(handler);
+
+        assertEquals(1, completions.get());
+        assertTrue(handler.batchSizes.isEmpty());
+    }
+
+    private static Message message(String action) {
+        return new Message(Message.Flow.RES, "code", action, null, "test-caw");
+    }
+
+    private static final class RecordingBatchHandler implements BatchEventHandler {
+        final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        final CountDownLatch delivered;
+
+        RecordingBatchHandler(int expectedBatches) {
+            this.delivered = new CountDownLatch(expectedBatches);
+        }
+
+        @Override
+        public String getAction() {
+            return "code:active-path";
+        }
+
+        @Override
+        public void handle(Message message) {
+            handleBatch(List.of(message));
+        }
+
+        @Override
+        public void handleBatch(List<Message> messages) {
+            batchSizes.add(messages.size());
+            delivered.countDown();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.codeawareness.pycharm.events;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PriorityDispatchScheduler.
+ * Uses a manual executor so the order in which queued tasks are picked is deterministic.
+ */
+class PriorityDispatchSchedulerTest {
+
+    @Test
+    void testInteractiveTasksRunBeforeBackground() {
+        ManualExecutor executor = new ManualExecutor();
+        PriorityDispatchScheduler scheduler = new PriorityDispatchScheduler(executor, 1, 60_000);
+        List<String> order = new ArrayList<>();
+
+        scheduler.submit(EventPriority.BACKGROUND, () -> order.add("sync"));
+        scheduler.submit(EventPriority.NORMAL, () -> order.add("peer"));
+        scheduler.submit(EventPriority.BACKGROUND, () -> order.add("auth"));
+        scheduler.submit(EventPriority.INTERACTIVE, () -> order.add("active-path"));
+
+        assertEquals(1, executor.pending.size(), "Only one worker slot should be started");
+        executor.runAll();
+
+        assertEquals(List.of("active-path", "peer", "sync", "auth"), order);
+    }
+
+    @Test
+    void testStarvedBackgroundTaskMakesProgress() {
+        ManualExecutor executor = new ManualExecutor();
+        PriorityDispatchScheduler scheduler = new PriorityDispatchScheduler(executor, 1, 0);
+        List<String> order = new ArrayList<>();
+
+        scheduler.submit(EventPriority.BACKGROUND, () -> order.add("sync"));
+        scheduler.submit(EventPriority.INTERACTIVE, () -> order.add("active-path"));
+        executor.runAll();
+
+        assertEquals(List.of("sync", "active-path"), order,
+            "With a zero starvation limit the oldest task should always win");
+    }
+
+    @Test
+    void testLatencyHistogramsPerClass() {
+        ManualExecutor executor = new ManualExecutor();
+        PriorityDispatchScheduler scheduler = new PriorityDispatchScheduler(executor, 2, 60_000);
+
+        scheduler.submit(EventPriority.INTERACTIVE, () -> { });
+        scheduler.submit(EventPriority.INTERACTIVE, () -> { });
+        scheduler.submit(EventPriority.BACKGROUND, () -> { });
+        executor.runAll();
+
+        assertEquals(2, scheduler.getCompletionHistogram(EventPriority.INTERACTIVE).getCount());
+        assertEquals(2, scheduler.getQueueWaitHistogram(EventPriority.INTERACTIVE).getCount());
+        assertEquals(1, scheduler.getCompletionHistogram(EventPriority.BACKGROUND).getCount());
+        assertEquals(0, scheduler.getCompletionHistogram(EventPriority.NORMAL).getCount());
+    }
+
+    @Test
+    void testFailingTaskDoesNotStopWorker() {
+        ManualExecutor executor = new ManualExecutor();
+        PriorityDispatchScheduler scheduler = new PriorityDispatchScheduler(executor, 1, 60_000);
+        List<String> order = new ArrayList<>();
+
+        scheduler.submit(EventPriority.NORMAL, () -> {
+            throw new IllegalStateException("boom");
+        });
+        scheduler.submit(EventPriority.NORMAL, () -> order.add("after"));
+        executor.runAll();
+
+        assertEquals(List.of("after"), order);
+        assertEquals(0, scheduler.getQueuedCount(EventPriority.NORMAL));
+    }
+
+    @Test
+    void testTaskThrowingErrorDoesNotLeakSlot() {
+        ManualExecutor executor = new ManualExecutor();
+        PriorityDispatchScheduler scheduler = new PriorityDispatchScheduler(executor, 1, 60_000);
+        List<String> order = new ArrayList<>();
+
+        scheduler.submit(EventPriority.NORMAL, () -> {
+            throw new AssertionError("boom");
+        });
+        scheduler.submit(EventPriority.NORMAL, () -> order.add("same worker"));
+        executor.runAll();
+        scheduler.submit(EventPriority.NORMAL, () -> order.add("new worker"));
+        executor.runAll();
+
+        assertEquals(List.of("same worker", "new worker"), order);
+    }
+
+    private static final class ManualExecutor implements Executor {
+        final ArrayDeque<Runnable> pending = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            pending.add(command);
+        }
+
+        void runAll() {
+            Runnable next;
+            while ((next = pending.poll()) != null) {
+                next.run();
+            }
+        }
+    }
+}
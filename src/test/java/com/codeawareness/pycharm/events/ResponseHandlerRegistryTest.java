@@ -1,9 +1,12 @@
 package com.codeawareness.pycharm.events;
 
+import com.codeawareness.pycharm.utils.HashedTimerWheel;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -20,6 +23,11 @@ class ResponseHandlerRegistryTest {
         registry = new ResponseHandlerRegistry();
     }
 
+    @AfterEach
+    void tearDown() {
+        registry.shutdown();
+    }
+
     @Test
     void testRegisterAndHandle() {
         AtomicBoolean handlerCalled = new AtomicBoolean(false);
@@ -135,4 +143,91 @@ class ResponseHandlerRegistryTest {
         // Handler should be removed even if it threw exception
         assertEquals(0, registry.size());
     }
+
+    @Test
+    void testHandlerExpiresAfterTimeout() {
+        HashedTimerWheel wheel = HashedTimerWheel.manual(10, 8);
+        ResponseHandlerRegistry timed = new ResponseHandlerRegistry(wheel, 30, 16);
+        AtomicBoolean handlerCalled = new AtomicBoolean(false);
+        AtomicInteger timeouts = new AtomicInteger();
+
+        assertTrue(timed.register("test-key", data -> handlerCalled.set(true), 30, timeouts::incrementAndGet));
+        wheel.tick();
+        wheel.tick();
+        wheel.tick();
+        assertEquals(1, timed.getOutstandingCount(), "Handler should still be pending before the deadline");
+
+        wheel.tick();
+        assertEquals(0, timed.getOutstandingCount());
+        assertEquals(1, timeouts.get());
+        assertEquals(1, timed.getTimedOutCount());
+
+        // A response arriving after expiry must not fire the stale handler
+        assertFalse(timed.handle("test-key", "data"));
+        assertFalse(handlerCalled.get());
+        assertEquals(1, timed.getLateResponseCount());
+    }
+
+    @Test
+    void testHandledResponseCancelsTimeout() {
+        HashedTimerWheel wheel = HashedTimerWheel.manual(10, 8);
+        ResponseHandlerRegistry timed = new ResponseHandlerRegistry(wheel, 20, 16);
+        AtomicInteger timeouts = new AtomicInteger();
+
+        timed.register("test-key", data -> {}, 20, timeouts::incrementAndGet);
+        assertTrue(timed.handle("test-key", "data"));
+        for (int i = 0; i < 10; i++) {
+            wheel.tick();
+        }
+
+        assertEquals(0, timeouts.get());
+        assertEquals(0, timed.getTimedOutCount());
+    }
+
+    @Test
+    void testReplacedHandlerDoesNotExpireNewRegistration() {
+        HashedTimerWheel wheel = HashedTimerWheel.manual(10, 8);
+        ResponseHandlerRegistry timed = new ResponseHandlerRegistry(wheel, 20, 16);
+        AtomicInteger firstTimeouts = new AtomicInteger();
+        AtomicBoolean secondCalled = new AtomicBoolean(false);
+
+        timed.register("test-key", data -> {}, 20, firstTimeouts::incrementAndGet);
+        wheel.tick();
+        timed.register("test-key", data -> secondCalled.set(true), 50, null);
+        wheel.tick();
+        wheel.tick();
+
+        assertEquals(0, firstTimeouts.get(), "Replaced handler's timeout should be cancelled");
+        assertEquals(1, timed.getOutstandingCount());
+        assertTrue(timed.handle("test-key", "data"));
+        assertTrue(secondCalled.get());
+    }
+
+    @Test
+    void testRejectsRegistrationsBeyondCap() {
+        ResponseHandlerRegistry capped = new ResponseHandlerRegistry(HashedTimerWheel.manual(10, 8), 1000, 2);
+
+        assertTrue(capped.register("key1", data -> {}));
+        assertTrue(capped.register("key2", data -> {}));
+        assertFalse(capped.register("key3", data -> {}));
+        assertTrue(capped.register("key1", data -> {}), "Replacing an existing key should not count against the cap");
+
+        assertEquals(2, capped.getOutstandingCount());
+        assertEquals(1, capped.getRejectedCount());
+    }
+
+    @Test
+    void testClearCancelsTimeouts() {
+        HashedTimerWheel wheel = HashedTimerWheel.manual(10, 8);
+        ResponseHandlerRegistry timed = new ResponseHandlerRegistry(wheel, 10, 16);
+        AtomicInteger timeouts = new AtomicInteger();
+
+        timed.register("key1", data -> {}, 10, timeouts::incrementAndGet);
+        timed.register("key2", data -> {}, 10, timeouts::incrementAndGet);
+        timed.clear();
+        wheel.tick();
+
+        assertEquals(0, timeouts.get());
+        assertEquals(0, timed.getTimedOutCount());
+    }
 }
@@ -0,0 +1,47 @@
+package com.codeawareness.pycharm.events.handlers;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for AggregatedPeerChanges.
+ */
+class AggregatedPeerChangesTest {
+
+    @Test
+    void testParsesEntryShapes() {
+        JsonObject data = JsonParser.parseString("{" +
+            "\"root\": \"/p/\"," +
+            "\"agg\": {" +
+            "  \"src/a.py\": [\"alice\", {\"name\": \"bob\"}]," +
+            "  \"src/b.py\": 7," +
+            "  \"/p/c.py\": {\"lines\": [1, 2, 3], \"users\": [{\"email\": \"carol@example.com\"}]}" +
+            "}}").getAsJsonObject();
+
+        AggregatedPeerChanges changes = AggregatedPeerChanges.parse(data, "/ignored");
+
+        assertEquals("/p", changes.root);
+        assertEquals(Arrays.asList("alice", "bob"), changes.peers.get("/p/src/a.py"));
+        assertEquals(Integer.valueOf(0), changes.lineCounts.get("/p/src/a.py"));
+        assertEquals(Integer.valueOf(7), changes.lineCounts.get("/p/src/b.py"));
+        assertEquals(Collections.emptyList(), changes.peers.get("/p/src/b.py"));
+        assertEquals(Integer.valueOf(3), changes.lineCounts.get("/p/c.py"));
+        assertEquals(Arrays.asList("carol@example.com"), changes.peers.get("/p/c.py"));
+    }
+
+    @Test
+    void testFallsBackToProjectDirectory() {
+        JsonObject data = JsonParser.parseString("{\"agg\": {\"a.py\": 2}}").getAsJsonObject();
+
+        AggregatedPeerChanges changes = AggregatedPeerChanges.parse(data, "/project");
+
+        assertEquals(Integer.valueOf(2), changes.lineCounts.get("/project/a.py"));
+        assertNull(AggregatedPeerChanges.parse(JsonParser.parseString("{\"hl\": []}").getAsJsonObject(), "/project"));
+    }
+}
@@ -0,0 +1,84 @@
+package com.codeawareness.pycharm.events.handlers;
+
+import com.codeawareness.pycharm.highlighting.LineIndex;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures hl parsing for arrays of 100 to 100k lines: time per parse and bytes allocated
+ * per parse, against the previous boxed {@code List<Integer>} approach.
+ * Run with {@code ./gradlew benchmark}; excluded from the regular test task.
+ */
+@Tag("benchmark")
+class HighlightLineParserBenchmark {
+
+    private static final int[] ARRAY_SIZES = {100, 1_000, 10_000, 100_000};
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURED_ROUNDS = 500;
+
+    @Test
+    void compareParsers() {
+        System.out.printf("%-9s %-14s %12s %14s%n", "lines", "parser", "us/parse", "bytes/parse");
+
+        for (int size : ARRAY_SIZES) {
+            StringBuilder json = new StringBuilder("[");
+            for (int line = 0; line < size; line++) {
+                json.append(line == 0 ? "" : ",").append(line * 3 / 2);
+            }
+            JsonArray array = JsonParser.parseString(json.append(']').toString()).getAsJsonArray();
+
+            HighlightLineParser parser = new HighlightLineParser();
+            measure(size, "reused int[]", () -> parser.parse(array).size());
+            measure(size, "boxed list", () -> parseBoxed(array).size());
+        }
+    }
+
+    private static void measure(int size, String label, Parse parse) {
+        int checksum = 0;
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            checksum += parse.run();
+        }
+
+        long allocatedBefore = allocatedBytes();
+        long started = System.nanoTime();
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            checksum += parse.run();
+        }
+        double micros = (System.nanoTime() - started) / 1e3 / MEASURED_ROUNDS;
+        long bytes = (allocatedBytes() - allocatedBefore) / MEASURED_ROUNDS;
+
+        assertTrue(checksum > 0);
+        System.out.printf("%-9d %-14s %12.2f %14d%n", size, label, micros, bytes);
+    }
+
+    /**
+     * The approach this parser replaced, minus its logging.
+     */
+    private static LineIndex parseBoxed(JsonArray array) {
+        List<Integer> lines = new ArrayList<>();
+        for (JsonElement element : array) {
+            if (element.isJsonPrimitive() && element.getAsJsonPrimitive().isNumber()) {
+                lines.add(element.getAsInt());
+            }
+        }
+        return LineIndex.of(lines.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private interface Parse {
+        int run();
+    }
+}
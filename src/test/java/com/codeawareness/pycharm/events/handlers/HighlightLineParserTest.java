@@ -0,0 +1,81 @@
+package com.codeawareness.pycharm.events.handlers;
+
+import com.codeawareness.pycharm.highlighting.LineIndex;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonNull;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for HighlightLineParser.
+ */
+class HighlightLineParserTest {
+
+    @Test
+    void testParsesLineNumbers() {
+        JsonArray array = new JsonArray();
+        array.add(12);
+        array.add(3);
+        array.add(3);
+        array.add(40);
+
+        LineIndex lines = new HighlightLineParser().parse(array);
+
+        assertArrayEquals(new int[]{3, 12, 40}, lines.toArray());
+    }
+
+    @Test
+    void testSkipsNonNumericElements() {
+        JsonArray array = new JsonArray();
+        array.add(1);
+        array.add("two");
+        array.add(JsonNull.INSTANCE);
+        array.add(5);
+        HighlightLineParser parser = new HighlightLineParser();
+
+        LineIndex lines = parser.parse(array);
+
+        assertArrayEquals(new int[]{1, 5}, lines.toArray());
+        assertEquals(2, parser.getLastSkippedCount());
+    }
+
+    @Test
+    void testSkipsOutOfRangeLines() {
+        JsonArray array = new JsonArray();
+        array.add(4);
+        array.add(-1);
+        array.add(2_000_000_000);
+        array.add(9_000_000_000L);
+        HighlightLineParser parser = new HighlightLineParser();
+
+        LineIndex lines = parser.parse(array);
+
+        assertArrayEquals(new int[]{4}, lines.toArray());
+        assertEquals(3, parser.getLastSkippedCount());
+    }
+
+    @Test
+    void testBufferIsReusedAcrossResponses() {
+        HighlightLineParser parser = new HighlightLineParser();
+        JsonArray large = new JsonArray();
+        for (int line = 0; line < 1000; line++) {
+            large.add(line);
+        }
+        JsonArray small = new JsonArray();
+        small.add(7);
+
+        assertEquals(1000, parser.parse(large).size());
+        int capacity = parser.getCapacity();
+        LineIndex lines = parser.parse(small);
+
+        assertArrayEquals(new int[]{7}, lines.toArray(), "Stale buffer entries must not leak into the next parse");
+        assertEquals(capacity, parser.getCapacity(), "The buffer only grows");
+        assertEquals(0, parser.getLastSkippedCount());
+    }
+
+    @Test
+    void testEmptyArray() {
+        assertSame(LineIndex.EMPTY, new HighlightLineParser().parse(new JsonArray()));
+    }
+}
@@ -1,5 +1,6 @@
 package com.codeawareness.pycharm.highlighting;
 
+import com.intellij.openapi.editor.markup.TextAttributes;
 import com.intellij.ui.JBColor;
 import org.junit.jupiter.api.Test;
 
@@ -17,4 +18,16 @@ class ColorSchemeProviderTest {
         JBColor color = ColorSchemeProvider.getHighlightJBColor();
         assertNotNull(color, "Highlight color should not be null");
     }
+
+    @Test
+    void testHighlightAttributesAreSharedUntilInvalidated() {
+        ColorSchemeProvider.invalidate();
+        TextAttributes first = ColorSchemeProvider.getHighlightAttributes();
+
+        assertNotNull(first);
+        assertSame(first, ColorSchemeProvider.getHighlightAttributes(), "Attributes should be cached");
+
+        ColorSchemeProvider.invalidate();
+        assertNotSame(first, ColorSchemeProvider.getHighlightAttributes(), "Invalidation should rebuild attributes");
+    }
 }
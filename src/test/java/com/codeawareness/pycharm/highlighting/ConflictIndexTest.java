@@ -0,0 +1,76 @@
+package com.codeawareness.pycharm.highlighting;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ConflictIndex.
+ */
+class ConflictIndexTest {
+
+    @Test
+    void testEditsWithinALineMergeIntoRuns() {
+        ConflictIndex index = new ConflictIndex();
+
+        index.edit(10, 10, 10);
+        index.edit(12, 12, 12);
+        index.edit(11, 11, 11);
+        index.edit(40, 40, 40);
+
+        assertArrayEquals(new int[]{10, 12, 40, 40}, index.localRuns());
+    }
+
+    @Test
+    void testInsertedLinesShiftRunsBelow() {
+        ConflictIndex index = new ConflictIndex();
+        index.edit(5, 5, 5);
+        index.edit(40, 40, 40);
+
+        // Two lines typed at the end of line 20
+        index.edit(20, 20, 22);
+
+        assertArrayEquals(new int[]{5, 5, 20, 22, 42, 42}, index.localRuns());
+    }
+
+    @Test
+    void testDeletedLinesShiftRunsUp() {
+        ConflictIndex index = new ConflictIndex();
+        index.edit(10, 10, 10);
+        index.edit(30, 30, 30);
+
+        // Lines 8 to 12 joined into line 8, swallowing the changed line 10
+        index.edit(8, 12, 8);
+
+        assertArrayEquals(new int[]{8, 8, 26, 26}, index.localRuns());
+    }
+
+    @Test
+    void testConflictsAreLocalChangesOnPeerLines() {
+        ConflictIndex index = new ConflictIndex();
+        index.setPeerRuns(LineIndex.of(3, 4, 5, 20, 21).runs());
+
+        index.edit(4, 4, 4);
+        index.edit(6, 6, 6);
+        index.edit(21, 21, 21);
+
+        assertArrayEquals(new int[]{4, 4, 21, 21}, index.conflictRuns());
+
+        index.clearLocal();
+
+        assertFalse(index.hasLocalChanges());
+        assertSame(LineRuns.EMPTY, index.conflictRuns());
+    }
+
+    @Test
+    void testEditsBeforePeerLinesBecomeConflicts() {
+        ConflictIndex index = new ConflictIndex();
+        index.edit(8, 8, 8);
+        index.edit(30, 30, 30);
+        assertSame(LineRuns.EMPTY, index.conflictRuns());
+
+        index.setPeerRuns(LineIndex.of(7, 8, 9).runs());
+
+        assertArrayEquals(new int[]{8, 8}, index.conflictRuns());
+    }
+}
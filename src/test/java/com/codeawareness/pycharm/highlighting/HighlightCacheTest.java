@@ -0,0 +1,107 @@
+package com.codeawareness.pycharm.highlighting;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for HighlightCache.
+ */
+class HighlightCacheTest {
+
+    @Test
+    void testPutAndGet() {
+        HighlightCache cache = new HighlightCache();
+        LineIndex lines = LineIndex.of(1, 2, 3);
+
+        cache.put("/a.py", lines);
+
+        assertSame(lines, cache.get("/a.py"));
+        assertNull(cache.get("/b.py"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    void testContainsAndEntriesAreNotLookups() {
+        HighlightCache cache = new HighlightCache();
+        cache.put("/a.py", LineIndex.of(1));
+        cache.put("/b.py", LineIndex.of(2));
+
+        assertTrue(cache.contains("/a.py"));
+        assertFalse(cache.contains("/c.py"));
+        assertEquals(List.of("/a.py", "/b.py"), new ArrayList<>(cache.entries().keySet()));
+        assertEquals(0, cache.getHitCount() + cache.getMissCount());
+    }
+
+    @Test
+    void testEmptyLinesRemoveEntry() {
+        HighlightCache cache = new HighlightCache();
+        cache.put("/a.py", LineIndex.of(4));
+
+        cache.put("/a.py", LineIndex.EMPTY);
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getTotalLines());
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsedFile() {
+        HighlightCache cache = new HighlightCache(2, 1000);
+        cache.put("/a.py", LineIndex.of(1));
+        cache.put("/b.py", LineIndex.of(2));
+        cache.get("/a.py");
+
+        cache.put("/c.py", LineIndex.of(3));
+
+        assertNotNull(cache.get("/a.py"), "Recently read entry is kept");
+        assertNull(cache.get("/b.py"), "Least recently used entry is evicted");
+        assertNotNull(cache.get("/c.py"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    void testEvictsToStayWithinLineBudget() {
+        HighlightCache cache = new HighlightCache(10, 5);
+        cache.put("/a.py", LineIndex.of(1, 2, 3));
+        cache.put("/b.py", LineIndex.of(1, 2));
+
+        cache.put("/c.py", LineIndex.of(7));
+
+        assertNull(cache.get("/a.py"));
+        assertEquals(3, cache.getTotalLines());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void testReplacingEntryUpdatesLineTotal() {
+        HighlightCache cache = new HighlightCache();
+        cache.put("/a.py", LineIndex.of(1, 2, 3));
+
+        cache.put("/a.py", LineIndex.of(9));
+        cache.addLine("/a.py", 10);
+        cache.addLine("/b.py", 0);
+
+        assertEquals(3, cache.getTotalLines());
+        assertArrayEquals(new int[]{9, 10}, cache.get("/a.py").toArray());
+        assertEquals(0, cache.getMissCount(), "addLine is not a lookup");
+    }
+
+    @Test
+    void testShrinkingLimitsEvictsImmediately() {
+        HighlightCache cache = new HighlightCache();
+        cache.put("/a.py", LineIndex.of(1));
+        cache.put("/b.py", LineIndex.of(2));
+        cache.put("/c.py", LineIndex.of(3));
+
+        cache.setLimits(1, 100);
+
+        assertEquals(1, cache.size());
+        assertNotNull(cache.get("/c.py"));
+        assertEquals(2, cache.getEvictionCount());
+    }
+}
@@ -2,6 +2,8 @@ package com.codeawareness.pycharm.highlighting;
 
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentEvent;
 import com.intellij.openapi.project.Project;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -96,6 +98,59 @@ class HighlightManagerTest {
         assertEquals(0, manager.getHighlightCount("/path/to/file.py"));
     }
 
+    @Test
+    void testEditsBeforePeerLinesAreRecorded() {
+        Document document = Mockito.mock(Document.class);
+        Mockito.when(document.getLineNumber(Mockito.anyInt())).thenReturn(7);
+        HighlightManager manager = editedManager(true);
+
+        manager.onDocumentChanged(typedInto(document));
+
+        // No peer lines yet: the local change must still be there when they arrive
+        assertArrayEquals(new int[]{7}, manager.getLocalChanges("/project/file.py").toArray());
+    }
+
+    @Test
+    void testEditsToOtherProjectsAreIgnored() {
+        Document document = Mockito.mock(Document.class);
+        HighlightManager manager = editedManager(false);
+
+        manager.onDocumentChanged(typedInto(document));
+
+        // The listener sees every project's edits
+        Mockito.verify(document, Mockito.never()).getLineNumber(Mockito.anyInt());
+        assertEquals(LineIndex.EMPTY, manager.getLocalChanges("/project/file.py"));
+    }
+
+    private static HighlightManager editedManager(boolean inProject) {
+        Project mockProject = Mockito.mock(Project.class);
+        Mockito.when(mockProject.getName()).thenReturn("TestProject");
+        return new HighlightManager(mockProject) {
+            @Override
+            String getFilePath(Document changed) {
+                return "/project/file.py";
+            }
+
+            @Override
+            boolean isInProject(Document changed) {
+                return inProject;
+            }
+
+            @Override
+            boolean isUnsaved(Document changed) {
+                return true;
+            }
+        };
+    }
+
+    private static DocumentEvent typedInto(Document document) {
+        DocumentEvent event = Mockito.mock(DocumentEvent.class);
+        Mockito.when(event.getDocument()).thenReturn(document);
+        Mockito.when(event.getOldFragment()).thenReturn("");
+        Mockito.when(event.getNewFragment()).thenReturn("x");
+        return event;
+    }
+
     /**
      * Note: Testing addHighlight() fully requires IntelliJ Platform test fixtures
      * because it needs a real or mocked Editor, Document, MarkupModel, etc.
@@ -0,0 +1,330 @@
+package com.codeawareness.pycharm.highlighting;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.LogicalPosition;
+import com.intellij.openapi.editor.ScrollingModel;
+import com.intellij.openapi.editor.ex.RangeHighlighterEx;
+import com.intellij.openapi.editor.markup.CustomHighlighterRenderer;
+import com.intellij.openapi.editor.markup.MarkupModel;
+import com.intellij.openapi.editor.markup.RangeHighlighter;
+import com.intellij.openapi.project.Project;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the highlight rendering strategies on 10k, 50k and 100k-line documents.
+ * Run with {@code ./gradlew benchmark}; excluded from the regular test task.
+ *
+ * The editor is a fake with fixed-height lines and no folding, so the numbers cover the
+ * plugin side only: building and diffing highlighters on update, and on scroll the
+ * viewport bookkeeping plus the background fills. For the run highlighters the paint
+ * loop stands in for the platform's, walking the highlighters that overlap the viewport.
+ */
+@Tag("benchmark")
+class HighlightRenderingBenchmark {
+
+    private static final int[] DOCUMENT_SIZES = {10_000, 50_000, 100_000};
+    private static final int LINE_HEIGHT = 16;
+    private static final int LINE_LENGTH = 40;
+    private static final int VIEWPORT_LINES = 60;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 50;
+    private static final String FILE = "/bench/Large.py";
+
+    @Test
+    void compareStrategies() {
+        System.out.printf("%-9s %-24s %12s %12s %12s %10s%n",
+            "lines", "strategy", "initial ms", "update ms", "scroll us", "highlighters");
+
+        for (int lineCount : DOCUMENT_SIZES) {
+            Random random = new Random(lineCount);
+            LineIndex base = randomLines(random, lineCount);
+            LineIndex edited = editLines(random, base, lineCount);
+
+            run(lineCount, "run highlighters (lazy)", RenderingStrategy.RUN_HIGHLIGHTERS,
+                HighlightManager.DEFAULT_LAZY_LINE_THRESHOLD, base, edited);
+            run(lineCount, "run highlighters (eager)", RenderingStrategy.RUN_HIGHLIGHTERS,
+                Integer.MAX_VALUE, base, edited);
+            run(lineCount, "custom renderer", RenderingStrategy.CUSTOM_RENDERER,
+                HighlightManager.DEFAULT_LAZY_LINE_THRESHOLD, base, edited);
+        }
+    }
+
+    private void run(int lineCount, String label, RenderingStrategy strategy, int lazyThreshold,
+                     LineIndex base, LineIndex edited) {
+        FakeEditor fake = new FakeEditor(lineCount);
+        HighlightManager manager = new HighlightManager(Mockito.mock(Project.class)) {
+            @Override
+            MarkupModel getMarkupModel(Document document) {
+                return fake.markup;
+            }
+
+            @Override
+            Editor[] getEditors(Document document) {
+                return new Editor[]{fake.editor};
+            }
+        };
+        fake.manager = manager;
+        manager.setRenderingStrategy(strategy);
+        manager.setLazyLineThreshold(lazyThreshold);
+
+        long started = System.nanoTime();
+        manager.applyHighlights(FILE, fake.editor, base);
+        double initialMs = (System.nanoTime() - started) / 1e6;
+        assertEquals(base.size(), manager.getHighlightCount(FILE));
+
+        // Update: alternate between two line sets that differ by a few peer edits
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            manager.applyHighlights(FILE, fake.editor, round % 2 == 0 ? edited : base);
+        }
+        started = System.nanoTime();
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            manager.applyHighlights(FILE, fake.editor, round % 2 == 0 ? edited : base);
+        }
+        double updateMs = (System.nanoTime() - started) / 1e6 / MEASURED_ROUNDS;
+
+        // Scroll: page through the document, repainting every viewport
+        BufferedImage image = new BufferedImage(800, VIEWPORT_LINES * LINE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        int pages = lineCount / VIEWPORT_LINES;
+        int painted = 0;
+        for (int page = 0; page < Math.min(pages, WARMUP_ROUNDS); page++) {
+            painted += scrollAndPaint(fake, g, page);
+        }
+        started = System.nanoTime();
+        for (int page = 0; page < pages; page++) {
+            painted += scrollAndPaint(fake, g, page);
+        }
+        double scrollUs = (System.nanoTime() - started) / 1e3 / pages;
+        g.dispose();
+        assertTrue(painted > 0, "Highlighted lines should be painted");
+
+        System.out.printf("%-9d %-24s %12.3f %12.3f %12.2f %10d%n",
+            lineCount, label, initialMs, updateMs, scrollUs, fake.markupModel.size());
+        manager.clearAllHighlights();
+    }
+
+    private static int scrollAndPaint(FakeEditor fake, Graphics2D g, int page) {
+        fake.scrollTo(page * VIEWPORT_LINES);
+        Rectangle clip = fake.visibleArea;
+        g.setClip(clip);
+
+        int painted = 0;
+        Color color = Color.YELLOW;
+        for (FakeHighlighter highlighter : fake.markupModel.overlapping(
+                clip.y / LINE_HEIGHT * LINE_LENGTH, (clip.y + clip.height) / LINE_HEIGHT * LINE_LENGTH)) {
+            if (highlighter.renderer != null) {
+                highlighter.renderer.paint(fake.editor, highlighter.proxy, g);
+                painted++;
+            } else if (highlighter.attributes != null) {
+                int top = highlighter.start / LINE_LENGTH * LINE_HEIGHT;
+                int bottom = (highlighter.end / LINE_LENGTH + 1) * LINE_HEIGHT;
+                g.setColor(color);
+                g.fillRect(clip.x, top, clip.width, bottom - top);
+                painted++;
+            }
+        }
+        return painted;
+    }
+
+    /**
+     * About a third of the lines highlighted, in blocks of 1 to 40 lines.
+     */
+    private static LineIndex randomLines(Random random, int lineCount) {
+        List<Integer> lines = new ArrayList<>();
+        int line = random.nextInt(20);
+        while (line < lineCount) {
+            int length = 1 + random.nextInt(40);
+            for (int i = 0; i < length && line < lineCount; i++) {
+                lines.add(line++);
+            }
+            line += 1 + random.nextInt(80);
+        }
+        return LineIndex.of(lines.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Toggle a few short blocks, as one peer edit would.
+     */
+    private static LineIndex editLines(Random random, LineIndex lines, int lineCount) {
+        LineIndex edited = lines;
+        for (int block = 0; block < 10; block++) {
+            int start = random.nextInt(lineCount - 10);
+            for (int line = start; line < start + 1 + random.nextInt(10); line++) {
+                edited = edited.contains(line) ? edited.without(line) : edited.with(line);
+            }
+        }
+        return edited;
+    }
+
+    /**
+     * Editor with fixed-height, fixed-length lines, backed by dynamic proxies.
+     */
+    private static final class FakeEditor {
+        final int lineCount;
+        final FakeMarkupModel markupModel = new FakeMarkupModel();
+        final Document document;
+        final MarkupModel markup;
+        final Editor editor;
+        HighlightManager manager;
+        Rectangle visibleArea = new Rectangle(0, 0, 800, VIEWPORT_LINES * LINE_HEIGHT);
+
+        FakeEditor(int lineCount) {
+            this.lineCount = lineCount;
+            this.document = proxy(Document.class, (method, args) -> {
+                switch (method) {
+                    case "getLineCount": return lineCount;
+                    case "getTextLength": return lineCount * LINE_LENGTH;
+                    case "getLineStartOffset": return (int) args[0] * LINE_LENGTH;
+                    case "getLineEndOffset": return (int) args[0] * LINE_LENGTH + LINE_LENGTH - 1;
+                    case "getLineNumber": return Math.min(lineCount - 1, (int) args[0] / LINE_LENGTH);
+                    default: return null;
+                }
+            });
+            markupModel.document = document;
+            this.markup = proxy(MarkupModel.class, (method, args) -> {
+                if (method.equals("addRangeHighlighter")) {
+                    return markupModel.add((int) args[0], (int) args[1], args[3]).proxy;
+                }
+                return null;
+            });
+            ScrollingModel scrolling = proxy(ScrollingModel.class,
+                (method, args) -> method.equals("getVisibleArea") ? visibleArea : null);
+            this.editor = proxy(Editor.class, (method, args) -> {
+                switch (method) {
+                    case "getDocument": return document;
+                    case "getMarkupModel": return markup;
+                    case "getScrollingModel": return scrolling;
+                    case "getLineHeight": return LINE_HEIGHT;
+                    case "isDisposed": return false;
+                    case "xyToLogicalPosition": return new LogicalPosition(((Point) args[0]).y / LINE_HEIGHT, 0);
+                    case "logicalPositionToXY": return new Point(0, ((LogicalPosition) args[0]).line * LINE_HEIGHT);
+                    default: return null;
+                }
+            });
+        }
+
+        void scrollTo(int firstLine) {
+            visibleArea = new Rectangle(0, firstLine * LINE_HEIGHT, 800, VIEWPORT_LINES * LINE_HEIGHT);
+            manager.onVisibleAreaChanged(editor);
+        }
+    }
+
+    /**
+     * Markup model answering overlap queries in logarithmic time, like the platform's interval
+     * tree. Run highlighters never overlap each other, so they are kept ordered by start offset;
+     * the few highlighters longer than a viewport (whole-document, summary) are kept aside.
+     */
+    private static final class FakeMarkupModel {
+        final TreeMap<Long, FakeHighlighter> runs = new TreeMap<>();
+        final List<FakeHighlighter> wide = new ArrayList<>();
+        Document document;
+        long nextId;
+
+        FakeHighlighter add(int start, int end, Object attributes) {
+            FakeHighlighter highlighter = new FakeHighlighter(this, ((long) start << 24) | nextId++, start, end, attributes);
+            if (end - start > VIEWPORT_LINES * LINE_LENGTH) {
+                wide.add(highlighter);
+            } else {
+                runs.put(highlighter.key, highlighter);
+            }
+            return highlighter;
+        }
+
+        void remove(FakeHighlighter highlighter) {
+            if (runs.remove(highlighter.key) == null) {
+                wide.remove(highlighter);
+            }
+        }
+
+        List<FakeHighlighter> overlapping(int from, int to) {
+            List<FakeHighlighter> result = new ArrayList<>();
+            Long first = runs.floorKey(((long) from << 24) | 0xFFFFFF);
+            for (FakeHighlighter highlighter : runs.tailMap(first != null ? first : Long.MIN_VALUE).values()) {
+                if (highlighter.start > to) {
+                    break;
+                }
+                if (highlighter.end >= from) {
+                    result.add(highlighter);
+                }
+            }
+            for (FakeHighlighter highlighter : wide) {
+                if (highlighter.start <= to && highlighter.end >= from) {
+                    result.add(highlighter);
+                }
+            }
+            return result;
+        }
+
+        int size() {
+            return runs.size() + wide.size();
+        }
+    }
+
+    private static final class FakeHighlighter {
+        final long key;
+        final int start;
+        final int end;
+        Object attributes;
+        CustomHighlighterRenderer renderer;
+        boolean valid = true;
+        final RangeHighlighterEx proxy;
+
+        FakeHighlighter(FakeMarkupModel model, long key, int start, int end, Object attributes) {
+            this.key = key;
+            this.start = start;
+            this.end = end;
+            this.attributes = attributes;
+            this.proxy = proxy(RangeHighlighterEx.class, (method, args) -> {
+                switch (method) {
+                    case "isValid": return valid;
+                    case "getStartOffset": return start;
+                    case "getEndOffset": return end;
+                    case "getDocument": return model.document;
+                    case "setCustomRenderer": renderer = (CustomHighlighterRenderer) args[0]; return null;
+                    case "setTextAttributes": this.attributes = args[0]; return null;
+                    case "dispose":
+                        valid = false;
+                        model.remove(this);
+                        return null;
+                    default: return null;
+                }
+            });
+        }
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+            (instance, method, args) -> {
+                Object result = handler.invoke(method.getName(), args);
+                if (result == null && method.getReturnType().isPrimitive()) {
+                    Class<?> returnType = method.getReturnType();
+                    if (returnType == boolean.class) {
+                        return false;
+                    }
+                    return returnType == long.class ? (Object) 0L : (returnType == void.class ? null : (Object) 0);
+                }
+                return result;
+            });
+    }
+}
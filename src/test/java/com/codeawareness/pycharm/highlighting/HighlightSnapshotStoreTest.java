@@ -0,0 +1,132 @@
+package com.codeawareness.pycharm.highlighting;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for HighlightSnapshotStore.
+ */
+class HighlightSnapshotStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSaveAndLoadLazily() throws IOException {
+        Path file = tempDir.resolve("highlights").resolve("project.bin");
+        HighlightSnapshotStore store = new HighlightSnapshotStore(file);
+        store.put("/a.py", 42L, LineIndex.of(1, 2, 3, 70, 10_000));
+        store.put("/b.py", 7L, LineIndex.of(5));
+        store.save();
+
+        HighlightSnapshotStore reloaded = new HighlightSnapshotStore(file);
+
+        assertEquals(LineIndex.of(1, 2, 3, 70, 10_000), reloaded.get("/a.py", 42L));
+        assertEquals(LineIndex.of(5), reloaded.get("/b.py", 7L));
+        assertEquals(2, reloaded.size());
+    }
+
+    @Test
+    void testChangedContentIsNotRestored() {
+        HighlightSnapshotStore store = new HighlightSnapshotStore(tempDir.resolve("project.bin"));
+        long original = HighlightSnapshotStore.contentHash("a = 1\n".getBytes(StandardCharsets.UTF_8));
+        long edited = HighlightSnapshotStore.contentHash("a = 2\n".getBytes(StandardCharsets.UTF_8));
+        store.put("/a.py", original, LineIndex.of(0));
+
+        assertNotEquals(original, edited);
+        assertNull(store.get("/a.py", edited));
+        assertNull(store.get("/missing.py", original));
+    }
+
+    @Test
+    void testClearedFileIsNotRestored() throws IOException {
+        Path file = tempDir.resolve("project.bin");
+        HighlightSnapshotStore store = new HighlightSnapshotStore(file);
+        store.put("/a.py", 1L, LineIndex.of(1));
+        store.put("/b.py", 2L, LineIndex.of(2));
+        store.put("/c.py", 3L, LineIndex.of(3));
+        store.save();
+
+        // /b.py was cleared this session, /c.py emptied by the backend
+        HighlightSnapshotStore session = new HighlightSnapshotStore(file);
+        session.put("/c.py", 3L, LineIndex.EMPTY);
+        session.retainAll(Set.of("/a.py", "/c.py"));
+        session.save();
+
+        HighlightSnapshotStore reloaded = new HighlightSnapshotStore(file);
+        assertEquals(LineIndex.of(1), reloaded.get("/a.py", 1L));
+        assertNull(reloaded.get("/b.py", 2L));
+        assertNull(reloaded.get("/c.py", 3L));
+        assertEquals(1, reloaded.size());
+    }
+
+    @Test
+    void testTrimDropsOldestEntries() {
+        HighlightSnapshotStore store = new HighlightSnapshotStore(tempDir.resolve("project.bin"));
+        store.put("/a.py", 1L, LineIndex.of(1));
+        store.put("/b.py", 2L, LineIndex.of(2));
+        store.put("/a.py", 3L, LineIndex.of(3));
+
+        store.trim(1);
+
+        assertEquals(1, store.size());
+        assertEquals(LineIndex.of(3), store.get("/a.py", 3L));
+    }
+
+    @Test
+    void testUnreadableFileStartsEmpty() throws IOException {
+        Path file = tempDir.resolve("project.bin");
+        Files.write(file, new byte[]{'K', 'A', 'W', 'A', 'H', 'L', 1, 0, 0, 0, 5, 0});
+
+        HighlightSnapshotStore store = new HighlightSnapshotStore(file);
+
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void testHugeCountsAreRejectedBeforeAllocating() throws IOException {
+        Path file = tempDir.resolve("project.bin");
+        writeSnapshot(file, Integer.MAX_VALUE / 2, new int[0]);
+
+        HighlightSnapshotStore store = new HighlightSnapshotStore(file);
+
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void testRunsBeyondTheLineLimitAreClipped() throws IOException {
+        Path file = tempDir.resolve("project.bin");
+        writeSnapshot(file, 2, new int[]{10, 11, LineIndex.MAX_LINE_COUNT - 1, Integer.MAX_VALUE});
+
+        HighlightSnapshotStore store = new HighlightSnapshotStore(file);
+
+        assertArrayEquals(new int[]{10, 11, LineIndex.MAX_LINE_COUNT - 1}, store.get("/a", 7L).toArray());
+    }
+
+    /**
+     * Write one entry for "/a" with content hash 7 and the given runs, declaring
+     * {@code runCount} runs.
+     */
+    private static void writeSnapshot(Path file, int runCount, int[] runs) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            out.write(HighlightSnapshotStore.MAGIC);
+            out.writeByte(HighlightSnapshotStore.VERSION);
+            out.writeInt(1);
+            out.writeUTF("/a");
+            out.writeLong(7L);
+            out.writeInt(runCount);
+            for (int value : runs) {
+                out.writeInt(value);
+            }
+        }
+    }
+}
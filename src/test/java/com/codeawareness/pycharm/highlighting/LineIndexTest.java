@@ -0,0 +1,185 @@
+package com.codeawareness.pycharm.highlighting;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LineIndex.
+ */
+class LineIndexTest {
+
+    @Test
+    void testOfSortsAndDeduplicates() {
+        LineIndex index = LineIndex.of(7, 3, 3, 0, 130, 7, -4);
+
+        assertArrayEquals(new int[]{0, 3, 7, 130}, index.toArray());
+        assertEquals(4, index.size());
+        assertSame(LineIndex.EMPTY, LineIndex.of());
+        assertSame(LineIndex.EMPTY, LineIndex.of(-1, -2));
+    }
+
+    @Test
+    void testOfRunsMergesRanges() {
+        LineIndex index = LineIndex.ofRuns(new int[]{200, 202, 0, 2, 60, 130, 1, 5, -3, -1});
+
+        assertArrayEquals(new int[]{0, 5, 60, 130, 200, 202}, index.runs());
+        assertEquals(6 + 71 + 3, index.size());
+        assertEquals(LineIndex.of(7), LineIndex.ofRuns(new int[]{7, 7}));
+        assertSame(LineIndex.EMPTY, LineIndex.ofRuns(LineRuns.EMPTY));
+    }
+
+    @Test
+    void testContains() {
+        LineIndex index = LineIndex.of(0, 63, 64, 1000);
+
+        assertTrue(index.contains(0));
+        assertTrue(index.contains(63));
+        assertTrue(index.contains(64));
+        assertTrue(index.contains(1000));
+        assertFalse(index.contains(1));
+        assertFalse(index.contains(1001));
+        assertFalse(index.contains(-1));
+    }
+
+    @Test
+    void testNextAndPreviousLine() {
+        LineIndex index = LineIndex.of(5, 70, 200);
+
+        assertEquals(5, index.nextLine(0));
+        assertEquals(70, index.nextLine(6));
+        assertEquals(200, index.nextLine(71));
+        assertEquals(-1, index.nextLine(201));
+
+        assertEquals(200, index.previousLine(10_000));
+        assertEquals(70, index.previousLine(199));
+        assertEquals(5, index.previousLine(69));
+        assertEquals(-1, index.previousLine(4));
+    }
+
+    @Test
+    void testRunsAcrossWordBoundaries() {
+        LineIndex index = LineIndex.of(0, 1, 2, 5, 62, 63, 64, 65, 200);
+
+        assertArrayEquals(new int[]{0, 2, 5, 5, 62, 65, 200, 200}, index.runs());
+        assertEquals(0, LineIndex.EMPTY.runs().length);
+    }
+
+    @Test
+    void testLargeBlockIsSingleRun() {
+        int[] lines = new int[10_000];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = 100 + i;
+        }
+
+        assertArrayEquals(new int[]{100, 10_099}, LineIndex.of(lines).runs());
+    }
+
+    @Test
+    void testRangeIterationAndCount() {
+        LineIndex index = LineIndex.of(1, 10, 63, 64, 65, 300);
+        List<Integer> visited = new ArrayList<>();
+
+        index.forEachInRange(10, 65, visited::add);
+
+        assertEquals(List.of(10, 63, 64), visited);
+        assertEquals(3, index.countInRange(10, 65));
+        assertEquals(6, index.countInRange(0, 1000));
+        assertEquals(0, index.countInRange(66, 300));
+        assertEquals(1, index.countInRange(300, 301));
+    }
+
+    @Test
+    void testWithAndWithoutReturnNewSnapshots() {
+        LineIndex original = LineIndex.of(1, 2);
+        LineIndex added = original.with(200);
+        LineIndex removed = added.without(1);
+
+        assertArrayEquals(new int[]{1, 2}, original.toArray(), "Snapshots are immutable");
+        assertArrayEquals(new int[]{1, 2, 200}, added.toArray());
+        assertArrayEquals(new int[]{2, 200}, removed.toArray());
+        assertSame(original, original.with(2));
+        assertSame(original, original.without(99));
+    }
+
+    @Test
+    void testTruncate() {
+        LineIndex index = LineIndex.of(0, 5, 64, 70);
+
+        assertArrayEquals(new int[]{0, 5, 64}, index.truncate(65).toArray());
+        assertArrayEquals(new int[]{0, 5}, index.truncate(64).toArray());
+        assertSame(index, index.truncate(71));
+        assertSame(LineIndex.EMPTY, index.truncate(0));
+    }
+
+    @Test
+    void testCountNotInGivesSymmetricDifference() {
+        LineIndex previous = LineIndex.of(1, 2, 5, 9);
+        LineIndex next = LineIndex.of(0, 2, 6, 9, 120);
+
+        assertEquals(3, next.countNotIn(previous), "added");
+        assertEquals(2, previous.countNotIn(next), "removed");
+        assertEquals(0, next.countNotIn(next));
+    }
+
+    @Test
+    void testEquality() {
+        assertEquals(LineIndex.of(3, 1, 2), LineIndex.of(1, 2, 3));
+        assertEquals(LineIndex.of(1, 2, 3).hashCode(), LineIndex.of(3, 2, 1).hashCode());
+        assertEquals(LineIndex.of(1), LineIndex.of(1, 200).without(200));
+        assertNotEquals(LineIndex.of(1), LineIndex.of(2));
+    }
+
+    @Test
+    void testRunStartsAroundALine() {
+        LineIndex index = LineIndex.of(3, 4, 5, 10, 20, 21);
+
+        assertEquals(3, index.nextRunStart(-1));
+        assertEquals(10, index.nextRunStart(3));
+        assertEquals(-1, index.nextRunStart(20));
+        assertEquals(10, index.previousRunStart(20));
+        assertEquals(3, index.previousRunStart(6));
+        assertEquals(-1, index.previousRunStart(5));
+    }
+
+    @Test
+    void testUnionAndMinus() {
+        LineIndex a = LineIndex.of(1, 2, 3, 100);
+        LineIndex b = LineIndex.of(3, 4, 200);
+
+        assertArrayEquals(new int[]{1, 2, 3, 4, 100, 200}, a.union(b).toArray());
+        assertArrayEquals(new int[]{1, 2, 100}, a.minus(b).toArray());
+        assertSame(a, a.union(LineIndex.EMPTY));
+        assertSame(LineIndex.EMPTY, LineIndex.of(3).minus(b));
+    }
+
+    @Test
+    void testInAtLeastTwo() {
+        LineIndex a = LineIndex.of(1, 2, 3, 70);
+        LineIndex b = LineIndex.of(2, 3, 4);
+        LineIndex c = LineIndex.of(4, 70, 300);
+
+        assertArrayEquals(new int[]{2, 3, 4, 70}, LineIndex.inAtLeastTwo(List.of(a, b, c)).toArray());
+        assertTrue(LineIndex.inAtLeastTwo(List.of(a)).isEmpty());
+    }
+
+    @Test
+    void testLinesBeyondTheLimitAreDropped() {
+        LineIndex index = LineIndex.of(5, 2_000_000_000, LineIndex.MAX_LINE_COUNT);
+
+        assertArrayEquals(new int[]{5}, index.toArray());
+        assertArrayEquals(new int[]{1, 2}, LineIndex.of(new int[]{1, 2, 10}, 3, 10).toArray());
+        assertSame(index, index.with(Integer.MAX_VALUE));
+    }
+
+    @Test
+    void testRunsAreClippedToTheLimit() {
+        assertArrayEquals(new int[]{8, 9}, LineIndex.ofRuns(new int[]{8, 2_000_000_000}, 10).toArray());
+        assertTrue(LineIndex.ofRuns(new int[]{20, 30}, 10).isEmpty());
+        assertEquals(LineIndex.MAX_LINE_COUNT - 3,
+            LineIndex.ofRuns(new int[]{3, Integer.MAX_VALUE}).size());
+    }
+}
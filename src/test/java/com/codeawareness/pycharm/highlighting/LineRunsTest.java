@@ -0,0 +1,74 @@
+package com.codeawareness.pycharm.highlighting;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LineRuns.
+ */
+class LineRunsTest {
+
+    @Test
+    void testIndexOfMatchesExactRunsOnly() {
+        int[] runs = {0, 2, 5, 5, 7, 8};
+
+        assertEquals(0, LineRuns.indexOf(runs, 0, 2));
+        assertEquals(1, LineRuns.indexOf(runs, 5, 5));
+        assertEquals(2, LineRuns.indexOf(runs, 7, 8));
+        assertEquals(-1, LineRuns.indexOf(runs, 7, 9), "A grown run is a different run");
+        assertEquals(-1, LineRuns.indexOf(runs, 3, 4));
+        assertEquals(-1, LineRuns.indexOf(LineRuns.EMPTY, 0, 0));
+    }
+
+    @Test
+    void testUnionSortsAndMergesRanges() {
+        assertArrayEquals(new int[]{0, 12, 40, 50}, LineRuns.union(new int[]{40, 50, 5, 12, 0, 6}));
+        assertArrayEquals(new int[]{0, 9}, LineRuns.union(new int[]{5, 9, 0, 4}), "Adjacent ranges are joined");
+        assertArrayEquals(new int[]{3, 7}, LineRuns.union(new int[]{3, 7}));
+    }
+
+    @Test
+    void testClipKeepsOnlyLinesInWindows() {
+        int[] runs = {0, 2, 5, 5, 7, 20, 40, 45};
+
+        assertArrayEquals(new int[]{1, 2, 5, 5, 7, 9}, LineRuns.clip(runs, new int[]{1, 9}));
+        assertArrayEquals(new int[]{10, 20}, LineRuns.clip(runs, new int[]{10, 29}));
+        assertArrayEquals(new int[]{0, 2, 7, 8, 15, 20, 40, 41}, LineRuns.clip(runs, new int[]{0, 3, 7, 8, 15, 41}),
+            "A run spanning a gap between windows is split");
+        assertSame(runs, LineRuns.clip(runs, new int[]{0, 45}), "Nothing to clip");
+        assertSame(LineRuns.EMPTY, LineRuns.clip(runs, new int[]{21, 39}));
+        assertSame(LineRuns.EMPTY, LineRuns.clip(runs, LineRuns.EMPTY));
+    }
+
+    @Test
+    void testCovers() {
+        int[] windows = {0, 10, 20, 30};
+
+        assertTrue(LineRuns.covers(windows, 2, 10));
+        assertTrue(LineRuns.covers(windows, 20, 20));
+        assertFalse(LineRuns.covers(windows, 8, 21), "A range across a gap is not covered");
+        assertFalse(LineRuns.covers(windows, 25, 31));
+    }
+
+    @Test
+    void testOverlappingClipsToQuery() {
+        int[] runs = {0, 2, 5, 9, 20, 30};
+
+        assertArrayEquals(new int[]{7, 9, 20, 22}, LineRuns.overlapping(runs, 7, 22));
+        assertArrayEquals(new int[]{2, 2}, LineRuns.overlapping(runs, 2, 4));
+        assertSame(LineRuns.EMPTY, LineRuns.overlapping(runs, 10, 19));
+        assertSame(LineRuns.EMPTY, LineRuns.overlapping(runs, 31, 40));
+        assertEquals(3, LineRuns.firstEndingAtOrAfter(runs, 31));
+    }
+
+    @Test
+    void testIntersect() {
+        int[] local = {3, 6, 25, 25};
+        int[] peer = {0, 3, 5, 9, 20, 30};
+
+        assertArrayEquals(new int[]{3, 3, 5, 6, 25, 25}, LineRuns.intersect(local, peer));
+        assertSame(LineRuns.EMPTY, LineRuns.intersect(new int[]{10, 19}, peer));
+        assertSame(LineRuns.EMPTY, LineRuns.intersect(LineRuns.EMPTY, peer));
+    }
+}
@@ -0,0 +1,61 @@
+package com.codeawareness.pycharm.highlighting;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for OverviewMarks bucketing.
+ */
+class OverviewMarksTest {
+
+    @Test
+    void testBucketCountFollowsStripeHeight() {
+        assertEquals(OverviewMarks.DEFAULT_BUCKETS, OverviewMarks.bucketCount(0));
+        assertEquals(1, OverviewMarks.bucketCount(2));
+        assertEquals(200, OverviewMarks.bucketCount(800));
+        assertEquals(OverviewMarks.MAX_BUCKETS, OverviewMarks.bucketCount(10_000));
+    }
+
+    @Test
+    void testBucketsDescribeNonEmptyBuckets() {
+        LineIndex lines = LineIndex.of(2, 3, 4, 25, 31, 39);
+
+        int[] buckets = OverviewMarks.buckets(lines, 50, 10);
+
+        assertArrayEquals(new int[]{
+            0, 2, 4, 3,
+            2, 25, 25, 1,
+            3, 31, 39, 2
+        }, buckets);
+    }
+
+    @Test
+    void testLargeFileHasAtMostOneMarkPerBucket() {
+        int lineCount = 50_000;
+        int[] lines = new int[lineCount / 2];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = 2 * i;
+        }
+        int bucketCount = OverviewMarks.bucketCount(900);
+
+        int[] buckets = OverviewMarks.buckets(LineIndex.of(lines), lineCount,
+            OverviewMarks.bucketSize(lineCount, bucketCount));
+
+        assertEquals(bucketCount, buckets.length / 4);
+        int total = 0;
+        for (int bucket = 0; bucket < buckets.length / 4; bucket++) {
+            total += buckets[4 * bucket + 3];
+        }
+        assertEquals(lines.length, total);
+    }
+
+    @Test
+    void testIndexOfMatchesOnlyUnchangedBuckets() {
+        int[] buckets = OverviewMarks.buckets(LineIndex.of(2, 3, 25, 31), 50, 10);
+
+        assertEquals(1, OverviewMarks.indexOf(buckets, 2, 25, 25, 1));
+        assertEquals(-1, OverviewMarks.indexOf(buckets, 2, 25, 26, 2));
+        assertEquals(-1, OverviewMarks.indexOf(buckets, 1, 15, 15, 1));
+    }
+}
@@ -0,0 +1,108 @@
+package com.codeawareness.pycharm.highlighting;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PeerChangeIndex.
+ */
+class PeerChangeIndexTest {
+
+    @Test
+    void testDirectoriesAggregateTheirFiles() {
+        PeerChangeIndex index = new PeerChangeIndex();
+        index.update("/p/src/a.py", 3, Arrays.asList("alice"));
+        index.update("/p/src/util/b.py", 5, Arrays.asList("bob", "alice"));
+        index.update("/p/README.md", 1, Arrays.asList("carol"));
+
+        PeerChangeIndex.Summary src = index.get("/p/src");
+        assertEquals(2, src.getChangedFiles());
+        assertEquals(8, src.getChangedLines());
+        assertEquals(Arrays.asList("alice", "bob"), src.getPeers());
+
+        PeerChangeIndex.Summary project = index.get("/p");
+        assertEquals(3, project.getChangedFiles());
+        assertEquals(9, project.getChangedLines());
+        assertEquals(3, project.getPeers().size());
+
+        PeerChangeIndex.Summary file = index.get("/p/src/util/b.py");
+        assertEquals(1, file.getChangedFiles());
+        assertEquals(5, file.getChangedLines());
+        assertNull(index.get("/p/docs"));
+    }
+
+    @Test
+    void testUpdatesAdjustAncestorsIncrementally() {
+        PeerChangeIndex index = new PeerChangeIndex();
+        index.update("/p/src/a.py", 3, Arrays.asList("alice"));
+        index.update("/p/src/b.py", 2, Arrays.asList("bob"));
+
+        index.update("/p/src/a.py", 10, null);
+        assertEquals(12, index.get("/p").getChangedLines());
+        assertEquals(Arrays.asList("alice"), index.get("/p/src/a.py").getPeers());
+
+        index.update("/p/src/b.py", 2, Arrays.asList("alice"));
+        assertEquals(Arrays.asList("alice"), index.get("/p").getPeers());
+
+        index.remove("/p/src/a.py");
+        assertNull(index.get("/p/src/a.py"));
+        assertEquals(1, index.get("/p/src").getChangedFiles());
+        assertEquals(2, index.get("/p/src").getChangedLines());
+
+        index.remove("/p/src/b.py");
+        assertNull(index.get("/p"));
+        assertEquals(0, index.getChangedFileCount());
+    }
+
+    @Test
+    void testSegmentsAreSharedBetweenPaths() {
+        PeerChangeIndex index = new PeerChangeIndex();
+        for (int i = 0; i < 1_000; i++) {
+            index.update("/p/src/module" + (i % 10) + "/file" + i + ".py", 1, Collections.emptyList());
+        }
+
+        // Root, /p, /p/src, 10 modules and 1,000 files
+        assertEquals(1 + 1 + 1 + 10 + 1_000, index.getNodeCount());
+        assertEquals(100, index.get("/p/src/module3").getChangedFiles());
+    }
+
+    @Test
+    void testReplaceAllRemovesMissingFiles() {
+        PeerChangeIndex index = new PeerChangeIndex();
+        index.update("/p/a.py", 1, Arrays.asList("alice"));
+        index.update("/p/b.py", 2, Arrays.asList("bob"));
+        index.update("/other/c.py", 4, Arrays.asList("carol"));
+
+        Map<String, Integer> lineCounts = new HashMap<>();
+        lineCounts.put("/p/b.py", 6);
+        Map<String, List<String>> peers = new HashMap<>();
+        index.replaceAll("/p", lineCounts, peers);
+
+        assertNull(index.get("/p/a.py"));
+        assertEquals(6, index.get("/p").getChangedLines());
+        assertEquals(Arrays.asList("bob"), index.get("/p").getPeers());
+        assertNotNull(index.get("/other/c.py"));
+    }
+
+    @Test
+    void testListenersHearOnlyRealChanges() {
+        PeerChangeIndex index = new PeerChangeIndex();
+        int[] changes = {0};
+        index.addChangeListener(() -> changes[0]++);
+
+        index.update("/p/a.py", 1, Arrays.asList("alice"));
+        index.update("/p/a.py", 1, Arrays.asList("alice"));
+        index.remove("/p/missing.py");
+        index.clear();
+        index.clear();
+
+        assertEquals(2, changes[0]);
+    }
+}
@@ -0,0 +1,66 @@
+package com.codeawareness.pycharm.highlighting;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PeerChangeNavigator.
+ */
+class PeerChangeNavigatorTest {
+
+    @Test
+    void testNextSkipsTheCurrentRegion() {
+        NavigableMap<String, LineIndex> files = new TreeMap<>();
+        files.put("/b.py", LineIndex.of(3, 4, 5, 10, 20, 21));
+
+        assertLocation("/b.py", 3, PeerChangeNavigator.next(files, "/b.py", 0));
+        assertLocation("/b.py", 10, PeerChangeNavigator.next(files, "/b.py", 4));
+        assertLocation("/b.py", 20, PeerChangeNavigator.next(files, "/b.py", 10));
+    }
+
+    @Test
+    void testPreviousGoesToTheRegionAbove() {
+        NavigableMap<String, LineIndex> files = new TreeMap<>();
+        files.put("/b.py", LineIndex.of(3, 4, 5, 10, 20, 21));
+
+        assertLocation("/b.py", 10, PeerChangeNavigator.previous(files, "/b.py", 21));
+        assertLocation("/b.py", 3, PeerChangeNavigator.previous(files, "/b.py", 9));
+        assertLocation("/b.py", 3, PeerChangeNavigator.previous(files, "/b.py", 10));
+    }
+
+    @Test
+    void testWrapsAroundToOtherFiles() {
+        NavigableMap<String, LineIndex> files = new TreeMap<>();
+        files.put("/a.py", LineIndex.of(7, 8));
+        files.put("/b.py", LineIndex.of(3));
+        files.put("/c.py", LineIndex.EMPTY);
+        files.put("/d.py", LineIndex.of(1, 40, 41));
+
+        assertLocation("/d.py", 1, PeerChangeNavigator.next(files, "/b.py", 3));
+        assertLocation("/a.py", 7, PeerChangeNavigator.next(files, "/d.py", 40));
+        assertLocation("/a.py", 7, PeerChangeNavigator.previous(files, "/b.py", 3));
+        assertLocation("/d.py", 40, PeerChangeNavigator.previous(files, "/a.py", 7));
+        assertLocation("/b.py", 3, PeerChangeNavigator.next(files, "/a.py", 8));
+        assertLocation("/d.py", 1, PeerChangeNavigator.next(files, "/c.py", 0));
+    }
+
+    @Test
+    void testSingleFileWrapsToItself() {
+        NavigableMap<String, LineIndex> files = new TreeMap<>();
+        files.put("/a.py", LineIndex.of(2, 9));
+
+        assertLocation("/a.py", 2, PeerChangeNavigator.next(files, "/a.py", 9));
+        assertLocation("/a.py", 9, PeerChangeNavigator.previous(files, "/a.py", 2));
+        assertNull(PeerChangeNavigator.next(new TreeMap<>(), "/a.py", 0));
+    }
+
+    private static void assertLocation(String filePath, int line, PeerChangeNavigator.Location location) {
+        assertNotNull(location);
+        assertEquals(filePath, location.getFilePath());
+        assertEquals(line, location.getLine());
+    }
+}
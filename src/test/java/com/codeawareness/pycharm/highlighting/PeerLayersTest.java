@@ -0,0 +1,53 @@
+package com.codeawareness.pycharm.highlighting;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PeerLayers layout: overlap, exclusive and covered lines.
+ */
+class PeerLayersTest {
+
+    @Test
+    void testSharedLinesAreDrawnOnceAsOverlap() {
+        PeerLayers layers = new PeerLayers();
+        layers.set("alice", LineIndex.of(1, 2, 3, 10));
+        layers.set("bob", LineIndex.of(3, 4, 10, 20));
+
+        layers.layout(Set.of(), 100);
+
+        assertArrayEquals(new int[]{3, 10}, layers.getOverlap().toArray());
+        assertArrayEquals(new int[]{1, 2}, layers.exclusiveLines("alice").toArray());
+        assertArrayEquals(new int[]{4, 20}, layers.exclusiveLines("bob").toArray());
+        assertArrayEquals(new int[]{1, 2, 3, 4, 10, 20}, layers.getCovered().toArray());
+    }
+
+    @Test
+    void testHiddenPeerGivesItsSharedLinesBack() {
+        PeerLayers layers = new PeerLayers();
+        layers.set("alice", LineIndex.of(1, 2, 3));
+        layers.set("bob", LineIndex.of(3, 4));
+
+        layers.layout(Set.of("bob"), 100);
+
+        assertTrue(layers.getOverlap().isEmpty());
+        assertArrayEquals(new int[]{1, 2, 3}, layers.exclusiveLines("alice").toArray());
+        assertTrue(layers.exclusiveLines("bob").isEmpty());
+        assertArrayEquals(new int[]{1, 2, 3}, layers.getCovered().toArray());
+    }
+
+    @Test
+    void testLayoutDropsLinesOutsideTheDocument() {
+        PeerLayers layers = new PeerLayers();
+        layers.set("alice", LineIndex.of(1, 50));
+
+        layers.layout(Set.of(), 10);
+
+        assertArrayEquals(new int[]{1}, layers.getCovered().toArray());
+        assertTrue(layers.set("alice", LineIndex.EMPTY).contains(50));
+        assertTrue(layers.isEmpty());
+    }
+}
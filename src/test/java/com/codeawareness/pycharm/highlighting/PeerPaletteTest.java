@@ -0,0 +1,39 @@
+package com.codeawareness.pycharm.highlighting;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PeerPalette slot pooling.
+ */
+class PeerPaletteTest {
+
+    @Test
+    void testPeersGetDistinctSlotsUntilThePaletteIsFull() {
+        PeerPalette palette = new PeerPalette();
+
+        for (int peer = 0; peer < PeerPalette.SIZE; peer++) {
+            assertEquals(peer, palette.acquire("peer" + peer));
+        }
+        // Every slot has one peer: the next one shares the first
+        assertEquals(0, palette.acquire("extra"));
+        assertEquals(1, palette.acquire("another"));
+    }
+
+    @Test
+    void testSlotIsKeptUntilTheLastReferenceIsReleased() {
+        PeerPalette palette = new PeerPalette();
+        palette.acquire("alice");
+        int slot = palette.acquire("bob");
+        palette.acquire("bob");
+
+        palette.release("bob");
+        assertEquals(slot, palette.slotOf("bob"));
+
+        palette.release("bob");
+        assertEquals(-1, palette.slotOf("bob"));
+        // The freed slot is the least used again
+        assertEquals(slot, palette.acquire("carol"));
+    }
+}
@@ -0,0 +1,76 @@
+package com.codeawareness.pycharm.highlighting;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.RangeMarker;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for TrackedRegions, with a document of 10-character lines whose range
+ * markers are moved by hand to stand in for edits.
+ */
+class TrackedRegionsTest {
+
+    private static final int LINE_LENGTH = 10;
+
+    private final List<int[]> markers = new ArrayList<>();
+    private final Document document = (Document) Proxy.newProxyInstance(
+        Document.class.getClassLoader(), new Class<?>[]{Document.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getLineNumber": return (int) args[0] / LINE_LENGTH;
+                case "createRangeMarker": return marker((int) args[0], (int) args[1]);
+                default: return null;
+            }
+        });
+
+    @Test
+    void testCurrentLinesFollowMarkers() {
+        TrackedRegions regions = TrackedRegions.track(document, new int[]{0, 50}, new int[]{29, 59});
+        assertEquals(LineIndex.of(0, 1, 2, 5), regions.currentLines());
+
+        // Two lines inserted above the second run
+        markers.get(1)[0] += 2 * LINE_LENGTH;
+        markers.get(1)[1] += 2 * LINE_LENGTH;
+
+        assertEquals(LineIndex.of(0, 1, 2, 7), regions.currentLines());
+    }
+
+    @Test
+    void testCollapsedRegionIsDropped() {
+        TrackedRegions regions = TrackedRegions.track(document, new int[]{0, 50, 80}, new int[]{9, 59, 80});
+
+        // The text of the first run was deleted; the third run was an empty line to begin with
+        markers.get(0)[1] = markers.get(0)[0];
+
+        assertEquals(LineIndex.of(5, 8), regions.currentLines());
+    }
+
+    @Test
+    void testDisposedMarkersAreIgnored() {
+        TrackedRegions regions = TrackedRegions.track(document, new int[]{0, 50}, new int[]{9, 59});
+
+        regions.dispose();
+
+        assertSame(LineIndex.EMPTY, regions.currentLines());
+    }
+
+    private RangeMarker marker(int startOffset, int endOffset) {
+        int[] state = {startOffset, endOffset, 1};
+        markers.add(state);
+        return (RangeMarker) Proxy.newProxyInstance(
+            RangeMarker.class.getClassLoader(), new Class<?>[]{RangeMarker.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getStartOffset": return state[0];
+                    case "getEndOffset": return state[1];
+                    case "isValid": return state[2] == 1;
+                    case "dispose": state[2] = 0; return null;
+                    default: return null;
+                }
+            });
+    }
+}
@@ -0,0 +1,245 @@
+package com.codeawareness.pycharm.monitoring;
+
+import com.codeawareness.pycharm.highlighting.HighlightManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for HighlightPrefetcher.
+ */
+class HighlightPrefetcherTest {
+
+    private static final String BASE = "/home/dev/project";
+
+    private TestPrefetcher prefetcher;
+    private VirtualFile main;
+    private VirtualFile util;
+    private VirtualFile models;
+
+    @BeforeEach
+    void setUp() {
+        Project project = Mockito.mock(Project.class);
+        Mockito.when(project.getName()).thenReturn("TestProject");
+        Mockito.when(project.getBasePath()).thenReturn(BASE);
+        // The scheduler never fires within a test; ticks are driven by hand
+        prefetcher = new TestPrefetcher(project, Mockito.mock(HighlightManager.class));
+        main = file("src/main.py");
+        util = file("src/util.py");
+        models = file("src/models.py");
+    }
+
+    @AfterEach
+    void tearDown() {
+        prefetcher.shutdown();
+    }
+
+    @Test
+    void testMatchesRelativeAndAbsoluteResponsePaths() {
+        String file = "/home/dev/project/src/app/main.py";
+
+        assertTrue(HighlightPrefetcher.matchesPath(file, "src/app/main.py"));
+        assertTrue(HighlightPrefetcher.matchesPath(file, "./src/app/main.py"));
+        assertTrue(HighlightPrefetcher.matchesPath(file, "src\\app\\main.py"));
+        assertTrue(HighlightPrefetcher.matchesPath(file, file));
+    }
+
+    @Test
+    void testRejectsOtherFiles() {
+        String file = "/home/dev/project/src/app/main.py";
+
+        assertFalse(HighlightPrefetcher.matchesPath(file, "app/other.py"));
+        assertFalse(HighlightPrefetcher.matchesPath(file, "in.py"), "Only whole path segments match");
+        assertFalse(HighlightPrefetcher.matchesPath(file, ""));
+        assertFalse(HighlightPrefetcher.matchesPath(file, "/other/project/src/app/main.py"));
+    }
+
+    @Test
+    void testWaitsForIdleDelayBeforePrefetching() {
+        prefetcher.onActivePathSent(util);
+        prefetcher.onActivePathSent(main);
+
+        prefetcher.clock += 1_000;
+        prefetcher.tick();
+        assertTrue(prefetcher.sent.isEmpty(), "The user's own request must be answered first");
+
+        prefetcher.clock += 1_500;
+        prefetcher.tick();
+        assertEquals(List.of(util), prefetcher.sent, "The active file is not prefetched");
+    }
+
+    @Test
+    void testOneRequestInFlightAndActiveFileRestored() {
+        prefetcher.onActivePathSent(models);
+        prefetcher.onActivePathSent(util);
+        prefetcher.onActivePathSent(main);
+        prefetcher.clock += 2_500;
+
+        prefetcher.tick();
+        prefetcher.tick();
+        assertEquals(List.of(models), prefetcher.sent, "The next file waits for the response");
+
+        assertTrue(prefetcher.claimResponse(models.getPath()));
+        prefetcher.tick();
+        assertTrue(prefetcher.claimResponse(util.getPath()));
+        prefetcher.tick();
+        prefetcher.tick();
+
+        assertEquals(List.of(models, util, main), prefetcher.sent,
+            "Queued files are fetched in order, then the active file is sent again");
+    }
+
+    @Test
+    void testTimedOutRequestDoesNotBlockTheQueue() {
+        prefetcher.onActivePathSent(models);
+        prefetcher.onActivePathSent(util);
+        prefetcher.onActivePathSent(main);
+        prefetcher.clock += 2_500;
+        prefetcher.tick();
+
+        prefetcher.clock += 6_000;
+        assertFalse(prefetcher.isAwaitingResponse());
+        assertNull(prefetcher.matchResponse("src/models.py"), "A late response is for the active file");
+        prefetcher.tick();
+
+        assertEquals(List.of(models, util), prefetcher.sent);
+    }
+
+    @Test
+    void testMatchResponseDoesNotClaim() {
+        prefetcher.onActivePathSent(util);
+        prefetcher.onActivePathSent(main);
+        prefetcher.clock += 2_500;
+        prefetcher.tick();
+
+        assertNull(prefetcher.matchResponse(null), "A response without a path cannot be matched");
+        assertNull(prefetcher.matchResponse("src/main.py"));
+        assertEquals(util.getPath(), prefetcher.matchResponse("src/util.py"));
+        assertEquals(util.getPath(), prefetcher.matchResponse("src/util.py"), "Matching has no side effect");
+        assertTrue(prefetcher.isAwaitingResponse());
+    }
+
+    @Test
+    void testClaimOnlyReleasesThePrefetchedFile() {
+        prefetcher.onActivePathSent(util);
+        prefetcher.onActivePathSent(main);
+        prefetcher.clock += 2_500;
+        prefetcher.tick();
+
+        assertFalse(prefetcher.claimResponse(main.getPath()));
+        assertFalse(prefetcher.claimResponse(null));
+        assertTrue(prefetcher.isAwaitingResponse());
+
+        assertTrue(prefetcher.claimResponse(util.getPath()));
+        assertFalse(prefetcher.isAwaitingResponse());
+        assertFalse(prefetcher.claimResponse(util.getPath()), "A response is claimed once");
+    }
+
+    @Test
+    void testUserRequestSupersedesPrefetch() {
+        prefetcher.onActivePathSent(util);
+        prefetcher.onActivePathSent(main);
+        prefetcher.clock += 2_500;
+        prefetcher.tick();
+
+        prefetcher.onActivePathSent(models);
+
+        assertFalse(prefetcher.isAwaitingResponse());
+        assertNull(prefetcher.matchResponse("src/util.py"), "The response now answers the user's request");
+    }
+
+    @Test
+    void testResolvesResponsesForPrefetchAndActiveFile() {
+        prefetcher.onActivePathSent(util);
+        prefetcher.onActivePathSent(main);
+        prefetcher.clock += 2_500;
+        prefetcher.tick();
+
+        assertEquals(util.getPath(), prefetcher.resolveResponse("src/util.py", main.getPath()));
+        assertEquals(main.getPath(), prefetcher.resolveResponse("src/main.py", main.getPath()));
+        assertNull(prefetcher.resolveResponse(null, main.getPath()), "Could answer either request");
+
+        prefetcher.claimResponse(util.getPath());
+        assertEquals(main.getPath(), prefetcher.resolveResponse(null, main.getPath()));
+    }
+
+    @Test
+    void testLateResponseAfterTimeoutIsDropped() {
+        prefetcher.onActivePathSent(util);
+        prefetcher.onActivePathSent(main);
+        prefetcher.clock += 2_500;
+        prefetcher.tick();
+
+        prefetcher.clock += 6_000;
+
+        assertNull(prefetcher.resolveResponse("src/util.py", main.getPath()),
+            "A late prefetch response must not land on the active file");
+        assertEquals(main.getPath(), prefetcher.resolveResponse("src/main.py", main.getPath()));
+    }
+
+    @Test
+    void testLateResponseAfterUserRequestIsDropped() {
+        prefetcher.onActivePathSent(util);
+        prefetcher.onActivePathSent(main);
+        prefetcher.clock += 2_500;
+        prefetcher.tick();
+
+        prefetcher.onActivePathSent(models);
+
+        assertNull(prefetcher.resolveResponse("src/util.py", models.getPath()),
+            "A superseded prefetch response must not land on the active file");
+        assertEquals(models.getPath(), prefetcher.resolveResponse("src/models.py", models.getPath()));
+    }
+
+    @Test
+    void testCancelledFileIsNotPrefetched() {
+        prefetcher.onActivePathSent(models);
+        prefetcher.onActivePathSent(util);
+        prefetcher.onActivePathSent(main);
+
+        prefetcher.cancel(models);
+        prefetcher.clock += 2_500;
+        prefetcher.tick();
+
+        assertEquals(List.of(util), prefetcher.sent);
+    }
+
+    private static VirtualFile file(String relativePath) {
+        VirtualFile file = Mockito.mock(VirtualFile.class);
+        Mockito.when(file.getPath()).thenReturn(BASE + "/" + relativePath);
+        Mockito.when(file.getName()).thenReturn(relativePath.substring(relativePath.lastIndexOf('/') + 1));
+        Mockito.when(file.isValid()).thenReturn(true);
+        return file;
+    }
+
+    /**
+     * Records requests instead of sending them, on a clock the test moves.
+     */
+    private static class TestPrefetcher extends HighlightPrefetcher {
+        final List<VirtualFile> sent = new ArrayList<>();
+        long clock = 1_000_000;
+
+        TestPrefetcher(Project project, HighlightManager highlightManager) {
+            super(project, highlightManager, 3_600_000);
+        }
+
+        @Override
+        boolean send(VirtualFile file) {
+            sent.add(file);
+            return true;
+        }
+
+        @Override
+        long now() {
+            return clock;
+        }
+    }
+}
@@ -22,6 +22,8 @@ class CodeAwarenessSettingsTest {
         assertFalse(settings.isHighlightsEnabled(), "Highlights should NOT be enabled by default");
         assertEquals(500, settings.fileSaveDebounceMs, "File save debounce should be 500ms");
         assertEquals(300, settings.activeFileDebounceMs, "Active file debounce should be 300ms");
+        assertEquals(200, settings.highlightCacheMaxFiles, "Highlight cache should hold 200 files");
+        assertEquals(1_000_000, settings.highlightCacheMaxLines, "Highlight cache should hold 1M lines");
         assertEquals("ffea83", settings.getLightThemeColor(), "Light theme color should be default");
         assertEquals("0a071d", settings.getDarkThemeColor(), "Dark theme color should be default");
     }
@@ -193,6 +195,25 @@ class CodeAwarenessSettingsTest {
         settings.removeSettingsChangeListener(listener);
     }
 
+    @Test
+    void testHighlightCacheLimitsNotification() {
+        TestSettingsChangeListener listener = new TestSettingsChangeListener();
+        settings.addSettingsChangeListener(listener);
+
+        settings.setHighlightCacheLimits(50, 20_000);
+        assertTrue(listener.cacheLimitsChangedCalled, "Should notify when cache limits change");
+        assertEquals(50, listener.lastMaxFiles);
+        assertEquals(20_000, listener.lastMaxLines);
+        assertEquals(50, settings.highlightCacheMaxFiles);
+        assertEquals(20_000, settings.highlightCacheMaxLines);
+
+        listener.cacheLimitsChangedCalled = false;
+        settings.setHighlightCacheLimits(50, 20_000);
+        assertFalse(listener.cacheLimitsChangedCalled, "Should not notify when limits are unchanged");
+
+        settings.removeSettingsChangeListener(listener);
+    }
+
     @Test
     void testListenerNotCalledOnSameValue() {
         TestSettingsChangeListener listener = new TestSettingsChangeListener();
@@ -245,6 +266,9 @@ class CodeAwarenessSettingsTest {
         boolean colorChangedCalled = false;
         boolean highlightsEnabledChangedCalled = false;
         boolean lastEnabledValue = false;
+        boolean cacheLimitsChangedCalled = false;
+        int lastMaxFiles;
+        int lastMaxLines;
 
         @Override
         public void onColorSettingsChanged() {
@@ -256,5 +280,12 @@ class CodeAwarenessSettingsTest {
             highlightsEnabledChangedCalled = true;
             lastEnabledValue = enabled;
         }
+
+        @Override
+        public void onHighlightCacheLimitsChanged(int maxFiles, int maxLines) {
+            cacheLimitsChangedCalled = true;
+            lastMaxFiles = maxFiles;
+            lastMaxLines = maxLines;
+        }
     }
 }
@@ -0,0 +1,153 @@
+package com.codeawareness.pycharm.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for HashedTimerWheel.
+ */
+class HashedTimerWheelTest {
+
+    @Test
+    void testFiresAfterDelay() {
+        HashedTimerWheel wheel = HashedTimerWheel.manual(10, 8);
+        AtomicInteger fired = new AtomicInteger();
+
+        HashedTimerWheel.Timeout timeout = wheel.schedule(fired::incrementAndGet, 25);
+        wheel.tick();
+        wheel.tick();
+        wheel.tick();
+        assertEquals(0, fired.get(), "Should not fire before the delay has elapsed");
+
+        wheel.tick();
+        assertEquals(1, fired.get());
+        assertTrue(timeout.isExpired());
+
+        wheel.tick();
+        assertEquals(1, fired.get(), "Should fire only once");
+    }
+
+    @Test
+    void testNeverFiresBeforeFullTicksHavePassed() {
+        HashedTimerWheel wheel = HashedTimerWheel.manual(10, 8);
+        AtomicInteger fired = new AtomicInteger();
+        wheel.tick();
+
+        // Scheduled late in a tick interval: the tick right after is almost immediate
+        wheel.schedule(fired::incrementAndGet, 10);
+        wheel.tick();
+        assertEquals(0, fired.get(), "A one-tick delay must not fire on the very next tick");
+
+        wheel.tick();
+        assertEquals(1, fired.get());
+
+        wheel.schedule(fired::incrementAndGet, 40);
+        for (int i = 0; i < 4; i++) {
+            wheel.tick();
+        }
+        assertEquals(1, fired.get(), "Should not fire before four full ticks have passed");
+
+        wheel.tick();
+        assertEquals(2, fired.get());
+    }
+
+    @Test
+    void testCancelledTimeoutNeverFires() {
+        HashedTimerWheel wheel = HashedTimerWheel.manual(10, 8);
+        AtomicInteger fired = new AtomicInteger();
+
+        HashedTimerWheel.Timeout timeout = wheel.schedule(fired::incrementAndGet, 10);
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel(), "Second cancel should report nothing to cancel");
+        wheel.tick();
+
+        assertEquals(0, fired.get());
+        assertTrue(timeout.isCancelled());
+        assertFalse(timeout.isExpired());
+    }
+
+    @Test
+    void testDelaysLongerThanOneRevolution() {
+        HashedTimerWheel wheel = HashedTimerWheel.manual(10, 4);
+        List<Integer> order = new ArrayList<>();
+
+        wheel.schedule(() -> order.add(10), 100);
+        wheel.schedule(() -> order.add(2), 20);
+        wheel.schedule(() -> order.add(5), 50);
+
+        for (int i = 0; i < 10; i++) {
+            wheel.tick();
+        }
+        assertEquals(List.of(2, 5), order);
+
+        wheel.tick();
+        assertEquals(List.of(2, 5, 10), order);
+    }
+
+    @Test
+    void testTaskExceptionDoesNotStopOtherTasks() {
+        HashedTimerWheel wheel = HashedTimerWheel.manual(10, 8);
+        AtomicInteger fired = new AtomicInteger();
+
+        wheel.schedule(() -> {
+            throw new RuntimeException("Test exception");
+        }, 10);
+        wheel.schedule(fired::incrementAndGet, 10);
+
+        wheel.tick();
+        assertDoesNotThrow(wheel::tick);
+        assertEquals(1, fired.get());
+    }
+
+    @Test
+    void testWorkerThreadFiresTimeouts() throws InterruptedException {
+        HashedTimerWheel wheel = new HashedTimerWheel(5, 16, "CodeAwareness-TestTimer");
+        CountDownLatch latch = new CountDownLatch(1);
+
+        try {
+            wheel.schedule(latch::countDown, 20);
+            assertTrue(latch.await(2, TimeUnit.SECONDS));
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    void testSlowTaskDoesNotHoldTheWheel() throws InterruptedException {
+        HashedTimerWheel wheel = HashedTimerWheel.manual(10, 8);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        wheel.schedule(() -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }, 10);
+        wheel.tick();
+        Thread ticker = new Thread(wheel::tick);
+        ticker.start();
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        // Both need the wheel's lock, which the running task must not hold
+        Thread caller = new Thread(() -> {
+            wheel.schedule(() -> { }, 10).cancel();
+            wheel.stop();
+        });
+        caller.start();
+        caller.join(5_000);
+        boolean blocked = caller.isAlive();
+        release.countDown();
+        ticker.join(5_000);
+
+        assertFalse(blocked, "schedule/cancel/stop should not wait for a running task");
+    }
+}